@@ -0,0 +1,91 @@
+package com.chatstack.authservice.benchmark;
+
+import com.chatstack.authservice.security.JwtUtil;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Rows per second for onboarding the same number of users through /api/auth/register, one call per user,
+ * and through one /api/internal/users/import CSV upload. Against a running AuthService:
+ *
+ * mvn -f benchmarks/pom.xml exec:java -Dexec.mainClass=com.chatstack.authservice.benchmark.BulkImportLoadComparison \
+ *     -Dexec.args="http://localhost:8080 $JWT_SECRET 5000 50"
+ *
+ * The secret only signs the service token the internal endpoint requires; both phases create fresh users.
+ */
+public class BulkImportLoadComparison {
+    public static void main(String[] args) throws Exception {
+        String baseUrl = args[0];
+        String token = new JwtUtil(args[1]).generateServiceToken("load-test");
+        int users = args.length > 2 ? Integer.parseInt(args[2]) : 5000;
+        int concurrency = args.length > 3 ? Integer.parseInt(args[3]) : 50;
+
+        HttpClient client = HttpClient.newBuilder()
+                .executor(Executors.newVirtualThreadPerTaskExecutor())
+                .connectTimeout(Duration.ofSeconds(5))
+                .build();
+
+        String runId = UUID.randomUUID().toString().substring(0, 6);
+
+        AtomicInteger failures = new AtomicInteger();
+        Semaphore inFlight = new Semaphore(concurrency);
+        long start = System.nanoTime();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < users; i++) {
+                String name = "r" + runId + i;
+                inFlight.acquire();
+                executor.execute(() -> {
+                    try {
+                        HttpResponse<Void> response = client.send(post(baseUrl + "/api/auth/register", "application/json",
+                                        "{\"username\":\"" + name + "\",\"email\":\"" + name + "@load.test\",\"password\":\"password123\"}"),
+                                HttpResponse.BodyHandlers.discarding());
+                        if (response.statusCode() >= 400) {
+                            failures.incrementAndGet();
+                        }
+                    } catch (Exception e) {
+                        failures.incrementAndGet();
+                    } finally {
+                        inFlight.release();
+                    }
+                });
+            }
+        }
+        report("register", users, System.nanoTime() - start, failures.get() + " failed requests");
+
+        StringBuilder csv = new StringBuilder("username,email,password\n");
+        for (int i = 0; i < users; i++) {
+            String name = "i" + runId + i;
+            csv.append(name).append(',').append(name).append("@load.test,password123\n");
+        }
+        start = System.nanoTime();
+        HttpResponse<String> imported = client.send(HttpRequest.newBuilder(URI.create(baseUrl + "/api/internal/users/import"))
+                        .header("Content-Type", "text/csv")
+                        .header("Authorization", "Bearer " + token)
+                        .timeout(Duration.ofMinutes(30))
+                        .POST(HttpRequest.BodyPublishers.ofString(csv.toString()))
+                        .build(),
+                HttpResponse.BodyHandlers.ofString());
+        report("import", users, System.nanoTime() - start,
+                "HTTP " + imported.statusCode() + " " + imported.body().substring(0, Math.min(120, imported.body().length())));
+    }
+
+    private static void report(String name, int users, long nanos, String outcome) {
+        System.out.printf("%-9s %8.1f rows/s  %7.1f s  %s%n", name, users / (nanos / 1e9), nanos / 1e9, outcome);
+    }
+
+    private static HttpRequest post(String url, String contentType, String body) {
+        return HttpRequest.newBuilder(URI.create(url))
+                .header("Content-Type", contentType)
+                .POST(HttpRequest.BodyPublishers.ofString(body))
+                .build();
+    }
+}
@@ -0,0 +1,67 @@
+package com.chatstack.authservice.benchmark;
+
+import com.chatstack.authservice.entities.User;
+import com.chatstack.authservice.security.JwtAuthenticationFilter;
+import com.chatstack.authservice.security.JwtUtil;
+import com.chatstack.authservice.security.TokenDenylist;
+import com.chatstack.authservice.security.VerifiedTokenCache;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of JwtAuthenticationFilter for an authenticated request, with the verified-token cache
+ * switched on and off, and with an empty denylist or one holding a million revoked tokens.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JwtAuthenticationFilterBenchmark {
+    private static final String SECRET = "a_very_long_random_string_for_local_development_only";
+
+    @Param({"true", "false"})
+    public boolean cacheEnabled;
+
+    @Param({"0", "1000000"})
+    public int revokedTokens;
+
+    private JwtAuthenticationFilter filter;
+    private String authorization;
+
+    @Setup
+    public void setup() {
+        JwtUtil jwtUtil = new JwtUtil(SECRET);
+        TokenDenylist denylist = new TokenDenylist(new SimpleMeterRegistry(), 60_000);
+        long expiresAt = System.currentTimeMillis() + TimeUnit.DAYS.toMillis(10);
+        for (int i = 0; i < revokedTokens; i++) {
+            denylist.revoke(UUID.randomUUID().toString(), expiresAt);
+        }
+        filter = new JwtAuthenticationFilter(jwtUtil, new VerifiedTokenCache(cacheEnabled, 10_000), denylist);
+
+        User user = new User();
+        user.setId(42L);
+        authorization = "Bearer " + jwtUtil.generateToken(user);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public Object authenticatedRequest() throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/auth/me");
+        request.addHeader("Authorization", authorization);
+        try {
+            filter.doFilter(request, new MockHttpServletResponse(), new MockFilterChain());
+            return SecurityContextHolder.getContext().getAuthentication();
+        } finally {
+            SecurityContextHolder.clearContext();
+        }
+    }
+}
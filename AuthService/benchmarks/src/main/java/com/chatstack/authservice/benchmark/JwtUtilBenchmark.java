@@ -0,0 +1,35 @@
+package com.chatstack.authservice.benchmark;
+
+import com.chatstack.authservice.security.JwtUtil;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JwtUtilBenchmark {
+    private static final String SECRET = "a_very_long_random_string_for_local_development_only";
+
+    private JwtUtil jwtUtil;
+    private String token;
+
+    @Setup
+    public void setup() {
+        jwtUtil = new JwtUtil(SECRET);
+        token = jwtUtil.generateToken(42L);
+    }
+
+    @Benchmark
+    public String generateToken() {
+        return jwtUtil.generateToken(42L);
+    }
+
+    @Benchmark
+    public String extractSubject() {
+        return jwtUtil.extractSubject(token);
+    }
+}
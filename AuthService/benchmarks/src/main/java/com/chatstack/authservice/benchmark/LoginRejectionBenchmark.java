@@ -0,0 +1,165 @@
+package com.chatstack.authservice.benchmark;
+
+import com.chatstack.authservice.config.ReadYourWrites;
+import com.chatstack.authservice.controllers.AuthController;
+import com.chatstack.authservice.dto.LoginRequest;
+import com.chatstack.authservice.dto.UserCredentials;
+import com.chatstack.authservice.entities.User;
+import com.chatstack.authservice.repositories.UserRepository;
+import com.chatstack.authservice.security.PasswordHasher;
+import com.chatstack.authservice.services.AuthService;
+import com.chatstack.authservice.services.UnknownUsernameCache;
+import com.chatstack.authservice.services.UserCredentialsCache;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.lang.reflect.Proxy;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Throughput and allocation of a rejected POST /api/auth/login, for an unknown username and for a wrong
+ * password. "exception" reproduces the previous implementation (a RuntimeException per rejection, caught in
+ * the controller), "result" runs the controller as it is now. Calls start 120 frames deep, about where
+ * Tomcat and the filter chain leave a controller, since that is what each stack trace used to copy.
+ * The repository is an in-memory stub: lookups is the number of database queries a real one would have run.
+ * BCrypt runs at strength 4 so the rest stays visible; with -p strength=10 the hash dominates every variant.
+ * Run with -prof gc.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LoginRejectionBenchmark {
+    private static final int STACK_DEPTH = 120;
+    private static final String KNOWN = "known";
+
+    @Param({"unknown_user", "bad_password"})
+    public String reason;
+
+    @Param({"4"})
+    public int strength;
+
+    private final AtomicLong repositoryCalls = new AtomicLong();
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private UserRepository repository;
+    private PasswordHasher passwordHasher;
+    private ReadYourWrites readYourWrites;
+    private AuthController controller;
+    private LoginRequest request;
+
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class Lookups {
+        public long lookups;
+    }
+
+    @Setup
+    public void setup() {
+        BCryptPasswordEncoder encoder = new BCryptPasswordEncoder(strength);
+        User known = new User();
+        known.setId(1L);
+        known.setUsername(KNOWN);
+        known.setEmail("known@chatstack.dev");
+        known.setPassword(encoder.encode("the-right-password"));
+        known.setEnabled(true);
+        known.setVersion(1L);
+        repository = stubRepository(known);
+
+        passwordHasher = new PasswordHasher(encoder, meterRegistry, 1, 64);
+        // No replica configured, so every read goes through unpinned
+        readYourWrites = new ReadYourWrites(meterRegistry, "", Duration.ofSeconds(5));
+
+        AuthService authService = new AuthService();
+        ReflectionTestUtils.setField(authService, "userRepository", repository);
+        ReflectionTestUtils.setField(authService, "passwordHasher", passwordHasher);
+        ReflectionTestUtils.setField(authService, "meterRegistry", meterRegistry);
+        ReflectionTestUtils.setField(authService, "readYourWrites", readYourWrites);
+        ReflectionTestUtils.setField(authService, "unknownUsernames",
+                new UnknownUsernameCache(meterRegistry, true, Duration.ofSeconds(30), 100_000));
+        ReflectionTestUtils.setField(authService, "credentialsCache", new UserCredentialsCache(100_000, Duration.ofMinutes(10)));
+        ReflectionTestUtils.invokeMethod(authService, "prepareLoginRejections");
+        controller = new AuthController();
+        ReflectionTestUtils.setField(controller, "authService", authService);
+
+        request = new LoginRequest();
+        request.username = "unknown_user".equals(reason) ? "stuffed-username" : KNOWN;
+        request.password = "a-leaked-password";
+    }
+
+    @TearDown
+    public void tearDown() {
+        passwordHasher.shutdown();
+    }
+
+    @Benchmark
+    public Object exception(Lookups lookups) {
+        return counted(lookups, () -> atDepth(STACK_DEPTH, () -> previousLogin(request)));
+    }
+
+    @Benchmark
+    public Object result(Lookups lookups) {
+        return counted(lookups, () -> atDepth(STACK_DEPTH, () -> controller.login(request)));
+    }
+
+    // AuthController.login and AuthService.login before rejections became LoginResult constants
+    private ResponseEntity<?> previousLogin(LoginRequest loginRequest) {
+        try {
+            User user = readYourWrites.read(loginRequest.username, () -> repository.findByUsername(loginRequest.username))
+                    .orElseThrow(() -> previousFailure("unknown_user", "Username not found"));
+            if (passwordHasher.matches(loginRequest.password, user.getPassword())) {
+                return ResponseEntity.ok(user.getId());
+            }
+            throw previousFailure("bad_credentials", "Invalid credentials");
+        } catch (RuntimeException e) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(Map.of("Error", e.getMessage()));
+        }
+    }
+
+    private RuntimeException previousFailure(String reason, String message) {
+        meterRegistry.counter("auth.failures", "operation", "login", "reason", reason).increment();
+        return new RuntimeException(message);
+    }
+
+    private Object counted(Lookups lookups, Supplier<Object> login) {
+        long before = repositoryCalls.get();
+        Object response = login.get();
+        lookups.lookups += repositoryCalls.get() - before;
+        return response;
+    }
+
+    private static Object atDepth(int frames, Supplier<Object> call) {
+        return frames == 0 ? call.get() : atDepth(frames - 1, call);
+    }
+
+    private UserRepository stubRepository(User known) {
+        return (UserRepository) Proxy.newProxyInstance(
+                UserRepository.class.getClassLoader(),
+                new Class<?>[]{UserRepository.class},
+                (proxy, method, args) -> switch (method.getName()) {
+                    case "findByUsername" -> {
+                        repositoryCalls.incrementAndGet();
+                        yield KNOWN.equals(args[0]) ? Optional.of(known) : Optional.empty();
+                    }
+                    case "findCredentialsByUsername" -> {
+                        repositoryCalls.incrementAndGet();
+                        yield KNOWN.equals(args[0])
+                                ? Optional.of(new UserCredentials(known.getId(), known.getUsername(), known.getEmail(),
+                                        known.getPassword(), known.getEnabled()))
+                                : Optional.empty();
+                    }
+                    default -> throw new UnsupportedOperationException(method.getName());
+                });
+    }
+}
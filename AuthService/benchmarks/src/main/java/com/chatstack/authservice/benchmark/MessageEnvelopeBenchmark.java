@@ -0,0 +1,80 @@
+package com.chatstack.authservice.benchmark;
+
+import com.chatstack.authservice.dto.OtpEmailEvent;
+import com.chatstack.authservice.dto.UserRegisteredEvent;
+import com.chatstack.authservice.entities.User;
+import com.chatstack.authservice.services.EventEncoder;
+import com.chatstack.authservice.services.EventFormat;
+import com.chatstack.authservice.services.MessageEnvelopes;
+import org.openjdk.jmh.annotations.*;
+import tools.jackson.databind.ObjectMapper;
+import tools.jackson.databind.json.JsonMapper;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The registration and OTP events in each wire format: building the typed event, serializing it,
+ * and the relay's transcoding of the stored JSON. Run with -prof gc for allocation per operation;
+ * body sizes are printed once per fork.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MessageEnvelopeBenchmark {
+    @Param({"JSON", "CBOR", "SMILE"})
+    private EventFormat format;
+
+    private final ObjectMapper jsonMapper = JsonMapper.builder().build();
+    private ObjectMapper mapper;
+    private EventEncoder encoder;
+    private User user;
+    private String storedRegistration;
+    private String storedOtp;
+
+    @Setup
+    public void setup() {
+        user = new User();
+        user.setId(42L);
+        user.setUsername("johndoe");
+        user.setEmail("john@example.com");
+        mapper = format.newMapper();
+        encoder = new EventEncoder(jsonMapper, format.name());
+        storedRegistration = jsonMapper.writeValueAsString(MessageEnvelopes.userRegistered(user));
+        storedOtp = jsonMapper.writeValueAsString(MessageEnvelopes.otpEmail("VERIFY", user.getEmail(), "123456"));
+        System.out.printf("%n%s body bytes: registration=%d otp=%d%n", format,
+                encoder.encode(format, storedRegistration).length, encoder.encode(format, storedOtp).length);
+    }
+
+    @Benchmark
+    public UserRegisteredEvent registrationEvent() {
+        return MessageEnvelopes.userRegistered(user);
+    }
+
+    @Benchmark
+    public OtpEmailEvent otpEvent() {
+        return MessageEnvelopes.otpEmail("VERIFY", user.getEmail(), "123456");
+    }
+
+    @Benchmark
+    public byte[] registrationSerialize() {
+        return mapper.writeValueAsBytes(MessageEnvelopes.userRegistered(user));
+    }
+
+    @Benchmark
+    public byte[] otpSerialize() {
+        return mapper.writeValueAsBytes(MessageEnvelopes.otpEmail("VERIFY", user.getEmail(), "123456"));
+    }
+
+    @Benchmark
+    public byte[] registrationRelayEncode() {
+        return encoder.encode(format, storedRegistration);
+    }
+
+    @Benchmark
+    public byte[] otpRelayEncode() {
+        return encoder.encode(format, storedOtp);
+    }
+}
@@ -0,0 +1,161 @@
+package com.chatstack.authservice.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time from launching a JVM to the first successful login, for the plain jar as it used to start
+ * (ddl-auto=update, no AOT, no CDS) and for the fast-start build with and without the warm-up. Each run starts
+ * a fresh process on port 18080, waits for the readiness probe like a load balancer would, logs in, then times
+ * a few more logins.
+ * Build with mvn -Pfast-start package, start Postgres and RabbitMQ, then from AuthService:
+ *
+ * java -cp benchmarks/target/classes com.chatstack.authservice.benchmark.StartupComparison \
+ *     verifiedUser verifiedPassword 5
+ *
+ * Further arguments of the form name="java ..." or name@directory="java ..." replace the default launch
+ * commands. The fast-start variants run inside target/fast-start: the JVM only maps the CDS archive when the
+ * jar is given by the same relative path as during training. Leave BCRYPT_STRENGTH pinned (not 0), otherwise
+ * every start also pays for the cost calibration. Process output goes to target/startup-*.log.
+ */
+public class StartupComparison {
+    private static final int PORT = 18080;
+    private static final int FOLLOW_UP_LOGINS = 10;
+    private static final Duration START_TIMEOUT = Duration.ofMinutes(2);
+    private static final String JAR = "authService-0.0.1-SNAPSHOT-exec.jar";
+    private static final File FAST_START = new File("target/fast-start");
+
+    public static void main(String[] args) throws Exception {
+        String username = args[0];
+        String password = args[1];
+        int runs = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+
+        Map<String, Variant> variants = new LinkedHashMap<>();
+        if (args.length > 3) {
+            for (String variant : Arrays.copyOfRange(args, 3, args.length)) {
+                int split = variant.indexOf('=');
+                String name = variant.substring(0, split);
+                int at = name.indexOf('@');
+                File directory = at < 0 ? new File(".") : new File(name.substring(at + 1));
+                variants.put(at < 0 ? name : name.substring(0, at),
+                        new Variant(directory, List.of(variant.substring(split + 1).trim().split("\\s+"))));
+            }
+        } else {
+            variants.put("current", new Variant(new File("."), List.of("java", "-jar", "target/" + JAR,
+                    "--spring.jpa.hibernate.ddl-auto=update", "--spring.flyway.enabled=false")));
+            variants.put("fast-start", new Variant(FAST_START, List.of("java", "-XX:SharedArchiveFile=application.jsa",
+                    "-Dspring.aot.enabled=true", "-jar", JAR)));
+            variants.put("fast-start+warm-up", new Variant(FAST_START, List.of("java", "-XX:SharedArchiveFile=application.jsa",
+                    "-Dspring.aot.enabled=true", "-Dstartup.warm-up.enabled=true", "-jar", JAR)));
+        }
+
+        HttpClient client = HttpClient.newBuilder()
+                .connectTimeout(Duration.ofMillis(500))
+                .build();
+        HttpRequest readiness = HttpRequest.newBuilder(URI.create("http://localhost:" + (PORT + 1) + "/actuator/health/readiness"))
+                .timeout(Duration.ofSeconds(1))
+                .build();
+        HttpRequest login = HttpRequest.newBuilder(URI.create("http://localhost:" + PORT + "/api/auth/login"))
+                .header("Content-Type", "application/json")
+                .timeout(Duration.ofSeconds(10))
+                .POST(HttpRequest.BodyPublishers.ofString(
+                        "{\"username\":\"" + username + "\",\"password\":\"" + password + "\"}"))
+                .build();
+
+        Map<String, List<Result>> results = new LinkedHashMap<>();
+        // Variants take turns, so drift on the machine spreads over all of them
+        for (int run = 0; run < runs; run++) {
+            for (Map.Entry<String, Variant> variant : variants.entrySet()) {
+                Result result = start(variant.getKey(), variant.getValue(), run, client, readiness, login);
+                System.out.printf("%-20s run %d: first login after %6.0f ms (that login %5.0f ms, next %d median %5.0f ms)%n",
+                        variant.getKey(), run, result.toFirstLoginMillis, result.firstLoginMillis,
+                        FOLLOW_UP_LOGINS, result.followUpMillis);
+                results.computeIfAbsent(variant.getKey(), name -> new ArrayList<>()).add(result);
+            }
+        }
+
+        System.out.println();
+        results.forEach((name, list) -> System.out.printf(
+                "%-20s time to first login: median %6.0f ms  min %6.0f ms  first login %5.0f ms  next logins %5.0f ms%n",
+                name,
+                median(list.stream().mapToDouble(Result::toFirstLoginMillis).toArray()),
+                list.stream().mapToDouble(Result::toFirstLoginMillis).min().orElseThrow(),
+                median(list.stream().mapToDouble(Result::firstLoginMillis).toArray()),
+                median(list.stream().mapToDouble(Result::followUpMillis).toArray())));
+    }
+
+    private static Result start(String name, Variant variant, int run, HttpClient client,
+                                HttpRequest readiness, HttpRequest login)
+            throws IOException, InterruptedException {
+        List<String> arguments = new ArrayList<>(variant.command);
+        arguments.add("--server.port=" + PORT);
+        arguments.add("--management.server.port=" + (PORT + 1));
+        File log = new File("target/startup-" + name.replaceAll("[^A-Za-z0-9-]", "_") + "-" + run + ".log");
+        Process process = new ProcessBuilder(arguments)
+                .directory(variant.directory)
+                .redirectErrorStream(true)
+                .redirectOutput(log.getAbsoluteFile())
+                .start();
+        long launched = System.nanoTime();
+        try {
+            while (true) {
+                if (!process.isAlive()) {
+                    throw new IllegalStateException(name + " exited with " + process.exitValue() + " before the first login");
+                }
+                if (System.nanoTime() - launched > START_TIMEOUT.toNanos()) {
+                    throw new IllegalStateException(name + " did not become ready within " + START_TIMEOUT);
+                }
+                if (succeeds(client, readiness)) {
+                    long sent = System.nanoTime();
+                    if (!succeeds(client, login)) {
+                        throw new IllegalStateException(name + " is ready but the login failed");
+                    }
+                    long answered = System.nanoTime();
+                    double[] followUps = new double[FOLLOW_UP_LOGINS];
+                    for (int i = 0; i < FOLLOW_UP_LOGINS; i++) {
+                        long followUpSent = System.nanoTime();
+                        if (!succeeds(client, login)) {
+                            throw new IllegalStateException(name + " failed a login after the first one succeeded");
+                        }
+                        followUps[i] = (System.nanoTime() - followUpSent) / 1e6;
+                    }
+                    return new Result((answered - launched) / 1e6, (answered - sent) / 1e6, median(followUps));
+                }
+                Thread.sleep(10);
+            }
+        } finally {
+            process.destroy();
+            if (!process.waitFor(30, TimeUnit.SECONDS)) {
+                process.destroyForcibly().waitFor();
+            }
+        }
+    }
+
+    private static boolean succeeds(HttpClient client, HttpRequest request) throws InterruptedException {
+        try {
+            return client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode() == 200;
+        } catch (IOException e) {
+            // Not listening yet
+            return false;
+        }
+    }
+
+    private static double median(double[] values) {
+        double[] sorted = values.clone();
+        Arrays.sort(sorted);
+        return sorted[sorted.length / 2];
+    }
+
+    private record Variant(File directory, List<String> command) {
+    }
+
+    private record Result(double toFirstLoginMillis, double firstLoginMillis, double followUpMillis) {
+    }
+}
@@ -0,0 +1,108 @@
+package com.chatstack.authservice.benchmark;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntFunction;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Closed-loop load against a running AuthService, used to compare the default platform-thread
+ * mode with the virtual-threads profile. Start the service once per mode, then run:
+ *
+ * java -cp benchmarks/target/classes com.chatstack.authservice.benchmark.ThreadModeLoadComparison \
+ *     http://localhost:8080 verifiedUser verifiedPassword 1000 20000
+ *
+ * The login and /me phases need an already verified account; register creates fresh users.
+ */
+public class ThreadModeLoadComparison {
+    private static final Pattern TOKEN = Pattern.compile("\"token\"\\s*:\\s*\"([^\"]+)\"");
+
+    public static void main(String[] args) throws Exception {
+        String baseUrl = args[0];
+        String username = args[1];
+        String password = args[2];
+        int concurrency = args.length > 3 ? Integer.parseInt(args[3]) : 1000;
+        int requests = args.length > 4 ? Integer.parseInt(args[4]) : 20000;
+
+        HttpClient client = HttpClient.newBuilder()
+                .executor(Executors.newVirtualThreadPerTaskExecutor())
+                .connectTimeout(Duration.ofSeconds(5))
+                .build();
+
+        String loginBody = "{\"username\":\"" + username + "\",\"password\":\"" + password + "\"}";
+        HttpResponse<String> login = client.send(post(baseUrl + "/api/auth/login", loginBody),
+                HttpResponse.BodyHandlers.ofString());
+        Matcher matcher = TOKEN.matcher(login.body());
+        if (login.statusCode() != 200 || !matcher.find()) {
+            throw new IllegalStateException("Login for " + username + " failed: " + login.body());
+        }
+        String token = matcher.group(1);
+        String runId = UUID.randomUUID().toString().substring(0, 6);
+
+        run("register", client, concurrency, requests, i -> {
+            String name = "lt" + runId + i;
+            return post(baseUrl + "/api/auth/register",
+                    "{\"username\":\"" + name + "\",\"email\":\"" + name + "@load.test\",\"password\":\"password123\"}");
+        });
+        run("login", client, concurrency, requests, i -> post(baseUrl + "/api/auth/login", loginBody));
+        run("me", client, concurrency, requests, i -> HttpRequest.newBuilder(URI.create(baseUrl + "/api/auth/me"))
+                .header("Authorization", "Bearer " + token)
+                .GET()
+                .build());
+    }
+
+    private static void run(String name, HttpClient client, int concurrency, int requests,
+                            IntFunction<HttpRequest> requestFactory) throws InterruptedException {
+        long[] latencies = new long[requests];
+        AtomicInteger failures = new AtomicInteger();
+        Semaphore inFlight = new Semaphore(concurrency);
+
+        long start = System.nanoTime();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < requests; i++) {
+                int index = i;
+                inFlight.acquire();
+                executor.execute(() -> {
+                    long sent = System.nanoTime();
+                    try {
+                        HttpResponse<Void> response = client.send(requestFactory.apply(index),
+                                HttpResponse.BodyHandlers.discarding());
+                        if (response.statusCode() >= 400) {
+                            failures.incrementAndGet();
+                        }
+                    } catch (Exception e) {
+                        failures.incrementAndGet();
+                    } finally {
+                        latencies[index] = System.nanoTime() - sent;
+                        inFlight.release();
+                    }
+                });
+            }
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        Arrays.sort(latencies);
+        System.out.printf("%-9s %8.0f req/s  p50 %7.1f ms  p99 %7.1f ms  errors %d/%d%n",
+                name, requests / seconds,
+                latencies[(int) (requests * 0.50)] / 1e6,
+                latencies[Math.min(requests - 1, (int) (requests * 0.99))] / 1e6,
+                failures.get(), requests);
+    }
+
+    private static HttpRequest post(String url, String json) {
+        return HttpRequest.newBuilder(URI.create(url))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(json))
+                .build();
+    }
+}
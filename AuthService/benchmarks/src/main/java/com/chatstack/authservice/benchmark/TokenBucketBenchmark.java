@@ -0,0 +1,75 @@
+package com.chatstack.authservice.benchmark;
+
+import com.chatstack.authservice.util.TokenBucketTable;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rate-limit check under 64 threads: "spread" draws from 100k client keys, "hot" has every thread
+ * hammering one key (the worst case for the CAS loop). "table" is the TokenBucketTable behind
+ * RateLimitFilter; "lockedMap" is the straightforward synchronized HashMap of buckets it replaces as a baseline.
+ * The limits are generous so every call does the full update instead of being refused early.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 3)
+@Fork(1)
+@Threads(64)
+public class TokenBucketBenchmark {
+    private static final int KEYS = 100_000;
+    private static final long INTERVAL_NANOS = 1;
+    private static final int BURST = 1_000_000;
+
+    private String[] keys;
+    private TokenBucketTable table;
+    private final Map<String, long[]> lockedMap = new HashMap<>();
+
+    @Setup
+    public void setup() {
+        keys = new String[KEYS];
+        for (int i = 0; i < KEYS; i++) {
+            keys[i] = "10.0." + (i >>> 8) + "." + (i & 0xff);
+        }
+        table = new TokenBucketTable(65536);
+    }
+
+    @Benchmark
+    public long tableSpread() {
+        return table.tryAcquire(keys[ThreadLocalRandom.current().nextInt(KEYS)], INTERVAL_NANOS, BURST);
+    }
+
+    @Benchmark
+    public long tableHot() {
+        return table.tryAcquire(keys[0], INTERVAL_NANOS, BURST);
+    }
+
+    @Benchmark
+    public long lockedMapSpread() {
+        return lockedAcquire(keys[ThreadLocalRandom.current().nextInt(KEYS)]);
+    }
+
+    @Benchmark
+    public long lockedMapHot() {
+        return lockedAcquire(keys[0]);
+    }
+
+    private long lockedAcquire(String key) {
+        long now = System.nanoTime();
+        synchronized (lockedMap) {
+            long[] arrival = lockedMap.computeIfAbsent(key, k -> new long[]{now});
+            long next = Math.max(arrival[0], now) + INTERVAL_NANOS;
+            long wait = next - now - INTERVAL_NANOS * BURST;
+            if (wait > 0) {
+                return wait;
+            }
+            arrival[0] = next;
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package com.chatstack.authservice.benchmark;
+
+import com.chatstack.authservice.config.ReadYourWrites;
+import com.chatstack.authservice.controllers.InternalUserController;
+import com.chatstack.authservice.dto.UserBatchRequest;
+import com.chatstack.authservice.dto.UserDto;
+import com.chatstack.authservice.entities.User;
+import com.chatstack.authservice.repositories.UserRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import tools.jackson.databind.ObjectMapper;
+import tools.jackson.databind.json.JsonMapper;
+
+import java.io.OutputStream;
+import java.lang.reflect.Proxy;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Latency and allocation of POST /api/internal/users/batch for 10, 1k and 50k ids.
+ * "entityList" reproduces the previous implementation (full entities, one list, one body),
+ * "streamedProjection" runs the controller as it is now. The repository is an in-memory stub,
+ * so this measures the heap and serialization side, not the database. Run with -prof gc.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class UserBatchBenchmark {
+
+    @Param({"10", "1000", "50000"})
+    public int idCount;
+
+    private final ObjectMapper objectMapper = JsonMapper.builder().build();
+    private InternalUserController controller;
+    private UserRepository repository;
+    private UserBatchRequest request;
+
+    @Setup
+    public void setup() {
+        repository = stubRepository();
+        controller = new InternalUserController();
+        ReflectionTestUtils.setField(controller, "userRepository", repository);
+        ReflectionTestUtils.setField(controller, "objectMapper", objectMapper);
+        ReflectionTestUtils.setField(controller, "batchChunkSize", 1000);
+        // No replica configured, so every read goes through unpinned
+        ReflectionTestUtils.setField(controller, "readYourWrites", new ReadYourWrites(new SimpleMeterRegistry(), "", Duration.ofSeconds(5)));
+
+        List<Long> ids = new ArrayList<>(idCount);
+        for (long i = 1; i <= idCount; i++) {
+            ids.add(i);
+        }
+        request = new UserBatchRequest();
+        request.setIds(ids);
+    }
+
+    @Benchmark
+    public byte[] entityList() {
+        List<User> users = repository.findAllById(request.getIds());
+        List<UserDto> dtos = users.stream()
+                .map(UserDto::from)
+                .collect(Collectors.toList());
+        return objectMapper.writeValueAsBytes(dtos);
+    }
+
+    @Benchmark
+    public void streamedProjection() throws Exception {
+        StreamingResponseBody body = controller.getUsersByIds(request).getBody();
+        body.writeTo(OutputStream.nullOutputStream());
+    }
+
+    private static UserRepository stubRepository() {
+        return (UserRepository) Proxy.newProxyInstance(
+                UserRepository.class.getClassLoader(),
+                new Class<?>[]{UserRepository.class},
+                (proxy, method, args) -> switch (method.getName()) {
+                    case "findAllById" -> ((Collection<?>) args[0]).stream()
+                            .map(id -> user((Long) id))
+                            .collect(Collectors.toList());
+                    case "findDtosByIdIn" -> ((Collection<?>) args[0]).stream()
+                            .map(id -> new UserDto((Long) id, "user" + id, "user" + id + "@chatstack.dev", true, 1L))
+                            .collect(Collectors.toList());
+                    default -> throw new UnsupportedOperationException(method.getName());
+                });
+    }
+
+    private static User user(Long id) {
+        User user = new User();
+        user.setId(id);
+        user.setUsername("user" + id);
+        user.setEmail("user" + id + "@chatstack.dev");
+        user.setPassword("$2a$10$7EqJtq98hPqEX7fNZaFWoOhi5BWX4Z3BUDrQh8.cdDwnGQ5ZB6Jkm");
+        user.setEnabled(true);
+        user.setVersion(1L);
+        return user;
+    }
+}
@@ -0,0 +1,127 @@
+package com.chatstack.authservice.benchmark;
+
+import com.chatstack.authservice.util.UsernameIndex;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Top-10 username search over 1M generated names: prefixes of one, three and six characters, and the
+ * fuzzy fallback for a name with one letter changed. Setup prints the build time and the heap taken by
+ * the index, next to a TreeMap of the same names for scale.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = "-Xmx2g")
+public class UserSearchBenchmark {
+    private static final int USERS = 1_000_000;
+    private static final int QUERIES = 1024;
+    private static final String CONSONANTS = "bcdfghjklmnprstvwyz";
+    private static final String VOWELS = "aeiouy";
+
+    private UsernameIndex index;
+    private final String[] oneChar = new String[QUERIES];
+    private final String[] threeChars = new String[QUERIES];
+    private final String[] sixChars = new String[QUERIES];
+    private final String[] typos = new String[QUERIES];
+    private int next;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(42);
+        String[] names = new String[USERS];
+        for (int i = 0; i < USERS; i++) {
+            names[i] = name(random);
+        }
+
+        long before = usedHeap();
+        long start = System.nanoTime();
+        UsernameIndex.Builder builder = UsernameIndex.builder();
+        for (int i = 0; i < USERS; i++) {
+            builder.add(i, names[i]);
+        }
+        index = builder.build();
+        long buildMillis = (System.nanoTime() - start) / 1_000_000;
+        builder = null;
+        long indexHeap = usedHeap() - before;
+
+        before = usedHeap();
+        TreeMap<String, Long> tree = new TreeMap<>();
+        for (int i = 0; i < USERS; i++) {
+            tree.put(names[i].toLowerCase() + '\0' + i, (long) i);
+        }
+        long treeHeap = usedHeap() - before;
+        System.out.printf("%nindex: %d names, built in %d ms, arrays %.1f MiB, heap %.1f MiB; TreeMap heap %.1f MiB (%d)%n",
+                index.size(), buildMillis, index.memoryBytes() / 1048576.0, indexHeap / 1048576.0,
+                treeHeap / 1048576.0, tree.size());
+
+        int found = 0;
+        for (int i = 0; i < QUERIES; i++) {
+            String name = names[random.nextInt(USERS)];
+            oneChar[i] = name.substring(0, 1);
+            threeChars[i] = name.substring(0, Math.min(3, name.length()));
+            sixChars[i] = name.substring(0, Math.min(6, name.length()));
+            char[] typo = name.toCharArray();
+            typo[1 + random.nextInt(typo.length - 1)] = 'q';
+            typos[i] = new String(typo);
+            if (index.fuzzy(typos[i], 10, 0.5).stream().anyMatch(match -> match.username().equals(name))) {
+                found++;
+            }
+        }
+        System.out.printf("fuzzy: the original name is among the top 10 for %d of %d typo queries%n", found, QUERIES);
+    }
+
+    @Benchmark
+    public List<UsernameIndex.Match> prefix1() {
+        return index.prefix(oneChar[next++ & (QUERIES - 1)], 10);
+    }
+
+    @Benchmark
+    public List<UsernameIndex.Match> prefix3() {
+        return index.prefix(threeChars[next++ & (QUERIES - 1)], 10);
+    }
+
+    @Benchmark
+    public List<UsernameIndex.Match> prefix6() {
+        return index.prefix(sixChars[next++ & (QUERIES - 1)], 10);
+    }
+
+    @Benchmark
+    public List<UsernameIndex.Match> fuzzyTypo() {
+        return index.fuzzy(typos[next++ & (QUERIES - 1)], 10, 0.5);
+    }
+
+    // Consonant-vowel syllables, sometimes closed by a consonant, then digits for about a third of the names
+    private static String name(Random random) {
+        StringBuilder name = new StringBuilder();
+        int syllables = 2 + random.nextInt(3);
+        for (int i = 0; i < syllables; i++) {
+            name.append(CONSONANTS.charAt(random.nextInt(CONSONANTS.length())))
+                    .append(VOWELS.charAt(random.nextInt(VOWELS.length())));
+            if (random.nextInt(4) == 0) {
+                name.append(CONSONANTS.charAt(random.nextInt(CONSONANTS.length())));
+            }
+        }
+        if (random.nextInt(3) == 0) {
+            name.append(random.nextInt(1000));
+        }
+        if (random.nextInt(10) == 0) {
+            name.setCharAt(0, Character.toUpperCase(name.charAt(0)));
+        }
+        return name.toString();
+    }
+
+    private static long usedHeap() {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
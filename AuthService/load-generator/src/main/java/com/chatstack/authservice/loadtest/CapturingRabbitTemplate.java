@@ -0,0 +1,68 @@
+package com.chatstack.authservice.loadtest;
+
+import com.chatstack.authservice.config.RabbitMQConfig;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.rabbit.connection.ConnectionFactory;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import tools.jackson.databind.JsonNode;
+import tools.jackson.databind.ObjectMapper;
+import tools.jackson.databind.json.JsonMapper;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Takes the broker's place: every publish is confirmed on the spot, so OutboxRelay drains as it would
+ * against a healthy RabbitMQ, and the code in each email.exchange envelope is handed to whoever is
+ * waiting for that address. The connection factory is only there to satisfy RabbitTemplate; it is never opened.
+ */
+public class CapturingRabbitTemplate extends RabbitTemplate {
+    private final ObjectMapper objectMapper = JsonMapper.builder().build();
+    private final ConcurrentHashMap<String, CompletableFuture<String>> codes = new ConcurrentHashMap<>();
+    private final LongAdder published = new LongAdder();
+
+    public CapturingRabbitTemplate(ConnectionFactory connectionFactory) {
+        super(connectionFactory);
+    }
+
+    @Override
+    public void send(String exchange, String routingKey, Message message, CorrelationData correlationData) {
+        published.increment();
+        if (RabbitMQConfig.Email_EXCHANGE.equals(exchange)) {
+            // {pattern, type, data: {email, otp}}; batch envelopes from the import carry a list and are skipped
+            JsonNode data = objectMapper.readTree(message.getBody()).path("data");
+            if (data.has("otp")) {
+                code(data.path("email").asString()).complete(data.path("otp").asString());
+            }
+        }
+        if (correlationData != null) {
+            correlationData.getFuture().complete(new CorrelationData.Confirm(true, null));
+        }
+    }
+
+    /**
+     * Waits for the next code sent to the email address.
+     */
+    public String awaitCode(String email, Duration timeout)
+            throws InterruptedException, ExecutionException, TimeoutException {
+        try {
+            return code(email).get(timeout.toMillis(), TimeUnit.MILLISECONDS);
+        } finally {
+            codes.remove(email);
+        }
+    }
+
+    public long published() {
+        return published.sum();
+    }
+
+    private CompletableFuture<String> code(String email) {
+        return codes.computeIfAbsent(email, key -> new CompletableFuture<>());
+    }
+}
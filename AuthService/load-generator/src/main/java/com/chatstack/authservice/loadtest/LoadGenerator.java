@@ -0,0 +1,287 @@
+package com.chatstack.authservice.loadtest;
+
+import com.chatstack.authservice.AuthServiceApplication;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Open-model load on an in-process AuthService: new users arrive at a fixed rate, and each one registers,
+ * verifies with the code from its email event, logs in and calls /me a few times. Arrivals never wait for
+ * earlier users, so an overloaded service builds a queue instead of slowing the generator down; register
+ * and the whole journey are timed from the scheduled arrival, so that queueing shows up in the percentiles.
+ * The service runs on in-memory H2 in Postgres mode, with CapturingRabbitTemplate in place of the broker.
+ * Install the service with mvn install -DskipTests, then from AuthService:
+ *
+ * mvn -f load-generator/pom.xml compile exec:exec -Dloadtest.args="50 60 10 5"
+ *
+ * Arguments: arrivals per second, measured seconds, warm-up seconds, /me calls per user. Arguments starting
+ * with -- go to the application and replace the defaults below, e.g. --password.bcrypt.strength=12.
+ */
+public class LoadGenerator {
+    private static final Pattern TOKEN = Pattern.compile("\"token\"\\s*:\\s*\"([^\"]+)\"");
+    private static final String PASSWORD = "password123";
+    private static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(30);
+    private static final Duration CODE_TIMEOUT = Duration.ofSeconds(30);
+
+    private static final Map<String, String> APPLICATION_DEFAULTS = new LinkedHashMap<>();
+
+    static {
+        APPLICATION_DEFAULTS.put("spring.datasource.url", "jdbc:h2:mem:loadtest;MODE=PostgreSQL;DB_CLOSE_DELAY=-1;LOCK_TIMEOUT=10000");
+        APPLICATION_DEFAULTS.put("spring.datasource.driver-class-name", "org.h2.Driver");
+        APPLICATION_DEFAULTS.put("spring.datasource.username", "sa");
+        APPLICATION_DEFAULTS.put("spring.datasource.password", "");
+        APPLICATION_DEFAULTS.put("spring.jpa.properties.hibernate.dialect", "org.hibernate.dialect.H2Dialect");
+        // The Flyway scripts are written for Postgres; Hibernate creates the same tables on H2
+        APPLICATION_DEFAULTS.put("spring.flyway.enabled", "false");
+        APPLICATION_DEFAULTS.put("spring.jpa.hibernate.ddl-auto", "create");
+        APPLICATION_DEFAULTS.put("spring.rabbitmq.listener.simple.auto-startup", "false");
+        // Every simulated user comes from the same address
+        APPLICATION_DEFAULTS.put("ratelimit.enabled", "false");
+        // One instance, and H2 has no ON CONFLICT ... DO UPDATE for the otp_codes upsert
+        APPLICATION_DEFAULTS.put("otp.store.write-through", "false");
+        APPLICATION_DEFAULTS.put("server.port", "0");
+        APPLICATION_DEFAULTS.put("management.server.port", "0");
+        // Pinned rather than calibrated, so runs on different machines do the same work per login
+        APPLICATION_DEFAULTS.put("password.bcrypt.strength", "10");
+    }
+
+    private final HttpClient client;
+    private final String baseUrl;
+    private final CapturingRabbitTemplate broker;
+    private final int meCalls;
+    private final String runId = UUID.randomUUID().toString().substring(0, 6);
+
+    private final Endpoint register = new Endpoint("register");
+    private final Endpoint codeDelivery = new Endpoint("otp email");
+    private final Endpoint verify = new Endpoint("verify");
+    private final Endpoint login = new Endpoint("login");
+    private final Endpoint me = new Endpoint("me");
+    private final Endpoint journey = new Endpoint("journey");
+
+    private long measureFrom;
+
+    private LoadGenerator(String baseUrl, CapturingRabbitTemplate broker, int meCalls) {
+        this.baseUrl = baseUrl;
+        this.broker = broker;
+        this.meCalls = meCalls;
+        this.client = HttpClient.newBuilder()
+                .executor(Executors.newVirtualThreadPerTaskExecutor())
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(5))
+                .build();
+    }
+
+    public static void main(String[] args) throws Exception {
+        List<String> positional = new ArrayList<>();
+        Map<String, String> properties = new LinkedHashMap<>(APPLICATION_DEFAULTS);
+        for (String arg : args) {
+            if (arg.startsWith("--")) {
+                int split = arg.indexOf('=');
+                properties.put(arg.substring(2, split), arg.substring(split + 1));
+            } else {
+                positional.add(arg);
+            }
+        }
+        double rate = positional.size() > 0 ? Double.parseDouble(positional.get(0)) : 50;
+        int seconds = positional.size() > 1 ? Integer.parseInt(positional.get(1)) : 60;
+        int warmUpSeconds = positional.size() > 2 ? Integer.parseInt(positional.get(2)) : 10;
+        int meCalls = positional.size() > 3 ? Integer.parseInt(positional.get(3)) : 5;
+
+        // As command-line arguments, so they win over application.properties
+        String[] applicationArgs = properties.entrySet().stream()
+                .map(property -> "--" + property.getKey() + "=" + property.getValue())
+                .toArray(String[]::new);
+        ConfigurableApplicationContext context = new SpringApplicationBuilder(AuthServiceApplication.class, LoadGeneratorConfig.class)
+                .run(applicationArgs);
+        try {
+            String baseUrl = "http://localhost:" + context.getEnvironment().getProperty("local.server.port");
+            LoadGenerator generator = new LoadGenerator(baseUrl, context.getBean(CapturingRabbitTemplate.class), meCalls);
+            generator.run(rate, Duration.ofSeconds(seconds), Duration.ofSeconds(warmUpSeconds));
+        } finally {
+            SpringApplication.exit(context);
+        }
+        System.exit(0);
+    }
+
+    private void run(double rate, Duration measured, Duration warmUp) {
+        long interval = (long) (TimeUnit.SECONDS.toNanos(1) / rate);
+        long start = System.nanoTime();
+        measureFrom = start + warmUp.toNanos();
+        long end = measureFrom + measured.toNanos();
+        System.out.printf("Offering %.1f new users/s to %s for %ds after %ds of warm-up%n",
+                rate, baseUrl, measured.toSeconds(), warmUp.toSeconds());
+
+        int arrivals = 0;
+        try (ExecutorService users = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (long arrival = start; arrival < end; arrival = start + ++arrivals * interval) {
+                long wait = arrival - System.nanoTime();
+                if (wait > 0) {
+                    LockSupport.parkNanos(wait);
+                }
+                int index = arrivals;
+                long scheduled = arrival;
+                users.execute(() -> journey(index, scheduled));
+            }
+        }
+        long drained = System.nanoTime();
+
+        double seconds = measured.toNanos() / 1e9;
+        System.out.printf("%nAll users finished %.1f s after the last arrival; %d messages published%n%n",
+                (drained - end) / 1e9, broker.published());
+        System.out.printf("%-10s %8s %9s %7s %9s %9s %9s %9s %9s%n",
+                "", "count", "per sec", "errors", "p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "max ms");
+        for (Endpoint endpoint : List.of(register, codeDelivery, verify, login, me, journey)) {
+            Histogram latency = endpoint.latency;
+            System.out.printf("%-10s %8d %9.1f %7d %9.1f %9.1f %9.1f %9.1f %9.1f%n",
+                    endpoint.name, latency.getTotalCount(), latency.getTotalCount() / seconds, endpoint.errors.sum(),
+                    millis(latency.getValueAtPercentile(50)), millis(latency.getValueAtPercentile(90)),
+                    millis(latency.getValueAtPercentile(99)), millis(latency.getValueAtPercentile(99.9)),
+                    millis(latency.getMaxValue()));
+        }
+        for (Endpoint endpoint : List.of(register, codeDelivery, verify, login, me)) {
+            if (endpoint.firstError.get() != null) {
+                System.out.printf("First %s error: %s%n", endpoint.name, endpoint.firstError.get());
+            }
+        }
+    }
+
+    /**
+     * One user from registration to their last /me. A failed step ends the journey; it is counted as an error
+     * on that endpoint and on the journey.
+     */
+    private void journey(int index, long arrival) {
+        boolean measured = arrival >= measureFrom;
+        String username = "lg" + runId + index;
+        String email = username + "@load.test";
+        try {
+            if (call(register, post("/api/auth/register", "{\"username\":\"" + username + "\",\"email\":\"" + email
+                    + "\",\"password\":\"" + PASSWORD + "\"}"), arrival, measured) == null) {
+                fail(measured);
+                return;
+            }
+
+            long waiting = System.nanoTime();
+            String code;
+            try {
+                code = broker.awaitCode(email, CODE_TIMEOUT);
+            } catch (Exception e) {
+                codeDelivery.firstError.compareAndSet(null, "no code within " + CODE_TIMEOUT.toSeconds() + "s");
+                record(codeDelivery, waiting, false, measured);
+                fail(measured);
+                return;
+            }
+            record(codeDelivery, waiting, true, measured);
+
+            if (call(verify, post("/api/auth/verify", "{\"email\":\"" + email + "\",\"code\":\"" + code + "\"}"),
+                    System.nanoTime(), measured) == null) {
+                fail(measured);
+                return;
+            }
+
+            HttpResponse<String> loggedIn = call(login, post("/api/auth/login",
+                    "{\"username\":\"" + username + "\",\"password\":\"" + PASSWORD + "\"}"), System.nanoTime(), measured);
+            Matcher token = loggedIn == null ? null : TOKEN.matcher(loggedIn.body());
+            if (token == null || !token.find()) {
+                fail(measured);
+                return;
+            }
+
+            HttpRequest profile = HttpRequest.newBuilder(URI.create(baseUrl + "/api/auth/me"))
+                    .header("Authorization", "Bearer " + token.group(1))
+                    .timeout(REQUEST_TIMEOUT)
+                    .GET()
+                    .build();
+            for (int i = 0; i < meCalls; i++) {
+                if (call(me, profile, System.nanoTime(), measured) == null) {
+                    fail(measured);
+                    return;
+                }
+            }
+            record(journey, arrival, true, measured);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private HttpResponse<String> call(Endpoint endpoint, HttpRequest request, long startedAt, boolean measured)
+            throws InterruptedException {
+        try {
+            HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+            boolean ok = response.statusCode() < 400;
+            if (!ok) {
+                endpoint.firstError.compareAndSet(null, response.statusCode() + " " + response.body());
+            }
+            record(endpoint, startedAt, ok, measured);
+            return ok ? response : null;
+        } catch (IOException e) {
+            endpoint.firstError.compareAndSet(null, e.toString());
+            record(endpoint, startedAt, false, measured);
+            return null;
+        }
+    }
+
+    private void fail(boolean measured) {
+        if (measured) {
+            journey.errors.increment();
+        }
+    }
+
+    // Failed calls are counted, not timed: a fast 503 would otherwise flatter the percentiles
+    private static void record(Endpoint endpoint, long startedAt, boolean ok, boolean measured) {
+        if (!measured) {
+            return;
+        }
+        if (ok) {
+            endpoint.latency.recordValue(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - startedAt));
+        } else {
+            endpoint.errors.increment();
+        }
+    }
+
+    private HttpRequest post(String path, String json) {
+        return HttpRequest.newBuilder(URI.create(baseUrl + path))
+                .header("Content-Type", "application/json")
+                .timeout(REQUEST_TIMEOUT)
+                .POST(HttpRequest.BodyPublishers.ofString(json))
+                .build();
+    }
+
+    private static double millis(long micros) {
+        return micros / 1000.0;
+    }
+
+    private static final class Endpoint {
+        private final String name;
+        // Microseconds, resized as needed, three significant digits
+        private final Histogram latency = new ConcurrentHistogram(3);
+        private final LongAdder errors = new LongAdder();
+        private final AtomicReference<String> firstError = new AtomicReference<>();
+
+        private Endpoint(String name) {
+            this.name = name;
+        }
+    }
+}
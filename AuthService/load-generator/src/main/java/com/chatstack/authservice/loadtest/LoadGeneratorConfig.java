@@ -0,0 +1,16 @@
+package com.chatstack.authservice.loadtest;
+
+import org.springframework.amqp.rabbit.connection.ConnectionFactory;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+
+@Configuration(proxyBeanMethods = false)
+public class LoadGeneratorConfig {
+    // Primary, so OutboxRelay gets it instead of the template that would connect to RabbitMQ
+    @Bean
+    @Primary
+    public CapturingRabbitTemplate capturingRabbitTemplate(ConnectionFactory connectionFactory) {
+        return new CapturingRabbitTemplate(connectionFactory);
+    }
+}
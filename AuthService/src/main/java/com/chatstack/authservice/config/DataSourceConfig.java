@@ -0,0 +1,71 @@
+package com.chatstack.authservice.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.jdbc.autoconfigure.DataSourceProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+
+import javax.sql.DataSource;
+import java.util.Map;
+
+/**
+ * Primary and replica pools behind one DataSource, active once spring.datasource.replica.jdbc-url is set.
+ * Read-only transactions (@Transactional(readOnly = true) and Spring Data's own finders) mark their connection
+ * read-only before the first statement; the lazy proxy then takes it from the replica pool, everything else
+ * from the primary. ReadYourWrites can pin a thread's read-only work back to the primary.
+ * Each pool is sized with its own properties (spring.datasource.hikari.* and spring.datasource.replica.*)
+ * and reports its own hikaricp.* metrics under pool=primary / pool=replica.
+ */
+@Configuration
+@ConditionalOnProperty(name = "spring.datasource.replica.jdbc-url")
+public class DataSourceConfig {
+    private static final String PRIMARY = "primary";
+    private static final String REPLICA = "replica";
+
+    @Bean
+    @ConfigurationProperties("spring.datasource.hikari")
+    public HikariDataSource primaryDataSource(DataSourceProperties properties) {
+        HikariDataSource dataSource = properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+        dataSource.setPoolName(PRIMARY);
+        return dataSource;
+    }
+
+    // Driver and credentials default to the primary's, spring.datasource.replica.* overrides them
+    @Bean
+    @ConfigurationProperties("spring.datasource.replica")
+    public HikariDataSource replicaDataSource(DataSourceProperties properties) {
+        HikariDataSource dataSource = new HikariDataSource();
+        dataSource.setDriverClassName(properties.determineDriverClassName());
+        dataSource.setUsername(properties.determineUsername());
+        dataSource.setPassword(properties.determinePassword());
+        dataSource.setPoolName(REPLICA);
+        dataSource.setReadOnly(true);
+        return dataSource;
+    }
+
+    @Bean
+    @Primary
+    public DataSource dataSource(HikariDataSource primaryDataSource, HikariDataSource replicaDataSource) {
+        return routingDataSource(primaryDataSource, replicaDataSource);
+    }
+
+    static DataSource routingDataSource(DataSource primary, DataSource replica) {
+        AbstractRoutingDataSource readOnly = new AbstractRoutingDataSource() {
+            @Override
+            protected Object determineCurrentLookupKey() {
+                return ReadYourWrites.pinned() ? PRIMARY : REPLICA;
+            }
+        };
+        readOnly.setTargetDataSources(Map.of(PRIMARY, primary, REPLICA, replica));
+        readOnly.afterPropertiesSet();
+
+        LazyConnectionDataSourceProxy dataSource = new LazyConnectionDataSourceProxy(primary);
+        dataSource.setReadOnlyDataSource(readOnly);
+        return dataSource;
+    }
+}
@@ -1,9 +1,16 @@
 package com.chatstack.authservice.config;
 
 import com.chatstack.authservice.dto.ErrorResponse;
+import com.chatstack.authservice.security.PasswordHashingRejectedException;
+import com.chatstack.authservice.services.ChangeFeedCursorExpiredException;
+import com.chatstack.authservice.services.TokenNotRevocableException;
+import com.chatstack.authservice.services.UserImportException;
+import com.chatstack.authservice.services.UserImportTooLargeException;
 import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.web.bind.MethodArgumentNotValidException;
 import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.RestControllerAdvice;
@@ -22,6 +29,16 @@ public class GlobalExceptionHandler {
         return new ResponseEntity<>(error, HttpStatus.CONFLICT);
     }
 
+    @ExceptionHandler(ObjectOptimisticLockingFailureException.class)
+    public ResponseEntity<ErrorResponse> handleConcurrentUpdate(ObjectOptimisticLockingFailureException e, WebRequest request){
+        ErrorResponse error = new ErrorResponse(
+                HttpStatus.CONFLICT.value(),
+                "The account was modified concurrently, please retry.",
+                request.getDescription(false)
+        );
+        return new ResponseEntity<>(error, HttpStatus.CONFLICT);
+    }
+
     @ExceptionHandler(MethodArgumentNotValidException.class)
     public ResponseEntity<ErrorResponse> handleValidation(MethodArgumentNotValidException e, WebRequest request){
         String message = e.getBindingResult().getFieldErrors().get(0).getDefaultMessage();
@@ -34,6 +51,58 @@ public class GlobalExceptionHandler {
         return new ResponseEntity<>(error, HttpStatus.BAD_REQUEST);
     }
 
+    @ExceptionHandler(PasswordHashingRejectedException.class)
+    public ResponseEntity<ErrorResponse> handleHashingRejected(PasswordHashingRejectedException e, WebRequest request){
+        ErrorResponse error = new ErrorResponse(
+                HttpStatus.SERVICE_UNAVAILABLE.value(),
+                e.getMessage(),
+                request.getDescription(false)
+        );
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, "1")
+                .body(error);
+    }
+
+    @ExceptionHandler(ChangeFeedCursorExpiredException.class)
+    public ResponseEntity<ErrorResponse> handleCursorExpired(ChangeFeedCursorExpiredException e, WebRequest request){
+        ErrorResponse error = new ErrorResponse(
+                HttpStatus.GONE.value(),
+                e.getMessage(),
+                request.getDescription(false)
+        );
+        return new ResponseEntity<>(error, HttpStatus.GONE);
+    }
+
+    @ExceptionHandler(UserImportException.class)
+    public ResponseEntity<ErrorResponse> handleImportInput(UserImportException e, WebRequest request){
+        ErrorResponse error = new ErrorResponse(
+                HttpStatus.BAD_REQUEST.value(),
+                e.getMessage(),
+                request.getDescription(false)
+        );
+        return new ResponseEntity<>(error, HttpStatus.BAD_REQUEST);
+    }
+
+    @ExceptionHandler(UserImportTooLargeException.class)
+    public ResponseEntity<ErrorResponse> handleImportTooLarge(UserImportTooLargeException e, WebRequest request){
+        ErrorResponse error = new ErrorResponse(
+                HttpStatus.CONTENT_TOO_LARGE.value(),
+                e.getMessage(),
+                request.getDescription(false)
+        );
+        return new ResponseEntity<>(error, HttpStatus.CONTENT_TOO_LARGE);
+    }
+
+    @ExceptionHandler(TokenNotRevocableException.class)
+    public ResponseEntity<ErrorResponse> handleNotRevocable(TokenNotRevocableException e, WebRequest request){
+        ErrorResponse error = new ErrorResponse(
+                HttpStatus.BAD_REQUEST.value(),
+                e.getMessage(),
+                request.getDescription(false)
+        );
+        return new ResponseEntity<>(error, HttpStatus.BAD_REQUEST);
+    }
+
     @ExceptionHandler(Exception.class)
     public ResponseEntity<ErrorResponse> handleGlobal(Exception e, WebRequest request){
         ErrorResponse error = new ErrorResponse(
@@ -0,0 +1,56 @@
+package com.chatstack.authservice.config;
+
+import com.chatstack.authservice.entities.User;
+import com.github.benmanes.caffeine.jcache.configuration.CaffeineConfiguration;
+import com.github.benmanes.caffeine.jcache.spi.CaffeineCachingProvider;
+import org.hibernate.cache.jcache.ConfigSettings;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.hibernate.autoconfigure.HibernatePropertiesCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import javax.cache.CacheManager;
+import javax.cache.Caching;
+import java.net.URI;
+import java.time.Duration;
+import java.util.List;
+import java.util.OptionalLong;
+import java.util.UUID;
+
+/**
+ * Hibernate's second-level cache, kept in bounded Caffeine caches on each node: the users region holds
+ * users by id and users-by-username resolves a username to the id. Entries expire ttl after they were
+ * written, which also bounds how long a lost eviction can leave a stale user on another node.
+ * Hit, miss and put counts are published as hibernate.second.level.cache.* and hibernate.cache.natural.id.*.
+ */
+@Configuration
+public class HibernateCacheConfig {
+    private static final List<String> REGIONS = List.of(User.CACHE_REGION, User.USERNAME_CACHE_REGION);
+
+    @Bean(destroyMethod = "close")
+    public CacheManager hibernateCacheManager(@Value("${users.cache.max-size:100000}") long maxSize,
+                                              @Value("${users.cache.ttl:10m}") Duration ttl) {
+        // The provider hands out one manager per URI, so a fixed URI would let two application contexts in one
+        // JVM (as in the tests, each on its own database) read each other's users
+        CacheManager cacheManager = Caching.getCachingProvider(CaffeineCachingProvider.class.getName())
+                .getCacheManager(URI.create("hibernate-" + UUID.randomUUID()), HibernateCacheConfig.class.getClassLoader());
+        for (String region : REGIONS) {
+            CaffeineConfiguration<Object, Object> configuration = new CaffeineConfiguration<>();
+            configuration.setMaximumSize(OptionalLong.of(maxSize));
+            configuration.setExpireAfterWrite(OptionalLong.of(ttl.toNanos()));
+            // Hibernate already stores a disassembled copy, serializing it again on every get would be wasted
+            configuration.setStoreByValue(false);
+            cacheManager.createCache(region, configuration);
+        }
+        return cacheManager;
+    }
+
+    @Bean
+    public HibernatePropertiesCustomizer secondLevelCache(CacheManager hibernateCacheManager) {
+        return properties -> {
+            properties.put(ConfigSettings.CACHE_MANAGER, hibernateCacheManager);
+            // A region name typo would otherwise get an unbounded cache with default settings
+            properties.put(ConfigSettings.MISSING_CACHE_STRATEGY, "fail");
+        };
+    }
+}
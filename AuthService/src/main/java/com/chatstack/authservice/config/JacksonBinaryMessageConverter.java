@@ -0,0 +1,15 @@
+package com.chatstack.authservice.config;
+
+import com.chatstack.authservice.services.EventFormat;
+import org.springframework.amqp.support.converter.AbstractJacksonMessageConverter;
+import org.springframework.util.MimeTypeUtils;
+
+/**
+ * Reads and writes message bodies in one of the binary EventFormats, resolving the target type the same
+ * way the JSON converter does.
+ */
+public class JacksonBinaryMessageConverter extends AbstractJacksonMessageConverter {
+    public JacksonBinaryMessageConverter(EventFormat format) {
+        super(format.newMapper(), MimeTypeUtils.parseMimeType(format.contentType()));
+    }
+}
@@ -0,0 +1,175 @@
+package com.chatstack.authservice.config;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.WriteListener;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.servlet.http.HttpServletResponseWrapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.servlet.HandlerMapping;
+
+import java.io.FilterWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Counts the statements each request runs on its own thread, and the time they take, per endpoint
+ * (db.request.statements and db.request.time). An endpoint over its budget is logged, or fails the request
+ * when db.query-budget.fail-on-exceed is set, as it is for the tests, so an extra lookup on a hot path
+ * shows up as a failing test instead of a slower login.
+ * db.query-budget.endpoints lists "METHOD /pattern=statements" pairs; other endpoints get the default.
+ * Ahead of the security chain, so statements issued while authenticating count too.
+ * A request that goes async (DeferredResult, StreamingResponseBody) carries on off this thread, so it is
+ * not counted at all. Failing only works while the response is uncommitted: in that mode the handler's
+ * flushes are held back, and a response already committed by a full buffer is logged instead.
+ */
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE + 1)
+public class QueryBudgetFilter extends OncePerRequestFilter {
+    private static final Logger log = LoggerFactory.getLogger(QueryBudgetFilter.class);
+    private static final String UNKNOWN = "UNKNOWN";
+
+    private final StatementMonitor statementMonitor;
+    private final MeterRegistry meterRegistry;
+    private final int defaultBudget;
+    private final Map<String, Integer> budgets;
+    private final boolean failOnExceed;
+
+    public QueryBudgetFilter(StatementMonitor statementMonitor,
+                             MeterRegistry meterRegistry,
+                             @Value("${db.query-budget.default:10}") int defaultBudget,
+                             @Value("${db.query-budget.endpoints:}") String budgets,
+                             @Value("${db.query-budget.fail-on-exceed:false}") boolean failOnExceed) {
+        this.statementMonitor = statementMonitor;
+        this.meterRegistry = meterRegistry;
+        this.defaultBudget = defaultBudget;
+        this.budgets = parse(budgets);
+        this.failOnExceed = failOnExceed;
+    }
+
+    static Map<String, Integer> parse(String budgets) {
+        Map<String, Integer> parsed = new HashMap<>();
+        for (String budget : budgets.split(",")) {
+            if (budget.isBlank()) {
+                continue;
+            }
+            int split = budget.lastIndexOf('=');
+            if (split < 0) {
+                throw new IllegalArgumentException("Expected METHOD /pattern=statements in db.query-budget.endpoints, got " + budget.trim());
+            }
+            parsed.put(budget.substring(0, split).trim().replaceAll("\\s+", " "),
+                    Integer.parseInt(budget.substring(split + 1).trim()));
+        }
+        return parsed;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        StatementMonitor.Tally tally = statementMonitor.begin();
+        try {
+            filterChain.doFilter(request, failOnExceed ? new UnflushedResponse(response) : response);
+        } finally {
+            statementMonitor.end();
+        }
+
+        if (request.isAsyncStarted()) {
+            log.debug("{} {} went async, its statements are not counted", request.getMethod(), request.getRequestURI());
+            return;
+        }
+
+        // Set by the handler mapping during dispatch; requests turned away before it have none
+        Object pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+        String uri = pattern != null ? pattern.toString() : UNKNOWN;
+        DistributionSummary.builder("db.request.statements")
+                .tags("method", request.getMethod(), "uri", uri)
+                .register(meterRegistry)
+                .record(tally.statements());
+        Timer.builder("db.request.time")
+                .tags("method", request.getMethod(), "uri", uri)
+                .register(meterRegistry)
+                .record(tally.nanos(), TimeUnit.NANOSECONDS);
+
+        String endpoint = request.getMethod() + " " + uri;
+        int budget = budgets.getOrDefault(endpoint, defaultBudget);
+        if (tally.statements() > budget) {
+            String message = endpoint + " ran " + tally.statements() + " statements ("
+                    + TimeUnit.NANOSECONDS.toMillis(tally.nanos()) + " ms), over its budget of " + budget;
+            if (failOnExceed && !response.isCommitted()) {
+                throw new IllegalStateException(message);
+            }
+            log.warn(message);
+        } else {
+            log.debug("{} ran {} statements", endpoint, tally.statements());
+        }
+    }
+
+    // Ignores flushes, so the response stays uncommitted until the container finishes it or its buffer fills
+    private static final class UnflushedResponse extends HttpServletResponseWrapper {
+        private ServletOutputStream outputStream;
+        private PrintWriter writer;
+
+        UnflushedResponse(HttpServletResponse response) {
+            super(response);
+        }
+
+        @Override
+        public ServletOutputStream getOutputStream() throws IOException {
+            if (outputStream == null) {
+                ServletOutputStream delegate = super.getOutputStream();
+                outputStream = new ServletOutputStream() {
+                    @Override
+                    public void write(int b) throws IOException {
+                        delegate.write(b);
+                    }
+
+                    @Override
+                    public void write(byte[] b, int off, int len) throws IOException {
+                        delegate.write(b, off, len);
+                    }
+
+                    @Override
+                    public boolean isReady() {
+                        return delegate.isReady();
+                    }
+
+                    @Override
+                    public void setWriteListener(WriteListener writeListener) {
+                        delegate.setWriteListener(writeListener);
+                    }
+                };
+            }
+            return outputStream;
+        }
+
+        @Override
+        public PrintWriter getWriter() throws IOException {
+            if (writer == null) {
+                writer = new PrintWriter(new FilterWriter(super.getWriter()) {
+                    @Override
+                    public void flush() {
+                    }
+                });
+            }
+            return writer;
+        }
+
+        @Override
+        public void flushBuffer() {
+        }
+    }
+}
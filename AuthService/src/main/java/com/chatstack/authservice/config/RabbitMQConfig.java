@@ -1,8 +1,10 @@
 package com.chatstack.authservice.config;
 
+import com.chatstack.authservice.services.EventFormat;
 import org.springframework.amqp.core.*;
 import org.springframework.amqp.rabbit.connection.ConnectionFactory;
 import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.amqp.support.converter.ContentTypeDelegatingMessageConverter;
 import org.springframework.amqp.support.converter.JacksonJsonMessageConverter;
 import org.springframework.amqp.support.converter.MessageConverter;
 import org.springframework.context.annotation.Bean;
@@ -13,11 +15,17 @@ public class RabbitMQConfig {
     public static final String EXCHANGE = "user.exchange";
     public static final String QUEUE = "user.registration.queue";
     public static final String ROUTING_KEY = "user.registration.key";
+    public static final String USER_CHANGED_ROUTING_KEY = "user.changed.key";
+    public static final String REGISTRATION_BATCH_ROUTING_KEY = "user.registration.batch.key";
+    public static final String DELETION_BATCH_ROUTING_KEY = "user.deleted.batch.key";
 
     public static final String Email_EXCHANGE = "email.exchange";
     public static final String Email_QUEUE = "email.queue";
     public static final String Email_ROUTING_KEY = "email.otp.key";
 
+    // Fanout: every AuthService node binds its own queue and sees every revocation
+    public static final String TOKEN_REVOCATION_EXCHANGE = "token.revocation.exchange";
+
     @Bean
     public Queue queue() {
         return new Queue(QUEUE);
@@ -48,9 +56,21 @@ public class RabbitMQConfig {
         return BindingBuilder.bind(emailQueue).to(emailExchange).with(Email_ROUTING_KEY);
     }
 
+    @Bean
+    public FanoutExchange tokenRevocationExchange(){
+        return new FanoutExchange(TOKEN_REVOCATION_EXCHANGE);
+    }
+
+    // Decodes by the content-type header; anything unrecognised is read as JSON
     @Bean
     public MessageConverter converter(){
-        return new JacksonJsonMessageConverter();
+        ContentTypeDelegatingMessageConverter converter = new ContentTypeDelegatingMessageConverter(new JacksonJsonMessageConverter());
+        for (EventFormat format : EventFormat.values()) {
+            if (format != EventFormat.JSON) {
+                converter.addDelegate(format.contentType(), new JacksonBinaryMessageConverter(format));
+            }
+        }
+        return converter;
     }
 
     @Bean
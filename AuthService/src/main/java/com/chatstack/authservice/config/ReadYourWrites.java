@@ -0,0 +1,145 @@
+package com.chatstack.authservice.config;
+
+import com.chatstack.authservice.entities.User;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Keeps reads about a user on the primary for a while after that user was written, so a client that
+ * registers, verifies or resets a password and reads straight back never sees the replica's older copy.
+ * Writes are remembered by id, username and email from commit until the window has passed; a read wrapped
+ * in read(key, ...) for a remembered key, or in onPrimary(...), is routed to the primary by DataSourceConfig.
+ * Without a replica everything already goes to the primary and nothing is remembered.
+ */
+@Component
+public class ReadYourWrites {
+    private static final ThreadLocal<Boolean> PINNED = new ThreadLocal<>();
+
+    private final ConcurrentHashMap<Object, Long> recentUntil = new ConcurrentHashMap<>();
+    private final boolean enabled;
+    private final long windowNanos;
+    private final LongSupplier clock;
+    private final Counter pinnedReads;
+
+    @Autowired
+    public ReadYourWrites(MeterRegistry meterRegistry,
+                          @Value("${spring.datasource.replica.jdbc-url:}") String replicaUrl,
+                          @Value("${datasource.routing.read-your-writes:5s}") Duration window) {
+        this(!replicaUrl.isBlank(), window, System::nanoTime, meterRegistry);
+    }
+
+    ReadYourWrites(boolean enabled, Duration window, LongSupplier nanoClock, MeterRegistry meterRegistry) {
+        this.enabled = enabled;
+        this.windowNanos = window.toNanos();
+        this.clock = nanoClock;
+        this.pinnedReads = Counter.builder("datasource.reads.pinned")
+                .description("Reads sent to the primary because the user was written within the read-your-writes window")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Remembers the user's keys once the current transaction commits, or right away outside one.
+     */
+    public void recordWrite(User user) {
+        if (!enabled) {
+            return;
+        }
+        List<Object> keys = List.of(user.getId(), user.getUsername(), user.getEmail());
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    remember(keys);
+                }
+            });
+        } else {
+            remember(keys);
+        }
+    }
+
+    /**
+     * Remembers the keys of a write that is already committed, such as one another node announced.
+     */
+    public void recordCommittedWrite(Object... keys) {
+        if (enabled) {
+            remember(Arrays.asList(keys));
+        }
+    }
+
+    public <T> T read(Object key, Supplier<T> read) {
+        return isRecent(key) ? pinnedRead(read) : read.get();
+    }
+
+    public <T> T readAll(Collection<?> keys, Supplier<T> read) {
+        if (enabled && !recentUntil.isEmpty()) {
+            for (Object key : keys) {
+                if (isRecent(key)) {
+                    return pinnedRead(read);
+                }
+            }
+        }
+        return read.get();
+    }
+
+    /**
+     * Runs the reads on the primary regardless of the window, for lookups that feed a write or must not lag.
+     * Connections are picked on their first statement, so this may also wrap the body of a read-only transaction.
+     */
+    public <T> T onPrimary(Supplier<T> read) {
+        Boolean previous = PINNED.get();
+        PINNED.set(Boolean.TRUE);
+        try {
+            return read.get();
+        } finally {
+            if (previous == null) {
+                PINNED.remove();
+            }
+        }
+    }
+
+    static boolean pinned() {
+        return PINNED.get() != null;
+    }
+
+    @Scheduled(fixedDelayString = "${datasource.routing.purge-interval-ms:10000}")
+    public void purge() {
+        long now = clock.getAsLong();
+        recentUntil.values().removeIf(until -> until - now <= 0);
+    }
+
+    private boolean isRecent(Object key) {
+        if (!enabled || key == null) {
+            return false;
+        }
+        Long until = recentUntil.get(key);
+        return until != null && until - clock.getAsLong() > 0;
+    }
+
+    private <T> T pinnedRead(Supplier<T> read) {
+        pinnedReads.increment();
+        return onPrimary(read);
+    }
+
+    private void remember(List<Object> keys) {
+        long until = clock.getAsLong() + windowNanos;
+        for (Object key : keys) {
+            if (key != null) {
+                recentUntil.put(key, until);
+            }
+        }
+    }
+}
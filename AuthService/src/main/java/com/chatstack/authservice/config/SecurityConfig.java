@@ -1,27 +1,53 @@
 package com.chatstack.authservice.config;
 
+import com.chatstack.authservice.security.BCryptCostCalibrator;
+import com.chatstack.authservice.security.CalibratedBCryptPasswordEncoder;
 import com.chatstack.authservice.security.JwtAuthenticationFilter;
+import com.chatstack.authservice.security.RateLimitFilter;
+import com.chatstack.authservice.security.RateLimiter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.DispatcherType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.annotation.web.configuration.EnableWebSecurity;
 import org.springframework.security.config.http.SessionCreationPolicy;
-import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.DelegatingPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.security.web.SecurityFilterChain;
 import org.springframework.security.web.authentication.UsernamePasswordAuthenticationFilter;
+import org.springframework.security.web.util.matcher.RequestMatcher;
 import org.springframework.web.cors.CorsConfiguration;
+import tools.jackson.databind.ObjectMapper;
 
+import java.time.Duration;
 import java.util.List;
+import java.util.Map;
 
 @Configuration
 @EnableWebSecurity
 public class SecurityConfig {
+    private static final Logger log = LoggerFactory.getLogger(SecurityConfig.class);
+    private static final String BCRYPT = "bcrypt";
+
     private final JwtAuthenticationFilter jwtFilter;
     public SecurityConfig(JwtAuthenticationFilter jwtFilter) {
         this.jwtFilter = jwtFilter;
     }
     @Bean
-    public SecurityFilterChain securityFilterChain(HttpSecurity http) throws Exception {
+    public SecurityFilterChain securityFilterChain(HttpSecurity http,
+                                                   RateLimiter rateLimiter,
+                                                   ObjectMapper objectMapper,
+                                                   @Value("${server.port:8080}") int serverPort,
+                                                   @Value("${management.server.port:${server.port:8080}}") int managementPort) throws Exception {
+        // Actuator is open only when it runs on its own port, which is kept off the public network
+        RequestMatcher managementPortRequest = request ->
+                managementPort != serverPort && request.getLocalPort() == managementPort;
+
         http
                 .csrf(csrf -> csrf.disable())
                 .cors(cors -> cors.configurationSource( request -> {
@@ -37,15 +63,23 @@ public class SecurityConfig {
                                 SessionCreationPolicy.STATELESS
                         )
                 )
+                .addFilterBefore(new RateLimitFilter(rateLimiter, objectMapper), UsernamePasswordAuthenticationFilter.class)
                 .addFilterBefore(jwtFilter, UsernamePasswordAuthenticationFilter.class)
                 .authorizeHttpRequests(auth -> auth
+                        .requestMatchers(managementPortRequest).permitAll()
+                        // The original request was authorized; a long-poll's completion dispatch carries no token
+                        .dispatcherTypeMatchers(DispatcherType.ASYNC).permitAll()
                         .requestMatchers("/api/auth/login").permitAll()
                         .requestMatchers("/api/auth/register").permitAll()
                         .requestMatchers("/api/auth/verify").permitAll()
                         .requestMatchers("/api/auth/resendOtp").permitAll()
                         .requestMatchers("/api/auth/forgotPassword").permitAll()
                         .requestMatchers("/api/auth/resetPassword").permitAll()
-                        .requestMatchers("/api/auth/me").authenticated()
+                        // They act on the caller's own account, which a service token does not have
+                        .requestMatchers("/api/auth/me", "/api/auth/logout", "/api/auth/revoke")
+                        .hasAuthority(JwtAuthenticationFilter.USER_AUTHORITY)
+                        // Service-to-service only; a user's token must not read other users' records
+                        .requestMatchers("/api/internal/**").hasAuthority(JwtAuthenticationFilter.INTERNAL_AUTHORITY)
                         .anyRequest().authenticated()
                 );
 
@@ -53,8 +87,25 @@ public class SecurityConfig {
     }
 
     @Bean
-    public BCryptPasswordEncoder passwordEncoder() {
-        return new BCryptPasswordEncoder();
+    public PasswordEncoder passwordEncoder(MeterRegistry meterRegistry,
+                                           @Value("${password.bcrypt.strength:12}") int fixedStrength,
+                                           @Value("${password.bcrypt.target-ms:250}") long targetMs,
+                                           @Value("${password.bcrypt.min-strength:10}") int minStrength,
+                                           @Value("${password.bcrypt.max-strength:14}") int maxStrength) {
+        int strength = fixedStrength > 0
+                ? fixedStrength
+                : BCryptCostCalibrator.calibrate(Duration.ofMillis(targetMs), minStrength, maxStrength);
+        log.info("Hashing passwords with BCrypt cost {} ({})", strength,
+                fixedStrength > 0 ? "configured" : "calibrated for " + targetMs + "ms");
+        Gauge.builder("password.bcrypt.strength", () -> strength)
+                .description("BCrypt cost factor used for new hashes")
+                .register(meterRegistry);
+
+        CalibratedBCryptPasswordEncoder bcrypt = new CalibratedBCryptPasswordEncoder(strength);
+        // New hashes are stored as {bcrypt}$2a$..; untagged hashes from before still match and get rewritten on login
+        DelegatingPasswordEncoder encoder = new DelegatingPasswordEncoder(BCRYPT, Map.of(BCRYPT, bcrypt));
+        encoder.setDefaultPasswordEncoderForMatches(bcrypt);
+        return encoder;
     }
 
 //    @Bean
@@ -0,0 +1,187 @@
+package com.chatstack.authservice.config;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+
+/**
+ * Times every statement sent through the application's DataSource, whichever configuration built it.
+ * Statements slower than db.slow-statement.threshold are logged from a background thread with their SQL only:
+ * bind values never reach the log and literals in unprepared SQL are masked. When the log thread falls behind,
+ * further slow statements are counted but not logged.
+ * While a request is served its thread also keeps a tally that QueryBudgetFilter holds against the endpoint's budget.
+ */
+@Component
+public class StatementMonitor implements BeanPostProcessor, MeterBinder, DisposableBean {
+    private static final Logger log = LoggerFactory.getLogger(StatementMonitor.class);
+    private static final String DATA_SOURCE = "dataSource";
+    // Quoted strings (with '' escapes) and standalone numbers; identifiers like t1_0 have no word boundary inside
+    private static final Pattern LITERALS = Pattern.compile("'(?:[^']|'')*'|\\b\\d+(?:\\.\\d+)?\\b");
+    private static final ThreadLocal<Tally> TALLY = new ThreadLocal<>();
+
+    private final long thresholdNanos;
+    private final ThreadPoolExecutor slowLog;
+    private final LongAdder slowStatements = new LongAdder();
+    private final LongAdder unlogged = new LongAdder();
+
+    public StatementMonitor(@Value("${db.slow-statement.threshold:200ms}") Duration threshold,
+                            @Value("${db.slow-statement.log-queue:1000}") int logQueue) {
+        this.thresholdNanos = threshold.toNanos();
+        this.slowLog = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(logQueue),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "slow-statement-log");
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                (runnable, executor) -> unlogged.increment());
+    }
+
+    @Override
+    public Object postProcessAfterInitialization(Object bean, String beanName) {
+        return bean instanceof DataSource dataSource && DATA_SOURCE.equals(beanName)
+                ? new MonitoredDataSource(dataSource)
+                : bean;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("db.statements.slow", slowStatements, LongAdder::sum)
+                .description("Statements slower than db.slow-statement.threshold")
+                .register(registry);
+        FunctionCounter.builder("db.statements.slow.unlogged", unlogged, LongAdder::sum)
+                .description("Slow statements dropped from the log because its queue was full")
+                .register(registry);
+    }
+
+    @Override
+    public void destroy() {
+        slowLog.shutdown();
+    }
+
+    // Starts counting the statements the current thread runs until end()
+    public Tally begin() {
+        Tally tally = new Tally();
+        TALLY.set(tally);
+        return tally;
+    }
+
+    public void end() {
+        TALLY.remove();
+    }
+
+    static String redact(String sql) {
+        return sql == null ? "(batch)" : LITERALS.matcher(sql).replaceAll("?");
+    }
+
+    private void record(String sql, long nanos) {
+        Tally tally = TALLY.get();
+        if (tally != null) {
+            tally.statements++;
+            tally.nanos += nanos;
+        }
+        if (nanos >= thresholdNanos) {
+            slowStatements.increment();
+            String thread = Thread.currentThread().getName();
+            slowLog.execute(() -> log.warn("Slow statement on {} took {} ms: {}",
+                    thread, TimeUnit.NANOSECONDS.toMillis(nanos), redact(sql)));
+        }
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    private Connection monitored(Connection connection) {
+        return (Connection) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{Connection.class},
+                (proxy, method, args) -> switch (method.getName()) {
+                    case "equals" -> proxy == args[0];
+                    case "hashCode" -> System.identityHashCode(proxy);
+                    default -> {
+                        Object result = invoke(connection, method, args);
+                        // createStatement, prepareStatement and prepareCall; the last two carry their SQL
+                        if (result instanceof Statement statement) {
+                            yield monitored(statement, args != null && args.length > 0 && args[0] instanceof String sql ? sql : null);
+                        }
+                        yield result;
+                    }
+                });
+    }
+
+    private Statement monitored(Statement statement, String preparedSql) {
+        Class<?> type = statement instanceof CallableStatement ? CallableStatement.class
+                : statement instanceof PreparedStatement ? PreparedStatement.class
+                : Statement.class;
+        return (Statement) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{type},
+                (proxy, method, args) -> {
+                    if (!method.getName().startsWith("execute")) {
+                        return invoke(statement, method, args);
+                    }
+                    String sql = args != null && args.length > 0 && args[0] instanceof String text ? text : preparedSql;
+                    long start = System.nanoTime();
+                    try {
+                        return invoke(statement, method, args);
+                    } finally {
+                        record(sql, System.nanoTime() - start);
+                    }
+                });
+    }
+
+    /**
+     * Statements one thread ran between begin() and end(); only that thread writes to it.
+     */
+    public static final class Tally {
+        private int statements;
+        private long nanos;
+
+        public int statements() {
+            return statements;
+        }
+
+        public long nanos() {
+            return nanos;
+        }
+    }
+
+    private class MonitoredDataSource extends DelegatingDataSource {
+        MonitoredDataSource(DataSource target) {
+            super(target);
+        }
+
+        @Override
+        public Connection getConnection() throws SQLException {
+            return monitored(super.getConnection());
+        }
+
+        @Override
+        public Connection getConnection(String username, String password) throws SQLException {
+            return monitored(super.getConnection(username, password));
+        }
+    }
+}
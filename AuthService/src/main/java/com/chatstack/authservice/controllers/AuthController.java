@@ -1,12 +1,16 @@
 package com.chatstack.authservice.controllers;
 
-import com.chatstack.authservice.dto.AuthResponse;
+import com.chatstack.authservice.config.ReadYourWrites;
 import com.chatstack.authservice.dto.LoginRequest;
+import com.chatstack.authservice.dto.LoginResult;
 import com.chatstack.authservice.entities.User;
 import com.chatstack.authservice.repositories.UserRepository;
+import com.chatstack.authservice.security.JwtAuthenticationFilter;
 import com.chatstack.authservice.services.AuthService;
+import com.chatstack.authservice.services.TokenRevocationService;
 import jakarta.validation.Valid;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
@@ -23,6 +27,10 @@ public class AuthController {
     private AuthService authService;
     @Autowired
     private UserRepository userRepository;
+    @Autowired
+    private ReadYourWrites readYourWrites;
+    @Autowired
+    private TokenRevocationService tokenRevocationService;
 
     @PostMapping("/register")
     public ResponseEntity<User> register(@Valid @RequestBody User user){
@@ -63,20 +71,30 @@ public class AuthController {
 
     @PostMapping("/login")
     public ResponseEntity<?> login(@RequestBody LoginRequest loginRequest){
-        try {
-            String token = authService.login(loginRequest);
-            User user = authService.getUserByUsername(loginRequest.username);
-            return ResponseEntity.ok(new AuthResponse(
-                    token,
-                    user.getId(),
-                    user.getUsername(),
-                    user.getEmail()
-            ));
-        }
-        catch (RuntimeException e){
-            return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
-                    .body(Map.of("Error", e.getMessage()));
+        // An overloaded hashing pool still surfaces as PasswordHashingRejectedException, answered 503
+        return switch (authService.login(loginRequest)) {
+            case LoginResult.Success success -> ResponseEntity.ok(success.response());
+            case LoginResult.Failure failure -> ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(failure.body());
+        };
+    }
+
+    // Revokes the token this request was made with; only user tokens get here (SecurityConfig)
+    @PostMapping("/logout")
+    public ResponseEntity<?> logout(@RequestHeader(value = HttpHeaders.AUTHORIZATION, required = false) String authorization,
+                                    Principal principal){
+        String token = JwtAuthenticationFilter.bearerToken(authorization);
+        if (token == null) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body("Unauthorized");
         }
+        tokenRevocationService.revoke(token, Long.parseLong(principal.getName()));
+        return ResponseEntity.ok(Map.of("message", "Logged out successfully"));
+    }
+
+    // Revokes another of the caller's tokens, e.g. one left on a lost device
+    @PostMapping("/revoke")
+    public ResponseEntity<?> revoke(@RequestBody Map<String, String> body, Principal principal){
+        tokenRevocationService.revoke(body.get("token"), Long.parseLong(principal.getName()));
+        return ResponseEntity.ok(Map.of("message", "Token revoked successfully"));
     }
 
     @GetMapping("/me")
@@ -87,9 +105,9 @@ public class AuthController {
 
         Long userId = Long.parseLong(principal.getName());
 
-        return userRepository.findById(userId)
+        // Usually answered by the second-level cache without a query
+        return readYourWrites.read(userId, () -> userRepository.findById(userId))
                 .map(user -> {
-                    // Return a Map or a DTO so we don't send the password hash!
                     Map<String, Object> response = new HashMap<>();
                     response.put("id", user.getId());
                     response.put("username", user.getUsername());
@@ -1,15 +1,41 @@
 package com.chatstack.authservice.controllers;
 
+import com.chatstack.authservice.config.ReadYourWrites;
+import com.chatstack.authservice.dto.AvailabilityRequest;
+import com.chatstack.authservice.dto.UserBatchRequest;
+import com.chatstack.authservice.dto.UserChangePage;
 import com.chatstack.authservice.dto.UserDto;
+import com.chatstack.authservice.dto.UserImportResult;
+import com.chatstack.authservice.dto.UserProfile;
 import com.chatstack.authservice.entities.User;
 import com.chatstack.authservice.repositories.UserRepository;
+import com.chatstack.authservice.services.AvailabilityIndex;
+import com.chatstack.authservice.services.UserChangeFeed;
+import com.chatstack.authservice.services.UserImportReader;
+import com.chatstack.authservice.services.UserImportService;
+import com.chatstack.authservice.services.UserImportTooLargeException;
+import com.chatstack.authservice.services.UserSearchIndex;
+import jakarta.persistence.EntityManagerFactory;
+import org.springframework.data.domain.Limit;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.ETag;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.util.unit.DataSize;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import tools.jackson.core.JsonGenerator;
+import tools.jackson.databind.ObjectMapper;
+import tools.jackson.databind.SequenceWriter;
 
-import java.util.List;
-import java.util.Map;
-import java.util.stream.Collectors;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.*;
 
 /**
  * Internal API for service-to-service communication
@@ -18,51 +44,218 @@ import java.util.stream.Collectors;
 @RestController
 @RequestMapping("/api/internal/users")
 public class InternalUserController {
+    private static final int MAX_AVAILABILITY_CANDIDATES = 1000;
+    private static final int MAX_CHANGES_PER_PAGE = 1000;
+    private static final int MAX_SEARCH_RESULTS = 50;
 
     @Autowired
     private UserRepository userRepository;
+    @Autowired
+    private ObjectMapper objectMapper;
+    @Autowired
+    private AvailabilityIndex availabilityIndex;
+    @Autowired
+    private UserChangeFeed userChangeFeed;
+    @Autowired
+    private ReadYourWrites readYourWrites;
+    @Autowired
+    private UserImportService userImportService;
+    @Autowired
+    private UserSearchIndex userSearchIndex;
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Value("${internal.users.batch.chunk-size:1000}")
+    private int batchChunkSize;
+    @Value("${user.changes.max-wait-ms:30000}")
+    private long maxChangesWaitMs;
+    @Value("${users.import.max-bytes:16MB}")
+    private DataSize importMaxBytes;
 
     @GetMapping("/{id}")
-    public ResponseEntity<UserDto> getUserById(@PathVariable Long id) {
+    public ResponseEntity<UserDto> getUserById(@PathVariable Long id,
+                                               @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        return readYourWrites.read(id, () -> findUser(id, ifNoneMatch));
+    }
+
+    // The entity usually comes from the second-level cache, so a revalidation costs no query either.
+    // When it is not cached, a matching version is answered without loading it.
+    private ResponseEntity<UserDto> findUser(Long id, String ifNoneMatch) {
+        if (ifNoneMatch != null && !entityManagerFactory.getCache().contains(User.class, id)) {
+            Optional<Long> version = userRepository.findVersionById(id);
+            if (version.isPresent() && matches(ifNoneMatch, version.get())) {
+                return ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+                        .eTag(eTag(version.get()))
+                        .build();
+            }
+        }
         return userRepository.findById(id)
-                .map(this::toDto)
-                .map(ResponseEntity::ok)
+                .map(user -> {
+                    if (ifNoneMatch != null && matches(ifNoneMatch, user.getVersion())) {
+                        return ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+                                .eTag(eTag(user.getVersion()))
+                                .<UserDto>build();
+                    }
+                    return ResponseEntity.ok()
+                            .eTag(eTag(user.getVersion()))
+                            .body(UserDto.from(user));
+                })
                 .orElse(ResponseEntity.notFound().build());
     }
 
     @PostMapping("/batch")
-    public ResponseEntity<List<UserDto>> getUsersByIds(@RequestBody Map<String, List<Long>> request) {
-        List<Long> ids = request.get("ids");
+    public ResponseEntity<StreamingResponseBody> getUsersByIds(@RequestBody UserBatchRequest request) {
+        List<Long> ids = request.getIds();
         if (ids == null || ids.isEmpty()) {
             return ResponseEntity.badRequest().build();
         }
 
-        List<User> users = userRepository.findAllById(ids);
-        List<UserDto> userDtos = users.stream()
-                .map(this::toDto)
-                .collect(Collectors.toList());
+        Map<Long, Long> knownVersions = request.getKnownVersions() != null ? request.getKnownVersions() : Map.of();
+        List<Long> uniqueIds = new ArrayList<>(new LinkedHashSet<>(ids));
+
+        StreamingResponseBody body = out -> writeUsers(out, uniqueIds, knownVersions);
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(body);
+    }
+
+    /**
+     * Streams the users as a JSON array, one bounded IN query per chunk, so neither the
+     * statement nor the response for a very large id set is ever built in one piece.
+     * Users whose version matches knownVersions are left out.
+     */
+    private void writeUsers(OutputStream out, List<Long> ids, Map<Long, Long> knownVersions) throws IOException {
+        try (SequenceWriter writer = objectMapper.writer().writeValuesAsArray(out)) {
+            for (int from = 0; from < ids.size(); from += batchChunkSize) {
+                List<Long> chunk = ids.subList(from, Math.min(ids.size(), from + batchChunkSize));
+                for (UserDto user : readYourWrites.readAll(chunk, () -> userRepository.findDtosByIdIn(chunk))) {
+                    if (!Objects.equals(knownVersions.get(user.getId()), user.getVersion())) {
+                        writer.write(user);
+                    }
+                }
+                writer.flush();
+            }
+        }
+    }
+
+    /**
+     * Changes after the cursor, oldest first. With waitMs the request is held until a change arrives
+     * or the wait runs out (long-poll). 410 Gone when the cursor has left the retention window.
+     */
+    @GetMapping("/changes")
+    public DeferredResult<UserChangePage> getChanges(@RequestParam(defaultValue = "0") long after,
+                                                     @RequestParam(defaultValue = "500") int limit,
+                                                     @RequestParam(defaultValue = "0") long waitMs) {
+        int pageSize = Math.clamp(limit, 1, MAX_CHANGES_PER_PAGE);
+        return userChangeFeed.poll(after, pageSize, Math.clamp(waitMs, 0, maxChangesWaitMs));
+    }
 
-        return ResponseEntity.ok(userDtos);
+    /**
+     * Every user, streamed as {"cursor": n, "users": [...]}. The cursor is taken before the first page,
+     * so tailing /changes from it replays whatever changed while the snapshot was read.
+     */
+    @GetMapping("/changes/snapshot")
+    public ResponseEntity<StreamingResponseBody> getSnapshot() {
+        long cursor = userChangeFeed.latestSeq();
+        StreamingResponseBody body = out -> writeSnapshot(out, cursor);
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(body);
+    }
+
+    private void writeSnapshot(OutputStream out, long cursor) throws IOException {
+        try (JsonGenerator generator = objectMapper.createGenerator(out)) {
+            generator.writeStartObject();
+            generator.writeNumberProperty("cursor", cursor);
+            generator.writeName("users");
+            generator.writeStartArray();
+            long lastId = 0;
+            List<UserDto> page;
+            do {
+                page = userRepository.findDtosAfterId(lastId, Limit.of(batchChunkSize));
+                for (UserDto user : page) {
+                    generator.writePOJO(user);
+                    lastId = user.getId();
+                }
+                generator.flush();
+            } while (page.size() == batchChunkSize);
+            generator.writeEndArray();
+            generator.writeEndObject();
+        }
+    }
+
+    /**
+     * Bulk registration from a CSV file (header username,email,password) or a JSON array, read as a stream.
+     * Imported users are unverified and get a verification email, exactly as if they had called /register.
+     */
+    @PostMapping(value = "/import", consumes = "text/csv")
+    public ResponseEntity<UserImportResult> importCsv(InputStream body,
+                                                      @RequestHeader(value = HttpHeaders.CONTENT_LENGTH, defaultValue = "-1") long contentLength) {
+        return ResponseEntity.ok(userImportService.importUsers(UserImportReader.csv(importBody(body, contentLength))));
+    }
+
+    @PostMapping(value = "/import", consumes = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE})
+    public ResponseEntity<UserImportResult> importJson(InputStream body,
+                                                       @RequestHeader(value = HttpHeaders.CONTENT_LENGTH, defaultValue = "-1") long contentLength) {
+        return ResponseEntity.ok(userImportService.importUsers(UserImportReader.json(objectMapper, importBody(body, contentLength))));
+    }
+
+    // A declared length over the cap is refused before anything is imported; a chunked body is cut off when it gets there
+    private InputStream importBody(InputStream body, long contentLength) {
+        long maxBytes = importMaxBytes.toBytes();
+        if (contentLength > maxBytes) {
+            throw new UserImportTooLargeException("Import input is limited to " + maxBytes + " bytes per request");
+        }
+        return UserImportReader.limit(body, maxBytes);
+    }
+
+    /**
+     * Verified users whose username starts with q (ASCII case ignored), for mention autocomplete.
+     * With fuzzy, a short result is topped up with similar names, so a typo still finds the user.
+     */
+    @GetMapping("/search")
+    public ResponseEntity<List<UserProfile>> searchUsers(@RequestParam String q,
+                                                         @RequestParam(defaultValue = "10") int limit,
+                                                         @RequestParam(defaultValue = "true") boolean fuzzy) {
+        if (q.isBlank()) {
+            return ResponseEntity.badRequest().build();
+        }
+        return ResponseEntity.ok(userSearchIndex.search(q.strip(), Math.clamp(limit, 1, MAX_SEARCH_RESULTS), fuzzy));
     }
 
     @GetMapping("/exists/username/{username}")
     public ResponseEntity<Map<String, Boolean>> userExistsByUsername(@PathVariable String username) {
-        boolean exists = userRepository.existsByUsername(username);
+        boolean exists = availabilityIndex.usernameExists(username);
         return ResponseEntity.ok(Map.of("exists", exists));
     }
 
     @GetMapping("/exists/email/{email}")
     public ResponseEntity<Map<String, Boolean>> userExistsByEmail(@PathVariable String email) {
-        boolean exists = userRepository.existsByEmail(email);
+        boolean exists = availabilityIndex.emailExists(email);
         return ResponseEntity.ok(Map.of("exists", exists));
     }
 
-    private UserDto toDto(User user) {
-        UserDto dto = new UserDto();
-        dto.setId(user.getId());
-        dto.setUsername(user.getUsername());
-        dto.setEmail(user.getEmail());
-        dto.setEnabled(user.getEnabled());
-        return dto;
+    @PostMapping("/exists")
+    public ResponseEntity<Map<String, Map<String, Boolean>>> usersExist(@RequestBody AvailabilityRequest request) {
+        List<String> usernames = request.getUsernames() != null ? request.getUsernames() : List.of();
+        List<String> emails = request.getEmails() != null ? request.getEmails() : List.of();
+        if (usernames.size() > MAX_AVAILABILITY_CANDIDATES || emails.size() > MAX_AVAILABILITY_CANDIDATES) {
+            return ResponseEntity.badRequest().build();
+        }
+
+        return ResponseEntity.ok(Map.of(
+                "usernames", availabilityIndex.usernamesExist(usernames),
+                "emails", availabilityIndex.emailsExist(emails)
+        ));
+    }
+
+    private static String eTag(Long version) {
+        return "\"" + version + "\"";
+    }
+
+    private static boolean matches(String ifNoneMatch, Long version) {
+        String current = String.valueOf(version);
+        return ETag.parse(ifNoneMatch).stream()
+                .anyMatch(tag -> tag.isWildcard() || tag.tag().equals(current));
     }
 }
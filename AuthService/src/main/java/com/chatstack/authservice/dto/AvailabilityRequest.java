@@ -0,0 +1,15 @@
+package com.chatstack.authservice.dto;
+
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.util.List;
+
+@Getter
+@Setter
+@NoArgsConstructor
+public class AvailabilityRequest {
+    private List<String> usernames;
+    private List<String> emails;
+}
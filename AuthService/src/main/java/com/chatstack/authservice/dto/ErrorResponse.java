@@ -1,7 +1,10 @@
 package com.chatstack.authservice.dto;
 
+import lombok.Getter;
+
 import java.time.LocalDateTime;
 
+@Getter
 public class ErrorResponse {
     private LocalDateTime timestamp;
     private int status;
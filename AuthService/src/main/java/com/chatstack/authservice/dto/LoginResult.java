@@ -0,0 +1,35 @@
+package com.chatstack.authservice.dto;
+
+import java.util.Map;
+
+/**
+ * Outcome of AuthService.login. A rejected login is one of a few shared constants rather than an exception,
+ * so turning away a flood of bad attempts allocates no stack trace and no error body.
+ */
+public sealed interface LoginResult {
+    record Success(AuthResponse response) implements LoginResult {
+    }
+
+    // Unknown users and wrong passwords share a message, so the answer does not reveal which usernames exist
+    enum Failure implements LoginResult {
+        UNKNOWN_USER("unknown_user", "Invalid username or password"),
+        NOT_VERIFIED("not_verified", "User not verified"),
+        BAD_CREDENTIALS("bad_credentials", "Invalid username or password");
+
+        private final String reason;
+        private final Map<String, String> body;
+
+        Failure(String reason, String message) {
+            this.reason = reason;
+            this.body = Map.of("Error", message);
+        }
+
+        public String reason() {
+            return reason;
+        }
+
+        public Map<String, String> body() {
+            return body;
+        }
+    }
+}
@@ -0,0 +1,9 @@
+package com.chatstack.authservice.dto;
+
+import java.util.List;
+
+/**
+ * NestJS envelope carrying the OTP emails of one bulk import chunk; email-service handles the email.otp.batch pattern.
+ */
+public record OtpEmailBatchEvent(String pattern, String type, List<OtpEmailEvent.Data> data) {
+}
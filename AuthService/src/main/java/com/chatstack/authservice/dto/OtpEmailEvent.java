@@ -0,0 +1,9 @@
+package com.chatstack.authservice.dto;
+
+/**
+ * NestJS microservice envelope ({pattern, data}) for the OTP emails email-service sends.
+ */
+public record OtpEmailEvent(String pattern, String type, Data data) {
+    public record Data(String email, String otp) {
+    }
+}
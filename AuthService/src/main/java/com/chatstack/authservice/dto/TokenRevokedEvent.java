@@ -0,0 +1,7 @@
+package com.chatstack.authservice.dto;
+
+/**
+ * Broadcast on token.revocation.exchange so every node adds the jti to its denylist.
+ */
+public record TokenRevokedEvent(String tokenId, long expiresAtMillis) {
+}
@@ -0,0 +1,17 @@
+package com.chatstack.authservice.dto;
+
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.util.List;
+import java.util.Map;
+
+@Getter
+@Setter
+@NoArgsConstructor
+public class UserBatchRequest {
+    private List<Long> ids;
+    // Optional: user id -> version the caller already holds; unchanged users are left out of the response
+    private Map<Long, Long> knownVersions;
+}
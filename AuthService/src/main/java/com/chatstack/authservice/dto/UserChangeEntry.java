@@ -0,0 +1,8 @@
+package com.chatstack.authservice.dto;
+
+/**
+ * A change feed entry: the user as it was right after the change numbered seq,
+ * or, when deleted is set, as it was when it was deleted.
+ */
+public record UserChangeEntry(long seq, UserDto user, boolean deleted) {
+}
@@ -0,0 +1,9 @@
+package com.chatstack.authservice.dto;
+
+import java.util.List;
+
+/**
+ * Changes after the requested cursor, oldest first. Pass cursor back as "after" to continue.
+ */
+public record UserChangePage(long cursor, List<UserChangeEntry> changes) {
+}
@@ -0,0 +1,7 @@
+package com.chatstack.authservice.dto;
+
+/**
+ * Published on user.exchange after each change feed append; seq is the feed position it announces.
+ */
+public record UserChangedEvent(long seq, Long id, String username, String email, Boolean enabled, Long version) {
+}
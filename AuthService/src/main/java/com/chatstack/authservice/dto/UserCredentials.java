@@ -0,0 +1,7 @@
+package com.chatstack.authservice.dto;
+
+/**
+ * The columns login reads: enough to check the password and build the AuthResponse, never a User entity.
+ */
+public record UserCredentials(Long id, String username, String email, String password, Boolean enabled) {
+}
@@ -0,0 +1,9 @@
+package com.chatstack.authservice.dto;
+
+import java.util.List;
+
+/**
+ * Published on user.exchange (user.deleted.batch.key) once per batch of deleted accounts.
+ */
+public record UserDeletedBatchEvent(List<UserDeletedEvent> users) {
+}
@@ -0,0 +1,7 @@
+package com.chatstack.authservice.dto;
+
+/**
+ * One account removed by UnverifiedUserSweeper; it was never verified.
+ */
+public record UserDeletedEvent(Long id, String username, String email) {
+}
@@ -1,5 +1,6 @@
 package com.chatstack.authservice.dto;
 
+import com.chatstack.authservice.entities.User;
 import lombok.AllArgsConstructor;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
@@ -14,4 +15,15 @@ public class UserDto {
     private String username;
     private String email;
     private Boolean enabled;
+    private Long version;
+
+    public static UserDto from(User user) {
+        UserDto dto = new UserDto();
+        dto.setId(user.getId());
+        dto.setUsername(user.getUsername());
+        dto.setEmail(user.getEmail());
+        dto.setEnabled(user.getEnabled());
+        dto.setVersion(user.getVersion());
+        return dto;
+    }
 }
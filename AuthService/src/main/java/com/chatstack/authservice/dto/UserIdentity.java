@@ -0,0 +1,4 @@
+package com.chatstack.authservice.dto;
+
+public record UserIdentity(String username, String email) {
+}
@@ -0,0 +1,12 @@
+package com.chatstack.authservice.dto;
+
+import java.util.List;
+
+/**
+ * Outcome of a bulk import. Only the first rejections are listed; rejected counts them all.
+ */
+public record UserImportResult(long imported, long rejected, List<Rejection> rejections) {
+    // row is 1-based over the data rows, not counting a CSV header
+    public record Rejection(long row, String reason) {
+    }
+}
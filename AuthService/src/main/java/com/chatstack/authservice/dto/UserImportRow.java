@@ -0,0 +1,7 @@
+package com.chatstack.authservice.dto;
+
+/**
+ * One user of a bulk import, as read from the CSV or JSON input.
+ */
+public record UserImportRow(String username, String email, String password) {
+}
@@ -0,0 +1,9 @@
+package com.chatstack.authservice.dto;
+
+import java.util.List;
+
+/**
+ * Published on user.exchange (user.registration.batch.key) once per chunk of a bulk import.
+ */
+public record UserRegisteredBatchEvent(List<UserRegisteredEvent> users) {
+}
@@ -0,0 +1,7 @@
+package com.chatstack.authservice.dto;
+
+/**
+ * Published on user.exchange when an account is created.
+ */
+public record UserRegisteredEvent(Long id, String username, String email) {
+}
@@ -0,0 +1,35 @@
+package com.chatstack.authservice.entities;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.io.Serializable;
+import java.time.LocalDateTime;
+
+/**
+ * A one-time code as OtpStore keeps it with write-through on, so any instance can check it and it survives
+ * a restart. One row per email and purpose; re-issuing a code overwrites it.
+ */
+@Entity
+@Table(name = "otp_codes", indexes = @Index(name = "idx_otp_codes_expires_at", columnList = "expiresAt"))
+@Getter @Setter @NoArgsConstructor @AllArgsConstructor
+public class OtpCode {
+    @EmbeddedId
+    private Key key;
+
+    @Column(nullable = false, length = 6)
+    private String code;
+
+    @Column(nullable = false)
+    private LocalDateTime expiresAt;
+
+    @Embeddable
+    @Getter @Setter @NoArgsConstructor @AllArgsConstructor @EqualsAndHashCode
+    public static class Key implements Serializable {
+        private String email;
+
+        @Enumerated(EnumType.STRING)
+        @Column(length = 16)
+        private OtpPurpose purpose;
+    }
+}
@@ -0,0 +1,6 @@
+package com.chatstack.authservice.entities;
+
+public enum OtpPurpose {
+    VERIFY,
+    RESET
+}
@@ -0,0 +1,46 @@
+package com.chatstack.authservice.entities;
+
+import jakarta.persistence.*;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.time.LocalDateTime;
+
+/**
+ * A broker message recorded in the same transaction as the state change that caused it.
+ * OutboxRelay publishes pending rows and deletes them once the broker confirms.
+ */
+@Entity
+@Table(name = "outbox_events", indexes = @Index(name = "idx_outbox_next_attempt", columnList = "nextAttemptAt"))
+@Getter @Setter @NoArgsConstructor
+public class OutboxEvent {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(nullable = false)
+    private String exchange;
+
+    @Column(nullable = false)
+    private String routingKey;
+
+    @Column(nullable = false, columnDefinition = "text")
+    private String payload;
+
+    @Column(nullable = false)
+    private LocalDateTime createdAt;
+
+    @Column(nullable = false)
+    private LocalDateTime nextAttemptAt;
+
+    private int attempts;
+
+    public OutboxEvent(String exchange, String routingKey, String payload) {
+        this.exchange = exchange;
+        this.routingKey = routingKey;
+        this.payload = payload;
+        this.createdAt = LocalDateTime.now();
+        this.nextAttemptAt = this.createdAt;
+    }
+}
@@ -0,0 +1,22 @@
+package com.chatstack.authservice.entities;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.LocalDateTime;
+
+/**
+ * A revoked token's jti, kept until the token would have expired anyway. Only read at startup to
+ * rebuild the in-memory TokenDenylist; requests never touch this table.
+ */
+@Entity
+@Table(name = "revoked_tokens", indexes = @Index(name = "idx_revoked_tokens_expires_at", columnList = "expiresAt"))
+@Getter @Setter @NoArgsConstructor @AllArgsConstructor
+public class RevokedToken {
+    @Id
+    @Column(length = 36)
+    private String tokenId;
+
+    @Column(nullable = false)
+    private LocalDateTime expiresAt;
+}
@@ -1,5 +1,6 @@
 package com.chatstack.authservice.entities;
 
+import com.fasterxml.jackson.annotation.JsonProperty;
 import jakarta.persistence.*;
 import jakarta.validation.constraints.Email;
 import jakarta.validation.constraints.NotBlank;
@@ -8,17 +9,35 @@ import lombok.AllArgsConstructor;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.Setter;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.annotations.ColumnDefault;
+import org.hibernate.annotations.CreationTimestamp;
+import org.hibernate.annotations.NaturalId;
+import org.hibernate.annotations.NaturalIdCache;
 
 import java.time.LocalDateTime;
 
+// Second-level cache regions are set up in HibernateCacheConfig; this node updates them on commit,
+// the others evict on the user.changed.key announcement
 @Entity
 @Table(name="users")
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = User.CACHE_REGION)
+@NaturalIdCache(region = User.USERNAME_CACHE_REGION)
 @Getter @Setter @NoArgsConstructor @AllArgsConstructor
 public class User {
+    public static final String CACHE_REGION = "users";
+    public static final String USERNAME_CACHE_REGION = "users-by-username";
+
+    // Pooled sequence: one nextval reserves 50 ids, and unlike IDENTITY it leaves Hibernate free to batch inserts
     @Id
-    @GeneratedValue(strategy= GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "users_id_seq")
+    @SequenceGenerator(name = "users_id_seq", sequenceName = "users_id_seq", allocationSize = 50)
     private Long id;
 
+    // Never changes once registered, so it can be cached as the key to the id
+    @NaturalId
     @Column(unique = true, nullable = false)
     @NotBlank(message = "Username is mandatory")
     @Size(min=3, max=20, message = "Username must be between 3 and 20 characters")
@@ -34,6 +53,17 @@ public class User {
     private String email;
 
     private Boolean enabled = false;
-    private String verficationCode;
-    private LocalDateTime verficationCodeExpiresAt;
+
+    // Bumped by Hibernate on every update; exposed to other services as the ETag of the user
+    @Version
+    @ColumnDefault("0")
+    @Column(nullable = false)
+    @JsonProperty(access = JsonProperty.Access.READ_ONLY)
+    private Long version;
+
+    // Set on insert; UnverifiedUserSweeper deletes accounts that are still unverified long after it
+    @CreationTimestamp
+    @Column(nullable = false, updatable = false)
+    @JsonProperty(access = JsonProperty.Access.READ_ONLY)
+    private LocalDateTime registeredAt;
 }
@@ -0,0 +1,57 @@
+package com.chatstack.authservice.entities;
+
+import jakarta.persistence.*;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.time.LocalDateTime;
+
+/**
+ * One entry of the user change feed: the public fields of a user right after a committed change.
+ * seq is the feed cursor, taken at insert, so it can commit out of order; see UserChangeFeed.
+ * A tombstone (deleted) holds the user as it was when it was deleted.
+ */
+@Entity
+@Table(name = "user_changes", indexes = @Index(name = "idx_user_changes_changed_at", columnList = "changedAt"))
+@Getter @Setter @NoArgsConstructor
+public class UserChange {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long seq;
+
+    @Column(nullable = false)
+    private Long userId;
+
+    @Column(nullable = false)
+    private String username;
+
+    @Column(nullable = false)
+    private String email;
+
+    private Boolean enabled;
+
+    @Column(nullable = false)
+    private Long version;
+
+    @Column(nullable = false)
+    private LocalDateTime changedAt;
+
+    @Column(nullable = false)
+    private boolean deleted;
+
+    public UserChange(User user) {
+        this.userId = user.getId();
+        this.username = user.getUsername();
+        this.email = user.getEmail();
+        this.enabled = user.getEnabled();
+        this.version = user.getVersion();
+        this.changedAt = LocalDateTime.now();
+    }
+
+    public static UserChange tombstone(User user) {
+        UserChange change = new UserChange(user);
+        change.deleted = true;
+        return change;
+    }
+}
@@ -0,0 +1,45 @@
+package com.chatstack.authservice.repositories;
+
+import com.chatstack.authservice.entities.OtpCode;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+
+public interface OtpCodeRepository extends JpaRepository<OtpCode, OtpCode.Key> {
+    // One statement instead of save()'s select-then-insert/update. The query space keeps Hibernate from
+    // treating the native insert as touching every table and emptying the user cache regions.
+    @Transactional
+    @Modifying
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_NATIVE_SPACES, value = "otp_codes"))
+    @Query(value = """
+            INSERT INTO otp_codes (email, purpose, code, expires_at)
+            VALUES (:email, :purpose, :code, :expiresAt)
+            ON CONFLICT (email, purpose) DO UPDATE SET code = EXCLUDED.code, expires_at = EXCLUDED.expires_at
+            """, nativeQuery = true)
+    int upsert(@Param("email") String email, @Param("purpose") String purpose,
+               @Param("code") String code, @Param("expiresAt") LocalDateTime expiresAt);
+
+    // Compare-and-remove: only the caller whose delete hits the row has used the code
+    @Transactional
+    @Modifying
+    @Query("delete from OtpCode o where o.key = :key and o.code = :code and o.expiresAt > :now")
+    int consume(@Param("key") OtpCode.Key key, @Param("code") String code, @Param("now") LocalDateTime now);
+
+    // Drops the row for a code the timer wheel expired, unless it has been replaced since
+    @Transactional
+    @Modifying
+    @Query("delete from OtpCode o where o.key = :key and o.code = :code")
+    int deleteIssued(@Param("key") OtpCode.Key key, @Param("code") String code);
+
+    @Transactional
+    @Modifying
+    @Query("delete from OtpCode o where o.expiresAt <= :now")
+    int deleteExpired(@Param("now") LocalDateTime now);
+}
@@ -0,0 +1,31 @@
+package com.chatstack.authservice.repositories;
+
+import com.chatstack.authservice.entities.OutboxEvent;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+public interface OutboxEventRepository extends JpaRepository<OutboxEvent, Long> {
+    // SKIP LOCKED lets several AuthService instances drain the outbox without publishing the same row twice
+    @Query(value = """
+            SELECT * FROM outbox_events
+            WHERE next_attempt_at <= :now
+            ORDER BY id
+            LIMIT :limit
+            FOR UPDATE SKIP LOCKED
+            """, nativeQuery = true)
+    List<OutboxEvent> lockNextBatch(@Param("now") LocalDateTime now, @Param("limit") int limit);
+
+    // Keeps claimed rows from the other relays until the lease runs out, without holding their locks
+    @Modifying
+    @Query("UPDATE OutboxEvent e SET e.nextAttemptAt = :until WHERE e.id IN :ids")
+    void claim(@Param("ids") List<Long> ids, @Param("until") LocalDateTime until);
+
+    @Modifying
+    @Query("UPDATE OutboxEvent e SET e.attempts = :attempts, e.nextAttemptAt = :nextAttemptAt WHERE e.id = :id")
+    void scheduleRetry(@Param("id") Long id, @Param("attempts") int attempts, @Param("nextAttemptAt") LocalDateTime nextAttemptAt);
+}
@@ -0,0 +1,53 @@
+package com.chatstack.authservice.repositories;
+
+import com.chatstack.authservice.entities.UserChange;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+// Reads are read-only transactions, so they are served by the replica when one is configured
+@Transactional(readOnly = true)
+public interface UserChangeRepository extends JpaRepository<UserChange, Long> {
+    List<UserChange> findBySeqGreaterThanOrderBySeq(Long after, Limit limit);
+
+    @Query("select min(c.seq) from UserChange c")
+    Long findOldestSeq();
+
+    @Query("select max(c.seq) from UserChange c")
+    Long findLatestSeq();
+
+    // Uses idx_user_changes_changed_at; only the last few seconds of entries qualify
+    @Query("select min(c.seq) from UserChange c where c.changedAt > :since")
+    Long findFirstSeqChangedAfter(@Param("since") LocalDateTime since);
+
+    Optional<UserChange> findFirstByOrderBySeqDesc();
+
+    // One statement for a whole batch of users; they must already be flushed. Only user_changes is written,
+    // the query space says so, otherwise Hibernate would empty the user cache regions after every batch.
+    @Transactional(propagation = Propagation.MANDATORY)
+    @Modifying
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_NATIVE_SPACES, value = "user_changes"))
+    @Query(value = """
+            INSERT INTO user_changes (user_id, username, email, enabled, version, changed_at)
+            SELECT u.id, u.username, u.email, u.enabled, u.version, :changedAt FROM users u WHERE u.id IN (:ids) ORDER BY u.id
+            """, nativeQuery = true)
+    int appendAll(@Param("ids") Collection<Long> ids, @Param("changedAt") LocalDateTime changedAt);
+
+    // The newest row always stays, so the oldest retained seq still tells which cursors have expired
+    @Transactional
+    @Modifying
+    @Query("delete from UserChange c where c.changedAt < :cutoff and c.seq < (select max(l.seq) from UserChange l)")
+    int deleteOlderThan(@Param("cutoff") LocalDateTime cutoff);
+}
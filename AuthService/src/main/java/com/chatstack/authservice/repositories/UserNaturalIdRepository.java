@@ -0,0 +1,10 @@
+package com.chatstack.authservice.repositories;
+
+import com.chatstack.authservice.entities.User;
+
+import java.util.Optional;
+
+public interface UserNaturalIdRepository {
+    // Goes through the natural id cache and then the entity cache, so a cached user costs no query
+    Optional<User> findByUsername(String username);
+}
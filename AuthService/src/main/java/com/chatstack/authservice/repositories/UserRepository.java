@@ -1,13 +1,97 @@
 package com.chatstack.authservice.repositories;
 
+import com.chatstack.authservice.dto.UserCredentials;
+import com.chatstack.authservice.dto.UserDto;
+import com.chatstack.authservice.dto.UserIdentity;
+import com.chatstack.authservice.dto.UserProfile;
 import com.chatstack.authservice.entities.User;
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.hibernate.jpa.SpecHints;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
-public interface UserRepository extends JpaRepository<User, Long> {
-    Optional<User> findByUsername(String username);
+// Reads are read-only transactions, so they are served by the replica when one is configured.
+// findById and findByUsername (UserNaturalIdRepository) are answered from the second-level cache when it has the user.
+@Transactional(readOnly = true)
+public interface UserRepository extends JpaRepository<User, Long>, UserNaturalIdRepository {
     Optional<User> findByEmail(String email);
+
+    // Login's columns only, so no User entity is loaded; UserCredentialsCache keeps the result
+    @Query("select new com.chatstack.authservice.dto.UserCredentials(u.id, u.username, u.email, u.password, u.enabled) from User u where u.username = :username")
+    Optional<UserCredentials> findCredentialsByUsername(String username);
+
+    // For revalidating a user the second-level cache does not hold: the version alone, not the whole row
+    @Query("select u.version from User u where u.id = :id")
+    Optional<Long> findVersionById(Long id);
     boolean existsByUsername(String username);
     boolean existsByEmail(String email);
+
+    // Compare-and-set on the old hash, so a rehash never overwrites a password reset that landed in between.
+    // The version is left alone: the public fields did not change and a concurrent entity update should not fail.
+    // Being a bulk update, it also empties this node's user cache regions; rehashes only follow a cost change.
+    @Transactional
+    @Modifying
+    @Query("update User u set u.password = :newPassword where u.id = :id and u.password = :oldPassword")
+    int replacePasswordHash(Long id, String oldPassword, String newPassword);
+
+    // Reads only the public columns, the password hash and OTP never enter the persistence context
+    @Query("select new com.chatstack.authservice.dto.UserDto(u.id, u.username, u.email, u.enabled, u.version) from User u where u.id in :ids")
+    List<UserDto> findDtosByIdIn(Collection<Long> ids);
+
+    // Keyset page for the change feed snapshot: no offset scan and no transaction held between pages
+    @Query("select new com.chatstack.authservice.dto.UserDto(u.id, u.username, u.email, u.enabled, u.version) from User u where u.id > :afterId order by u.id")
+    List<UserDto> findDtosAfterId(Long afterId, Limit limit);
+
+    @Query("select u.username from User u where u.username in :usernames")
+    List<String> findExistingUsernames(Collection<String> usernames);
+
+    @Query("select u.email from User u where u.email in :emails")
+    List<String> findExistingEmails(Collection<String> emails);
+
+    // Only answers search while UserSearchIndex is still being built; the pattern must escape % and _ with a backslash
+    @Query("select new com.chatstack.authservice.dto.UserProfile(u.id, u.username) from User u where u.enabled = true and lower(u.username) like :pattern escape '\\' order by lower(u.username)")
+    List<UserProfile> findVerifiedProfilesByUsernameLike(String pattern, Limit limit);
+
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "1000"))
+    @Query("select new com.chatstack.authservice.dto.UserProfile(u.id, u.username) from User u where u.enabled = true")
+    Stream<UserProfile> streamVerifiedProfiles();
+
+    // Must be consumed inside a transaction; the fetch size keeps the Postgres cursor from buffering the whole table
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "1000"))
+    @Query("select new com.chatstack.authservice.dto.UserIdentity(u.username, u.email) from User u")
+    Stream<UserIdentity> streamIdentities();
+
+    // Keyset page of accounts for UnverifiedUserSweeper, oldest first. The rows stay locked until the delete
+    // commits, so a verification landing meanwhile waits and then finds no row; rows another node is already
+    // sweeping are skipped instead of waited for. Accounts holding a verification code that is still valid at
+    // :now, such as one resent near the deadline, are left for a later pass.
+    @Transactional(propagation = Propagation.MANDATORY)
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @QueryHints(@QueryHint(name = SpecHints.HINT_SPEC_LOCK_TIMEOUT, value = "-2"))
+    @Query("""
+            select u from User u
+            where u.enabled = false and u.registeredAt < :cutoff
+              and (u.registeredAt > :afterRegisteredAt or (u.registeredAt = :afterRegisteredAt and u.id > :afterId))
+              and not exists (
+                  select 1 from OtpCode o
+                  where o.key.email = u.email
+                    and o.key.purpose = com.chatstack.authservice.entities.OtpPurpose.VERIFY
+                    and o.expiresAt > :now)
+            order by u.registeredAt, u.id""")
+    List<User> findUnverifiedRegisteredBefore(LocalDateTime cutoff, LocalDateTime now,
+                                              LocalDateTime afterRegisteredAt, Long afterId, Limit limit);
 }
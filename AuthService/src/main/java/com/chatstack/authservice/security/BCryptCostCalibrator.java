@@ -0,0 +1,47 @@
+package com.chatstack.authservice.security;
+
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+
+import java.time.Duration;
+
+/**
+ * Picks the largest BCrypt cost whose encode time fits a latency target on this machine.
+ * Only the cheapest allowed cost is timed; each further step doubles the work, so the rest is extrapolated.
+ */
+public final class BCryptCostCalibrator {
+    private static final String SAMPLE_PASSWORD = "calibration-sample-password";
+    private static final int SAMPLES = 3;
+
+    private BCryptCostCalibrator() {
+    }
+
+    public static int calibrate(Duration target, int minStrength, int maxStrength) {
+        if (minStrength < 4 || maxStrength > 31 || minStrength > maxStrength) {
+            throw new IllegalArgumentException("BCrypt strength range must be within 4..31, got " + minStrength + ".." + maxStrength);
+        }
+        return strengthFor(target.toNanos(), measure(minStrength), minStrength, maxStrength);
+    }
+
+    static int strengthFor(long targetNanos, long minStrengthNanos, int minStrength, int maxStrength) {
+        int strength = minStrength;
+        long estimate = Math.max(1, minStrengthNanos);
+        while (strength < maxStrength && estimate * 2 <= targetNanos) {
+            estimate *= 2;
+            strength++;
+        }
+        return strength;
+    }
+
+    private static long measure(int strength) {
+        BCryptPasswordEncoder encoder = new BCryptPasswordEncoder(strength);
+        // The first run pays for class loading and JIT, keep the fastest of the rest
+        encoder.encode(SAMPLE_PASSWORD);
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < SAMPLES; i++) {
+            long startedAt = System.nanoTime();
+            encoder.encode(SAMPLE_PASSWORD);
+            best = Math.min(best, System.nanoTime() - startedAt);
+        }
+        return best;
+    }
+}
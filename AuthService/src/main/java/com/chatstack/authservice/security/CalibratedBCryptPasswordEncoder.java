@@ -0,0 +1,41 @@
+package com.chatstack.authservice.security;
+
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+
+/**
+ * BCrypt at a fixed cost that asks for a rehash of stored hashes made at a lower cost.
+ * Stronger hashes are kept: a node with a lower cost must not undo another node's upgrade on every login.
+ * Unlike the stock encoder, it tells a weaker hash apart from one it cannot parse, which it leaves alone.
+ */
+public class CalibratedBCryptPasswordEncoder extends BCryptPasswordEncoder {
+    private final int strength;
+
+    public CalibratedBCryptPasswordEncoder(int strength) {
+        super(strength);
+        this.strength = strength;
+    }
+
+    public int getStrength() {
+        return strength;
+    }
+
+    @Override
+    protected boolean upgradeEncodingNonNull(String encodedPassword) {
+        int cost = costOf(encodedPassword);
+        return cost != -1 && cost < strength;
+    }
+
+    // Hashes look like $2a$10$<salt+hash>; anything else is left alone
+    static int costOf(String encodedPassword) {
+        if (encodedPassword.length() < 7
+                || encodedPassword.charAt(0) != '$' || encodedPassword.charAt(3) != '$' || encodedPassword.charAt(6) != '$') {
+            return -1;
+        }
+        char tens = encodedPassword.charAt(4);
+        char ones = encodedPassword.charAt(5);
+        if (!Character.isDigit(tens) || !Character.isDigit(ones)) {
+            return -1;
+        }
+        return (tens - '0') * 10 + (ones - '0');
+    }
+}
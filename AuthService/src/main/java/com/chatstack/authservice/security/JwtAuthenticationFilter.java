@@ -1,41 +1,54 @@
 package com.chatstack.authservice.security;
 
+import io.jsonwebtoken.Claims;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Component;
 import org.springframework.web.filter.OncePerRequestFilter;
 
 import java.io.IOException;
-import java.util.ArrayList;
+import java.util.List;
 
 @Component
 public class JwtAuthenticationFilter extends OncePerRequestFilter {
+    // Granted to service tokens only (JwtUtil.generateServiceToken); /api/internal/** requires it
+    public static final String INTERNAL_AUTHORITY = "SCOPE_" + JwtUtil.INTERNAL_SCOPE;
+    // Granted to user tokens only, whose subject is a user id; the endpoints acting on the caller's account require it
+    public static final String USER_AUTHORITY = "SCOPE_user";
+    private static final String BEARER = "Bearer ";
+    private static final List<GrantedAuthority> INTERNAL = List.of(new SimpleGrantedAuthority(INTERNAL_AUTHORITY));
+    private static final List<GrantedAuthority> USER = List.of(new SimpleGrantedAuthority(USER_AUTHORITY));
+
     private final JwtUtil jwtUtil;
+    private final VerifiedTokenCache tokenCache;
+    private final TokenDenylist denylist;
 
-    public JwtAuthenticationFilter(JwtUtil jwtUtil) {
+    public JwtAuthenticationFilter(JwtUtil jwtUtil, VerifiedTokenCache tokenCache, TokenDenylist denylist) {
         this.jwtUtil = jwtUtil;
+        this.tokenCache = tokenCache;
+        this.denylist = denylist;
     }
 
     @Override
     protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
             throws ServletException, IOException {
 
-        String authHeader = request.getHeader("Authorization");
-
-        if (authHeader != null && authHeader.startsWith("Bearer ")) {
-            String token = authHeader.substring(7);
+        String token = bearerToken(request.getHeader("Authorization"));
 
+        if (token != null) {
             // Extract the User ID (sub) from the token
-            String userId = jwtUtil.extractSubject(token);
+            VerifiedTokenCache.Entry verified = resolve(token);
 
-            if (userId != null && SecurityContextHolder.getContext().getAuthentication() == null) {
+            if (verified != null && SecurityContextHolder.getContext().getAuthentication() == null) {
                 // Create an authentication object using the User ID
-                UsernamePasswordAuthenticationToken authentication =
-                        new UsernamePasswordAuthenticationToken(userId, null, new ArrayList<>());
+                UsernamePasswordAuthenticationToken authentication = new UsernamePasswordAuthenticationToken(
+                        verified.subject(), null, verified.internal() ? INTERNAL : USER);
 
                 // Set the user in the Security Context
                 SecurityContextHolder.getContext().setAuthentication(authentication);
@@ -44,4 +57,31 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
 
         filterChain.doFilter(request, response);
     }
+
+    /**
+     * The token in an Authorization header, or null when there is no bearer token.
+     */
+    public static String bearerToken(String authorizationHeader) {
+        if (authorizationHeader == null || !authorizationHeader.startsWith(BEARER)) {
+            return null;
+        }
+        return authorizationHeader.substring(BEARER.length());
+    }
+
+    private VerifiedTokenCache.Entry resolve(String token) {
+        VerifiedTokenCache.Entry cached = tokenCache.get(token);
+        if (cached != null) {
+            return denylist.isRevoked(cached.tokenId()) ? null : cached;
+        }
+
+        // Only tokens that pass full verification make it into the cache
+        Claims claims = jwtUtil.extractClaims(token);
+        if (claims == null || claims.getSubject() == null || denylist.isRevoked(claims.getId())) {
+            return null;
+        }
+        boolean internal = JwtUtil.INTERNAL_SCOPE.equals(claims.get(JwtUtil.SCOPE_CLAIM, String.class));
+        tokenCache.put(token, claims.getSubject(), claims.getId(), internal, claims.getExpiration());
+        return new VerifiedTokenCache.Entry(claims.getSubject(), claims.getId(), internal,
+                claims.getExpiration() != null ? claims.getExpiration().getTime() : Long.MAX_VALUE);
+    }
 }
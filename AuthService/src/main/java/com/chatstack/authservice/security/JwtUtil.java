@@ -1,43 +1,105 @@
 package com.chatstack.authservice.security;
 
 import com.chatstack.authservice.entities.User;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.security.Keys;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 import java.security.Key;
 import java.util.Date;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
 
 @Component
 public class JwtUtil {
-    private static final int EXPIRATION_MS = 864000000; // 24 hours
+    private static final int EXPIRATION_MS = 864000000; // 10 days
+    private static final int SERVICE_EXPIRATION_MS = 3600000; // 1 hour
+    // Service tokens carry scope=internal, user tokens carry no scope at all
+    public static final String SCOPE_CLAIM = "scope";
+    public static final String INTERNAL_SCOPE = "internal";
     private final Key key;
+    // Parsers are immutable and thread-safe, so one instance is shared by every request
+    private final JwtParser parser;
+    private final Timer signTimer;
+    private final Timer verifyValidTimer;
+    private final Timer verifyInvalidTimer;
 
-    public JwtUtil(@Value("${jwt.secret}") String secret) {
+    @Autowired
+    public JwtUtil(@Value("${jwt.secret}") String secret, MeterRegistry meterRegistry) {
         this.key = Keys.hmacShaKeyFor(secret.getBytes());
+        this.parser = Jwts.parserBuilder()
+                .setSigningKey(key)
+                .build();
+        this.signTimer = Timer.builder("jwt.sign")
+                .description("Time to build and sign a token")
+                .register(meterRegistry);
+        this.verifyValidTimer = verifyTimer(meterRegistry, "valid");
+        this.verifyInvalidTimer = verifyTimer(meterRegistry, "invalid");
+    }
+
+    public JwtUtil(String secret) {
+        this(secret, new SimpleMeterRegistry());
     }
 
     public String generateToken(User user){
-        return Jwts.builder()
-                .setSubject(user.getId().toString())
+        return generateToken(user.getId());
+    }
+
+    public String generateToken(Long userId){
+        return signTimer.record(() -> Jwts.builder()
+                // jti, the handle TokenDenylist revokes by
+                .setId(UUID.randomUUID().toString())
+                .setSubject(userId.toString())
                 .setIssuedAt(new Date())
                 .setExpiration(new Date((new Date()).getTime() + EXPIRATION_MS))
                 .signWith(key)
-                .compact();
+                .compact());
+    }
+
+    /**
+     * Token for another service calling /api/internal/**; the subject names the service, not a user.
+     * Services holding the shared secret (chat-service) sign the same claims themselves.
+     */
+    public String generateServiceToken(String service) {
+        return signTimer.record(() -> Jwts.builder()
+                .setId(UUID.randomUUID().toString())
+                .setSubject(service)
+                .claim(SCOPE_CLAIM, INTERNAL_SCOPE)
+                .setIssuedAt(new Date())
+                .setExpiration(new Date((new Date()).getTime() + SERVICE_EXPIRATION_MS))
+                .signWith(key)
+                .compact());
     }
 
     public String extractSubject(String token) {
+        Claims claims = extractClaims(token);
+        return claims != null ? claims.getSubject() : null;
+    }
+
+    public Claims extractClaims(String token) {
+        long start = System.nanoTime();
         try {
-            return Jwts.parserBuilder()
-                    .setSigningKey(key) // This is the 'key' you defined at the top of the class
-                    .build()
-                    .parseClaimsJws(token)
-                    .getBody()
-                    .getSubject();
+            Claims claims = parser.parseClaimsJws(token).getBody();
+            verifyValidTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            return claims;
         } catch (Exception e) {
             // If the token is expired, tampered with, or invalid, return null
+            verifyInvalidTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
             return null;
         }
     }
+
+    private static Timer verifyTimer(MeterRegistry meterRegistry, String outcome) {
+        return Timer.builder("jwt.verify")
+                .description("Time to parse and verify a token's signature")
+                .tag("outcome", outcome)
+                .register(meterRegistry);
+    }
 }
@@ -0,0 +1,178 @@
+package com.chatstack.authservice.security;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.*;
+
+/**
+ * Runs BCrypt encode/matches on a bounded, CPU-sized pool instead of the request thread.
+ * When the queue is full the call fails fast with PasswordHashingRejectedException,
+ * so a login storm cannot occupy every servlet thread.
+ */
+@Component
+public class PasswordHasher {
+    private static final String POOL = "bcrypt";
+
+    private final PasswordEncoder encoder;
+    private final ThreadPoolExecutor executor;
+    private final Timer encodeQueueTimer;
+    private final Timer encodeHashTimer;
+    private final Timer matchesQueueTimer;
+    private final Timer matchesHashTimer;
+    private final Counter rejected;
+
+    public PasswordHasher(PasswordEncoder encoder,
+                          MeterRegistry meterRegistry,
+                          @Value("${password.hashing.threads:0}") int threads,
+                          @Value("${password.hashing.queue-capacity:64}") int queueCapacity) {
+        this.encoder = encoder;
+
+        int poolSize = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        this.executor = new ThreadPoolExecutor(
+                poolSize, poolSize,
+                0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                new CustomizableThreadFactory(POOL + "-"),
+                new ThreadPoolExecutor.AbortPolicy()
+        );
+
+        this.encodeQueueTimer = queueTimer(meterRegistry, "encode");
+        this.encodeHashTimer = hashTimer(meterRegistry, "encode");
+        this.matchesQueueTimer = queueTimer(meterRegistry, "matches");
+        this.matchesHashTimer = hashTimer(meterRegistry, "matches");
+        this.rejected = Counter.builder("password.hashing.rejected")
+                .description("Hash requests rejected because the pool queue was full")
+                .tag("pool", POOL)
+                .register(meterRegistry);
+        new ExecutorServiceMetrics(executor, POOL, Tags.empty()).bindTo(meterRegistry);
+    }
+
+    public String encode(CharSequence rawPassword) {
+        return submit(() -> encoder.encode(rawPassword), encodeQueueTimer, encodeHashTimer);
+    }
+
+    /**
+     * Hashes many passwords on the pool, for bulk work. At most one task per worker is in flight, so the
+     * queue keeps room for interactive requests; when it is full anyway this waits instead of failing.
+     */
+    public List<String> encodeAll(List<? extends CharSequence> rawPasswords) {
+        String[] hashes = new String[rawPasswords.size()];
+        ArrayDeque<Future<?>> inFlight = new ArrayDeque<>();
+        for (int i = 0; i < rawPasswords.size(); i++) {
+            int index = i;
+            Callable<Void> hash = () -> {
+                hashes[index] = encoder.encode(rawPasswords.get(index));
+                return null;
+            };
+            while (true) {
+                if (inFlight.size() >= executor.getMaximumPoolSize()) {
+                    await(inFlight.poll());
+                }
+                try {
+                    inFlight.add(executor.submit(timed(hash, encodeQueueTimer, encodeHashTimer)));
+                    break;
+                } catch (RejectedExecutionException e) {
+                    if (inFlight.isEmpty()) {
+                        sleepBriefly();
+                    } else {
+                        await(inFlight.poll());
+                    }
+                }
+            }
+        }
+        while (!inFlight.isEmpty()) {
+            await(inFlight.poll());
+        }
+        return Arrays.asList(hashes);
+    }
+
+    public boolean matches(CharSequence rawPassword, String encodedPassword) {
+        return submit(() -> encoder.matches(rawPassword, encodedPassword), matchesQueueTimer, matchesHashTimer);
+    }
+
+    // Only parses the stored hash, so it runs on the caller's thread
+    public boolean upgradeEncoding(String encodedPassword) {
+        return encoder.upgradeEncoding(encodedPassword);
+    }
+
+    private <T> T submit(Callable<T> task, Timer queueTimer, Timer hashTimer) {
+        Future<T> future;
+        try {
+            future = executor.submit(timed(task, queueTimer, hashTimer));
+        } catch (RejectedExecutionException e) {
+            rejected.increment();
+            throw new PasswordHashingRejectedException();
+        }
+        return await(future);
+    }
+
+    private static <T> Callable<T> timed(Callable<T> task, Timer queueTimer, Timer hashTimer) {
+        long enqueuedAt = System.nanoTime();
+        return () -> {
+            long startedAt = System.nanoTime();
+            queueTimer.record(startedAt - enqueuedAt, TimeUnit.NANOSECONDS);
+            try {
+                return task.call();
+            } finally {
+                hashTimer.record(System.nanoTime() - startedAt, TimeUnit.NANOSECONDS);
+            }
+        };
+    }
+
+    private static <T> T await(Future<T> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for password hash", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new IllegalStateException("Password hashing failed", e.getCause());
+        }
+    }
+
+    private static void sleepBriefly() {
+        try {
+            Thread.sleep(10);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the hashing pool", e);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    private static Timer queueTimer(MeterRegistry meterRegistry, String operation) {
+        return Timer.builder("password.hashing.queue")
+                .description("Time a hash request waited for a free worker")
+                .tags("pool", POOL, "operation", operation)
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+
+    private static Timer hashTimer(MeterRegistry meterRegistry, String operation) {
+        return Timer.builder("password.hashing.duration")
+                .description("Time spent computing the hash on a worker")
+                .tags("pool", POOL, "operation", operation)
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+}
@@ -0,0 +1,10 @@
+package com.chatstack.authservice.security;
+
+/**
+ * Thrown when the password hashing pool is saturated and a new hash cannot be queued.
+ */
+public class PasswordHashingRejectedException extends RuntimeException {
+    public PasswordHashingRejectedException() {
+        super("Server is busy, please retry shortly");
+    }
+}
@@ -0,0 +1,84 @@
+package com.chatstack.authservice.security;
+
+import com.chatstack.authservice.util.TokenBucketTable;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-IP and per-email token buckets for the OTP endpoints. "send" covers the calls that mail a code,
+ * "verify" the ones that check one. Each acquire returns 0 when allowed, otherwise nanoseconds to wait.
+ */
+@Component
+public class RateLimiter {
+    public static final String SEND = "send";
+    public static final String VERIFY = "verify";
+
+    private final boolean enabled;
+    private final TokenBucketTable ipBuckets;
+    private final TokenBucketTable emailBuckets;
+    private final Limit ipLimit;
+    private final Limit sendLimit;
+    private final Limit verifyLimit;
+    private final Counter ipRejected;
+    private final Counter emailRejected;
+
+    public RateLimiter(MeterRegistry meterRegistry,
+                       @Value("${ratelimit.enabled:true}") boolean enabled,
+                       @Value("${ratelimit.buckets:65536}") int buckets,
+                       @Value("${ratelimit.ip.burst:20}") int ipBurst,
+                       @Value("${ratelimit.ip.per-minute:20}") int ipPerMinute,
+                       @Value("${ratelimit.email.send.burst:3}") int sendBurst,
+                       @Value("${ratelimit.email.send.per-minute:1}") int sendPerMinute,
+                       @Value("${ratelimit.email.verify.burst:5}") int verifyBurst,
+                       @Value("${ratelimit.email.verify.per-minute:2}") int verifyPerMinute) {
+        this.enabled = enabled;
+        this.ipBuckets = new TokenBucketTable(buckets);
+        this.emailBuckets = new TokenBucketTable(buckets);
+        this.ipLimit = new Limit(ipBurst, ipPerMinute);
+        this.sendLimit = new Limit(sendBurst, sendPerMinute);
+        this.verifyLimit = new Limit(verifyBurst, verifyPerMinute);
+        this.ipRejected = meterRegistry.counter("ratelimit.rejected", "key", "ip");
+        this.emailRejected = meterRegistry.counter("ratelimit.rejected", "key", "email");
+        FunctionCounter.builder("ratelimit.busy.evictions", ipBuckets, TokenBucketTable::busyEvictions)
+                .description("Buckets taken over before they had refilled; the table is too small if this grows")
+                .tag("key", "ip")
+                .register(meterRegistry);
+        FunctionCounter.builder("ratelimit.busy.evictions", emailBuckets, TokenBucketTable::busyEvictions)
+                .description("Buckets taken over before they had refilled; the table is too small if this grows")
+                .tag("key", "email")
+                .register(meterRegistry);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public long acquireForIp(String ip) {
+        long wait = ipBuckets.tryAcquire(ip, ipLimit.intervalNanos, ipLimit.burst);
+        if (wait > 0) {
+            ipRejected.increment();
+        }
+        return wait;
+    }
+
+    public long acquireForEmail(String scope, String email) {
+        Limit limit = SEND.equals(scope) ? sendLimit : verifyLimit;
+        long wait = emailBuckets.tryAcquire(scope + ':' + email.toLowerCase(Locale.ROOT), limit.intervalNanos, limit.burst);
+        if (wait > 0) {
+            emailRejected.increment();
+        }
+        return wait;
+    }
+
+    private record Limit(int burst, long intervalNanos) {
+        Limit(int burst, int perMinute) {
+            this(burst, TimeUnit.MINUTES.toNanos(1) / Math.max(1, perMinute));
+        }
+    }
+}
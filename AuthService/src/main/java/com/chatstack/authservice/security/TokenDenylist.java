@@ -0,0 +1,56 @@
+package com.chatstack.authservice.security;
+
+import com.chatstack.authservice.util.TimerWheel;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * jti values of revoked tokens that have not expired yet. Lookups are a lock-free hash probe, so
+ * JwtAuthenticationFilter can check every request. A timer wheel ordered by token expiry drops each
+ * entry once its token would be rejected anyway; it never fires early, so a revoked token is never
+ * accepted again.
+ */
+@Component
+public class TokenDenylist {
+    private final Set<String> revoked = ConcurrentHashMap.newKeySet();
+    private final TimerWheel<String> wheel;
+
+    public TokenDenylist(MeterRegistry meterRegistry,
+                         @Value("${jwt.denylist.tick-ms:60000}") long tickMs) {
+        this.wheel = new TimerWheel<>(tickMs, System.currentTimeMillis());
+        Gauge.builder("jwt.denylist.size", revoked, Set::size)
+                .description("Revoked tokens that have not expired yet")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Returns false if the token was already listed or has already expired.
+     */
+    public boolean revoke(String tokenId, long expiresAtMillis) {
+        if (expiresAtMillis <= System.currentTimeMillis() || !revoked.add(tokenId)) {
+            return false;
+        }
+        wheel.schedule(tokenId, expiresAtMillis);
+        return true;
+    }
+
+    public boolean isRevoked(String tokenId) {
+        // Tokens issued before jti was added cannot be revoked and simply run out
+        return tokenId != null && revoked.contains(tokenId);
+    }
+
+    public int size() {
+        return revoked.size();
+    }
+
+    @Scheduled(fixedRateString = "${jwt.denylist.tick-ms:60000}")
+    public void expire() {
+        wheel.advance(System.currentTimeMillis(), revoked::remove);
+    }
+}
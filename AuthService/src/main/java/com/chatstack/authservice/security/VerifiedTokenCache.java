@@ -0,0 +1,55 @@
+package com.chatstack.authservice.security;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Date;
+
+/**
+ * Bounded cache of tokens that have already passed signature verification.
+ * Tokens are only added after JwtUtil has verified them, and an entry expires
+ * at the token's exp, so expired or tampered tokens are never served.
+ * Entries keep the jti so a revocation still applies to a token that is already cached,
+ * and whether the token carries the internal scope.
+ * Backed by Caffeine: reads take no lock, so requests on different threads never queue behind each other here.
+ */
+@Component
+public class VerifiedTokenCache {
+    private final boolean enabled;
+    private final Cache<String, Entry> entries;
+
+    public VerifiedTokenCache(@Value("${jwt.cache.enabled:true}") boolean enabled,
+                              @Value("${jwt.cache.max-size:10000}") int maxSize) {
+        this.enabled = enabled && maxSize > 0;
+        this.entries = Caffeine.newBuilder()
+                .maximumSize(Math.max(maxSize, 0))
+                .expireAfter(Expiry.creating((String token, Entry entry) ->
+                        Duration.ofMillis(entry.expiresAtMillis() - System.currentTimeMillis())))
+                .build();
+    }
+
+    public Entry get(String token) {
+        return enabled ? entries.getIfPresent(token) : null;
+    }
+
+    public void put(String token, String subject, String tokenId, boolean internal, Date expiration) {
+        // Tokens without an exp claim are never cached, they would otherwise live until evicted
+        if (!enabled || subject == null || expiration == null || expiration.getTime() <= System.currentTimeMillis()) {
+            return;
+        }
+        entries.put(token, new Entry(subject, tokenId, internal, expiration.getTime()));
+    }
+
+    public long size() {
+        // Evictions and expirations are applied in batches; settle them so the count is exact
+        entries.cleanUp();
+        return entries.estimatedSize();
+    }
+
+    public record Entry(String subject, String tokenId, boolean internal, long expiresAtMillis) {
+    }
+}
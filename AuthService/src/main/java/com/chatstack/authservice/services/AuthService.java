@@ -1,186 +1,265 @@
 package com.chatstack.authservice.services;
 
 import com.chatstack.authservice.config.RabbitMQConfig;
+import com.chatstack.authservice.config.ReadYourWrites;
+import com.chatstack.authservice.dto.AuthResponse;
 import com.chatstack.authservice.dto.LoginRequest;
+import com.chatstack.authservice.dto.LoginResult;
+import com.chatstack.authservice.dto.UserCredentials;
+import com.chatstack.authservice.entities.OtpPurpose;
 import com.chatstack.authservice.entities.User;
 import com.chatstack.authservice.repositories.UserRepository;
 import com.chatstack.authservice.security.JwtUtil;
-import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import com.chatstack.authservice.security.PasswordHasher;
+import com.chatstack.authservice.security.PasswordHashingRejectedException;
+import io.micrometer.core.annotation.Timed;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
-import java.time.LocalDateTime;
-import java.util.HashMap;
+import java.time.Duration;
+import java.util.EnumMap;
 import java.util.Map;
-import java.util.Random;
+import java.util.Optional;
+import java.util.UUID;
 
 @Service
 public class AuthService {
+    static final Duration VERIFY_CODE_TTL = Duration.ofMinutes(10);
+    private static final Duration RESET_CODE_TTL = Duration.ofMinutes(5);
+
     @Autowired
     private UserRepository userRepository;
     @Autowired
-    private BCryptPasswordEncoder passwordEncoder;
+    private PasswordHasher passwordHasher;
     @Autowired
     private JwtUtil jwtUtil;
     @Autowired
-    private RabbitTemplate rabbitTemplate;
+    private OutboxService outboxService;
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+    @Autowired
+    private AvailabilityIndex availabilityIndex;
+    @Autowired
+    private MeterRegistry meterRegistry;
+    @Autowired
+    private OtpStore otpStore;
+    @Autowired
+    private UserChangeFeed userChangeFeed;
+    @Autowired
+    private ReadYourWrites readYourWrites;
+    @Autowired
+    private UnknownUsernameCache unknownUsernames;
+    @Autowired
+    private UserCredentialsCache credentialsCache;
 
-    @Transactional
+    private String dummyHash;
+    private final Map<LoginResult.Failure, Counter> loginFailures = new EnumMap<>(LoginResult.Failure.class);
+
+    @PostConstruct
+    void prepareLoginRejections(){
+        dummyHash = passwordHasher.encode(UUID.randomUUID().toString());
+        for (LoginResult.Failure failure : LoginResult.Failure.values()){
+            loginFailures.put(failure, meterRegistry.counter("auth.failures", "operation", "login", "reason", failure.reason()));
+        }
+    }
+
+    @Timed(value = "auth.operation", extraTags = {"operation", "register"}, histogram = true)
     public User registerUser(User user){
-        // Encrypt the password before saving
-        user.setPassword(passwordEncoder.encode(user.getPassword()));
-        String otp = generateVerificationCode();
-        user.setVerficationCode(otp);
-        user.setVerficationCodeExpiresAt(LocalDateTime.now().plusMinutes(10));
+        // Encrypt the password before the transaction starts so no pooled connection waits on BCrypt
+        user.setPassword(passwordHasher.encode(user.getPassword()));
+        // Marked before the insert so the index never answers "available" for a committed user
+        availabilityIndex.record(user.getUsername(), user.getEmail());
+        // Events go to the outbox in the same transaction, so a rollback never leaves a published event
+        return transactionTemplate.execute(status -> saveAndPublishRegistration(user));
+    }
+
+    private User saveAndPublishRegistration(User user){
         user.setEnabled(false);
 //        return userRepository.save(user);
         User savedUser = userRepository.save(user);
+        userChangeFeed.record(savedUser);
+        readYourWrites.recordWrite(savedUser);
+        String otp = otpStore.issue(savedUser.getEmail(), OtpPurpose.VERIFY, VERIFY_CODE_TTL);
 
-        Map<String, Object> userDetails = new HashMap<>();
-        userDetails.put("id", savedUser.getId());
-        userDetails.put("username", savedUser.getUsername());
-
-        rabbitTemplate.convertAndSend(
+        outboxService.enqueue(
                 RabbitMQConfig.EXCHANGE,
                 RabbitMQConfig.ROUTING_KEY,
-                userDetails
+                MessageEnvelopes.userRegistered(savedUser)
         );
 
-        Map<String, Object> nestJsEnvelope = new HashMap<>();
-        nestJsEnvelope.put("pattern", "email.otp.key");
-        nestJsEnvelope.put("type", "VERIFY");
-
-        Map<String,Object> emailDetails = new HashMap<>();
-        emailDetails.put("email", savedUser.getEmail());
-        emailDetails.put("otp", otp);
-
-        nestJsEnvelope.put("data", emailDetails);
-
-        rabbitTemplate.convertAndSend(
+        outboxService.enqueue(
                 RabbitMQConfig.Email_EXCHANGE,
                 RabbitMQConfig.Email_ROUTING_KEY,
-                nestJsEnvelope
+                MessageEnvelopes.otpEmail("VERIFY", savedUser.getEmail(), otp)
         );
 
         return savedUser;
     }
 
+    // Read-only on users: the code lives in OtpStore, the transaction is only for the outbox row
+    @Transactional
+    @Timed(value = "auth.operation", extraTags = {"operation", "resendOtp"}, histogram = true)
     public void resendOtp(String email){
         User user = userRepository.findByEmail(email)
-                .orElseThrow(() -> new RuntimeException("User not found"));
+                .orElseThrow(() -> failure("resendOtp", "unknown_user", "User not found"));
 
         if (user.getEnabled()){
-            throw new RuntimeException("Account is already verified");
+            throw failure("resendOtp", "already_verified", "Account is already verified");
         }
 
-        String newOtp = generateVerificationCode();
-        user.setVerficationCode(newOtp);
-        user.setVerficationCodeExpiresAt(LocalDateTime.now().plusMinutes(10));
-        userRepository.save(user);
-
-        Map<String, Object> nestJsEnvelope = new HashMap<>();
-        nestJsEnvelope.put("pattern", "email.otp.key");
-        nestJsEnvelope.put("type", "VERIFY");
-        nestJsEnvelope.put("data",Map.of(
-                "email", user.getEmail(),
-                "otp", newOtp
-            )
-        );
-        rabbitTemplate.convertAndSend(
+        String newOtp = otpStore.issue(user.getEmail(), OtpPurpose.VERIFY, VERIFY_CODE_TTL);
+
+        outboxService.enqueue(
                 RabbitMQConfig.Email_EXCHANGE,
                 RabbitMQConfig.Email_ROUTING_KEY,
-                nestJsEnvelope
+                MessageEnvelopes.otpEmail("VERIFY", user.getEmail(), newOtp)
         );
     }
 
-    public String login(LoginRequest loginRequest){
-        User user = userRepository.findByUsername(loginRequest.username)
-                .orElseThrow(() -> new RuntimeException("Username not found"));
+    @Timed(value = "auth.operation", extraTags = {"operation", "login"}, histogram = true)
+    public LoginResult login(LoginRequest loginRequest){
+        if (loginRequest.username == null || loginRequest.password == null){
+            return rejected(LoginResult.Failure.BAD_CREDENTIALS);
+        }
+        if (unknownUsernames.contains(loginRequest.username)){
+            return unknownUser(loginRequest.password);
+        }
+
+        // One projection query on a miss, none on a hit, and never a User entity
+        // A login right after verification or a reset must not see the replica's older row
+        Optional<UserCredentials> found = credentialsCache.get(loginRequest.username,
+                () -> readYourWrites.read(loginRequest.username,
+                        () -> userRepository.findCredentialsByUsername(loginRequest.username)));
+        if (found.isEmpty()){
+            unknownUsernames.put(loginRequest.username);
+            return unknownUser(loginRequest.password);
+        }
+        UserCredentials user = found.get();
 
-        if (!user.getEnabled()){
-            throw new RuntimeException("User not verified");
+        // Checked before anything else, so an unverified account costs the same BCrypt check as any other
+        // and timing tells nothing; only the right password learns that the account is not verified yet
+        if (!passwordHasher.matches(loginRequest.password, user.password())){
+            return rejected(LoginResult.Failure.BAD_CREDENTIALS);
         }
+        if (!user.enabled()){
+            return rejected(LoginResult.Failure.NOT_VERIFIED);
+        }
+
+        rehashIfNeeded(user, loginRequest.password);
+        return new LoginResult.Success(new AuthResponse(
+                jwtUtil.generateToken(user.id()),
+                user.id(),
+                user.username(),
+                user.email()
+        ));
+    }
+
+    // Checked against a hash of the current cost, so an unknown username takes as long to reject as a wrong password
+    private LoginResult unknownUser(String rawPassword){
+        passwordHasher.matches(rawPassword, dummyHash);
+        return rejected(LoginResult.Failure.UNKNOWN_USER);
+    }
 
-        if (passwordEncoder.matches(loginRequest.password, user.getPassword())){
-            return jwtUtil.generateToken(user);
+    private LoginResult rejected(LoginResult.Failure failure){
+        loginFailures.get(failure).increment();
+        return failure;
+    }
+
+    // The plaintext is only available at login, so this is where a hash moves to the current cost factor
+    private void rehashIfNeeded(UserCredentials user, String rawPassword){
+        if (!passwordHasher.upgradeEncoding(user.password())){
+            return;
         }
-        else {
-            throw new RuntimeException("Invalid credentials");
+        String outcome;
+        try {
+            String rehashed = passwordHasher.encode(rawPassword);
+            outcome = userRepository.replacePasswordHash(user.id(), user.password(), rehashed) == 1 ? "updated" : "conflict";
+            // Stale either way: replaced here, or changed by someone else first. Other nodes keep their copy
+            // until it expires; the update is not announced since the public fields are unchanged.
+            credentialsCache.evict(user.username());
+        } catch (PasswordHashingRejectedException e) {
+            // The pool is saturated; the user is already authenticated, so try again on a later login
+            outcome = "skipped";
         }
+        meterRegistry.counter("auth.password.rehash", "outcome", outcome).increment();
     }
 
+    @Transactional
+    @Timed(value = "auth.operation", extraTags = {"operation", "requestPasswordReset"}, histogram = true)
     public void requestPasswordReset(String email){
         User user = userRepository.findByEmail(email)
-                .orElseThrow(() -> new RuntimeException("User not found"));
-
-        String resetCode = generateVerificationCode();
-        user.setVerficationCode(resetCode);
-        user.setVerficationCodeExpiresAt(LocalDateTime.now().plusMinutes(5));
-        userRepository.save(user);
-
-        Map<String, Object> nestJsEnvelope = new HashMap<>();
-        nestJsEnvelope.put("pattern", "email.otp.key");
-        nestJsEnvelope.put("type", "RESET");
-        nestJsEnvelope.put("data",Map.of(
-                "email", user.getEmail(),
-                "otp", resetCode
-            )
-        );
-        rabbitTemplate.convertAndSend(
+                .orElseThrow(() -> failure("requestPasswordReset", "unknown_user", "User not found"));
+
+        String resetCode = otpStore.issue(user.getEmail(), OtpPurpose.RESET, RESET_CODE_TTL);
+
+        outboxService.enqueue(
                 RabbitMQConfig.Email_EXCHANGE,
                 RabbitMQConfig.Email_ROUTING_KEY,
-                nestJsEnvelope
+                MessageEnvelopes.otpEmail("RESET", user.getEmail(), resetCode)
         );
     }
 
+    @Timed(value = "auth.operation", extraTags = {"operation", "resetPassword"}, histogram = true)
     public void resetPassword(String email, String code, String newPassword){
-        User user = userRepository.findByEmail(email)
-                .orElseThrow(() -> new RuntimeException("User not found"));
+        // Loaded to be saved back, so it has to carry the primary's version
+        User user = readYourWrites.onPrimary(() -> userRepository.findByEmail(email))
+                .orElseThrow(() -> failure("resetPassword", "unknown_user", "User not found"));
 
-        if(!user.getVerficationCode().equals(code) ||
-                user.getVerficationCodeExpiresAt().isBefore(LocalDateTime.now())){
-            throw new RuntimeException("Invalid or expired reset code");
+        OtpStore.Outcome outcome = otpStore.consume(email, OtpPurpose.RESET, code);
+        if (outcome != OtpStore.Outcome.ACCEPTED){
+            throw failure("resetPassword", otpReason(outcome), "Invalid or expired reset code");
         }
 
-        user.setPassword(passwordEncoder.encode(newPassword));
-        user.setVerficationCode(null);
-        user.setVerficationCodeExpiresAt(null);
-        userRepository.save(user);
-    }
-
-    public User getUserByUsername(String username){
-        return userRepository.findByUsername(username)
-                .orElseThrow(()-> new RuntimeException("Username not found"));
-    }
-
-    private String generateVerificationCode(){
-        Random random = new Random();
-        int code = 100000 + random.nextInt(900000);
-        return String.valueOf(code);
+        user.setPassword(passwordHasher.encode(newPassword));
+        // Same as verify: the feed entry announces the change, so every node drops its cached copy
+        transactionTemplate.executeWithoutResult(status -> {
+            User savedUser = userRepository.saveAndFlush(user);
+            userChangeFeed.record(savedUser);
+            readYourWrites.recordWrite(savedUser);
+            credentialsCache.evict(savedUser.getUsername());
+        });
     }
 
+    @Transactional
+    @Timed(value = "auth.operation", extraTags = {"operation", "verify"}, histogram = true)
     public void verifyUser(String email, String code){
         User user = userRepository.findByEmail(email)
-                .orElseThrow(() -> new RuntimeException("Username not found"));
+                .orElseThrow(() -> failure("verify", "unknown_user", "Username not found"));
 
         if (user.getEnabled()) {
-            throw new RuntimeException("Account is already verified");
+            throw failure("verify", "already_verified", "Account is already verified");
         }
 
-        if (!user.getVerficationCode().equals(code)){
-            throw new RuntimeException("Invalid verification code");
-        }
-
-        if(user.getVerficationCodeExpiresAt().isBefore(LocalDateTime.now())){
-            throw new RuntimeException("Verification code expired");
+        OtpStore.Outcome outcome = otpStore.consume(email, OtpPurpose.VERIFY, code);
+        if (outcome != OtpStore.Outcome.ACCEPTED){
+            throw failure("verify", otpReason(outcome), "Invalid or expired verification code");
         }
 
         user.setEnabled(true);
-        user.setVerficationCode(null);
-        user.setVerficationCodeExpiresAt(null);
 
-        userRepository.save(user);
+        // Flushed first so the feed carries the new version
+        User savedUser = userRepository.saveAndFlush(user);
+        userChangeFeed.record(savedUser);
+        readYourWrites.recordWrite(savedUser);
+        credentialsCache.evict(savedUser.getUsername());
+    }
+
+    // Counted apart, the client still gets one message for all three
+    private static String otpReason(OtpStore.Outcome outcome){
+        return switch (outcome){
+            case EXPIRED -> "expired_otp";
+            case MISSING -> "missing_otp";
+            default -> "invalid_otp";
+        };
+    }
+
+    private RuntimeException failure(String operation, String reason, String message){
+        meterRegistry.counter("auth.failures", "operation", operation, "reason", reason).increment();
+        return new RuntimeException(message);
     }
 }
@@ -0,0 +1,195 @@
+package com.chatstack.authservice.services;
+
+import com.chatstack.authservice.config.RabbitMQConfig;
+import com.chatstack.authservice.config.ReadYourWrites;
+import com.chatstack.authservice.dto.UserIdentity;
+import com.chatstack.authservice.dto.UserRegisteredBatchEvent;
+import com.chatstack.authservice.dto.UserRegisteredEvent;
+import com.chatstack.authservice.repositories.UserRepository;
+import com.chatstack.authservice.util.BloomFilter;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.rabbit.annotation.Exchange;
+import org.springframework.amqp.rabbit.annotation.Queue;
+import org.springframework.amqp.rabbit.annotation.QueueBinding;
+import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.*;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+/**
+ * Answers username/email existence checks from per-field Bloom filters.
+ * A definite "no" returns without touching Postgres; only possible hits are confirmed by a query.
+ * Until the startup scan has finished every check goes to the database.
+ */
+@Service
+public class AvailabilityIndex {
+    private static final Logger log = LoggerFactory.getLogger(AvailabilityIndex.class);
+
+    private final UserRepository userRepository;
+    private final ReadYourWrites readYourWrites;
+    private final UnknownUsernameCache unknownUsernames;
+    private final Field usernames;
+    private final Field emails;
+    private volatile boolean ready;
+
+    public AvailabilityIndex(UserRepository userRepository,
+                             ReadYourWrites readYourWrites,
+                             UnknownUsernameCache unknownUsernames,
+                             MeterRegistry meterRegistry,
+                             @Value("${availability.bloom.expected-insertions:1000000}") long expectedInsertions,
+                             @Value("${availability.bloom.false-positive-rate:0.01}") double falsePositiveRate) {
+        this.userRepository = userRepository;
+        this.readYourWrites = readYourWrites;
+        this.unknownUsernames = unknownUsernames;
+        this.usernames = new Field("username", BloomFilter.create(expectedInsertions, falsePositiveRate), meterRegistry);
+        this.emails = new Field("email", BloomFilter.create(expectedInsertions, falsePositiveRate), meterRegistry);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    @Transactional(readOnly = true)
+    public void build() {
+        long start = System.currentTimeMillis();
+        // Scanned on the primary: a user missing from a lagging replica would be a wrong "definitely not" for good
+        long count = readYourWrites.onPrimary(this::scanIdentities);
+        ready = true;
+        log.info("Availability index built from {} users in {} ms", count, System.currentTimeMillis() - start);
+    }
+
+    private long scanIdentities() {
+        long count = 0;
+        try (Stream<UserIdentity> identities = userRepository.streamIdentities()) {
+            Iterator<UserIdentity> iterator = identities.iterator();
+            while (iterator.hasNext()) {
+                UserIdentity identity = iterator.next();
+                record(identity.username(), identity.email());
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Adds a user that is about to be, or already is, stored. Adding one that never commits
+     * only costs a database check later, never a wrong answer. A login no longer treats the username as unknown.
+     */
+    public void record(String username, String email) {
+        if (username != null) {
+            usernames.filter.put(username);
+            unknownUsernames.evict(username);
+        }
+        if (email != null) {
+            emails.filter.put(email);
+        }
+    }
+
+    // Registrations handled by other AuthService nodes
+    @RabbitListener(bindings = @QueueBinding(
+            value = @Queue,
+            exchange = @Exchange(value = RabbitMQConfig.EXCHANGE, type = "topic"),
+            key = RabbitMQConfig.ROUTING_KEY))
+    public void onRegistration(UserRegisteredEvent event) {
+        record(event.username(), event.email());
+    }
+
+    @RabbitListener(bindings = @QueueBinding(
+            value = @Queue,
+            exchange = @Exchange(value = RabbitMQConfig.EXCHANGE, type = "topic"),
+            key = RabbitMQConfig.REGISTRATION_BATCH_ROUTING_KEY))
+    public void onRegistrationBatch(UserRegisteredBatchEvent event) {
+        event.users().forEach(this::onRegistration);
+    }
+
+    public boolean usernameExists(String username) {
+        return usernames.exists(username, userRepository::existsByUsername);
+    }
+
+    public boolean emailExists(String email) {
+        return emails.exists(email, userRepository::existsByEmail);
+    }
+
+    public Map<String, Boolean> usernamesExist(Collection<String> candidates) {
+        return usernames.existAll(candidates, userRepository::findExistingUsernames);
+    }
+
+    public Map<String, Boolean> emailsExist(Collection<String> candidates) {
+        return emails.existAll(candidates, userRepository::findExistingEmails);
+    }
+
+    private class Field {
+        private final BloomFilter filter;
+        private final Counter definiteMisses;
+        private final Counter confirmedHits;
+        private final Counter falsePositives;
+
+        Field(String name, BloomFilter filter, MeterRegistry meterRegistry) {
+            this.filter = filter;
+            this.definiteMisses = lookups(meterRegistry, name, "definite_miss");
+            this.confirmedHits = lookups(meterRegistry, name, "confirmed_hit");
+            this.falsePositives = lookups(meterRegistry, name, "false_positive");
+            Gauge.builder("availability.bloom.expected.fpp", filter, BloomFilter::expectedFalsePositiveRate)
+                    .description("False-positive rate implied by the filter's current bit occupancy")
+                    .tag("field", name)
+                    .register(meterRegistry);
+            Gauge.builder("availability.bloom.memory", filter, BloomFilter::memoryBytes)
+                    .description("Heap used by the filter's bit array")
+                    .baseUnit("bytes")
+                    .tag("field", name)
+                    .register(meterRegistry);
+        }
+
+        boolean exists(String value, Function<String, Boolean> database) {
+            boolean consulted = ready;
+            if (consulted && !filter.mightContain(value)) {
+                definiteMisses.increment();
+                return false;
+            }
+            boolean exists = readYourWrites.read(value, () -> database.apply(value));
+            if (consulted) {
+                (exists ? confirmedHits : falsePositives).increment();
+            }
+            return exists;
+        }
+
+        Map<String, Boolean> existAll(Collection<String> candidates, Function<Collection<String>, List<String>> database) {
+            Map<String, Boolean> result = new LinkedHashMap<>();
+            List<String> possible = new ArrayList<>();
+            boolean consulted = ready;
+            for (String candidate : candidates) {
+                if (consulted && !filter.mightContain(candidate)) {
+                    definiteMisses.increment();
+                    result.put(candidate, false);
+                } else {
+                    possible.add(candidate);
+                }
+            }
+            if (!possible.isEmpty()) {
+                Set<String> found = new HashSet<>(readYourWrites.readAll(possible, () -> database.apply(possible)));
+                for (String candidate : possible) {
+                    boolean exists = found.contains(candidate);
+                    if (consulted) {
+                        (exists ? confirmedHits : falsePositives).increment();
+                    }
+                    result.put(candidate, exists);
+                }
+            }
+            return result;
+        }
+
+        private static Counter lookups(MeterRegistry meterRegistry, String field, String result) {
+            return Counter.builder("availability.lookups")
+                    .description("Existence checks by outcome; false_positive / (false_positive + confirmed_hit) is the observed rate")
+                    .tags("field", field, "result", result)
+                    .register(meterRegistry);
+        }
+    }
+}
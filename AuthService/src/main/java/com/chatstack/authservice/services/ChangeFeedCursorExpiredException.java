@@ -0,0 +1,7 @@
+package com.chatstack.authservice.services;
+
+public class ChangeFeedCursorExpiredException extends RuntimeException {
+    public ChangeFeedCursorExpiredException(long after, long oldest) {
+        super("Cursor " + after + " is older than the retained change feed (oldest " + oldest + "); reload from /changes/snapshot");
+    }
+}
@@ -0,0 +1,52 @@
+package com.chatstack.authservice.services;
+
+import com.chatstack.authservice.config.RabbitMQConfig;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import tools.jackson.core.JsonGenerator;
+import tools.jackson.core.JsonParser;
+import tools.jackson.databind.ObjectMapper;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Turns stored outbox payloads into message bodies in the format configured for their exchange.
+ * The outbox always holds JSON, which stays readable in the table and lets the format change while
+ * messages are pending; binary formats are produced by copying the parsed tokens straight into the
+ * target generator, with no tree or object in between.
+ * email.exchange stays JSON: email-service uses the NestJS RMQ transport, which only parses JSON.
+ */
+@Component
+public class EventEncoder {
+    private final EventFormat userEventFormat;
+    private final ObjectMapper jsonMapper;
+    private final Map<EventFormat, ObjectMapper> binaryMappers = new EnumMap<>(EventFormat.class);
+
+    public EventEncoder(ObjectMapper jsonMapper,
+                        @Value("${messaging.user-events.format:json}") String userEventFormat) {
+        this.jsonMapper = jsonMapper;
+        this.userEventFormat = EventFormat.of(userEventFormat);
+        binaryMappers.put(EventFormat.CBOR, EventFormat.CBOR.newMapper());
+        binaryMappers.put(EventFormat.SMILE, EventFormat.SMILE.newMapper());
+    }
+
+    public EventFormat formatFor(String exchange) {
+        return RabbitMQConfig.EXCHANGE.equals(exchange) ? userEventFormat : EventFormat.JSON;
+    }
+
+    public byte[] encode(EventFormat format, String json) {
+        if (format == EventFormat.JSON) {
+            return json.getBytes(StandardCharsets.UTF_8);
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream(json.length());
+        try (JsonParser parser = jsonMapper.createParser(json);
+             JsonGenerator generator = binaryMappers.get(format).createGenerator(out)) {
+            parser.nextToken();
+            generator.copyCurrentStructure(parser);
+        }
+        return out.toByteArray();
+    }
+}
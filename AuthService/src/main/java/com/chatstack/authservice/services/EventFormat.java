@@ -0,0 +1,47 @@
+package com.chatstack.authservice.services;
+
+import org.springframework.amqp.core.MessageProperties;
+import tools.jackson.databind.ObjectMapper;
+import tools.jackson.databind.json.JsonMapper;
+import tools.jackson.dataformat.cbor.CBORMapper;
+import tools.jackson.dataformat.smile.SmileMapper;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+/**
+ * Wire formats for broker events. The format travels in the content-type header, so a consumer
+ * picks its decoder per message and a publisher can switch formats without a coordinated deploy.
+ */
+public enum EventFormat {
+    JSON(MessageProperties.CONTENT_TYPE_JSON),
+    CBOR("application/cbor"),
+    SMILE("application/x-jackson-smile");
+
+    private final String contentType;
+
+    EventFormat(String contentType) {
+        this.contentType = contentType;
+    }
+
+    public static EventFormat of(String name) {
+        return valueOf(name.trim().toUpperCase(Locale.ROOT));
+    }
+
+    public String contentType() {
+        return contentType;
+    }
+
+    // Binary formats carry no charset
+    public String contentEncoding() {
+        return this == JSON ? StandardCharsets.UTF_8.name() : null;
+    }
+
+    public ObjectMapper newMapper() {
+        return switch (this) {
+            case JSON -> JsonMapper.builder().build();
+            case CBOR -> CBORMapper.builder().build();
+            case SMILE -> SmileMapper.builder().build();
+        };
+    }
+}
@@ -0,0 +1,52 @@
+package com.chatstack.authservice.services;
+
+import com.chatstack.authservice.dto.OtpEmailBatchEvent;
+import com.chatstack.authservice.dto.OtpEmailEvent;
+import com.chatstack.authservice.dto.UserChangedEvent;
+import com.chatstack.authservice.dto.UserDeletedBatchEvent;
+import com.chatstack.authservice.dto.UserDeletedEvent;
+import com.chatstack.authservice.dto.UserRegisteredBatchEvent;
+import com.chatstack.authservice.dto.UserRegisteredEvent;
+import com.chatstack.authservice.entities.User;
+import com.chatstack.authservice.entities.UserChange;
+
+import java.util.List;
+
+/**
+ * Builds the message bodies AuthService puts on the broker.
+ * The email envelope follows the NestJS microservice format ({pattern, data}) email-service expects.
+ */
+public final class MessageEnvelopes {
+    public static final String EMAIL_PATTERN = "email.otp.key";
+    public static final String EMAIL_BATCH_PATTERN = "email.otp.batch";
+
+    private MessageEnvelopes() {
+    }
+
+    public static UserRegisteredEvent userRegistered(User user) {
+        return new UserRegisteredEvent(user.getId(), user.getUsername(), user.getEmail());
+    }
+
+    public static UserRegisteredBatchEvent userRegisteredBatch(List<User> users) {
+        return new UserRegisteredBatchEvent(users.stream().map(MessageEnvelopes::userRegistered).toList());
+    }
+
+    public static UserDeletedBatchEvent usersDeleted(List<User> users) {
+        return new UserDeletedBatchEvent(users.stream()
+                .map(user -> new UserDeletedEvent(user.getId(), user.getUsername(), user.getEmail()))
+                .toList());
+    }
+
+    public static UserChangedEvent userChanged(UserChange change) {
+        return new UserChangedEvent(change.getSeq(), change.getUserId(), change.getUsername(), change.getEmail(),
+                change.getEnabled(), change.getVersion());
+    }
+
+    public static OtpEmailEvent otpEmail(String type, String email, String otp) {
+        return new OtpEmailEvent(EMAIL_PATTERN, type, new OtpEmailEvent.Data(email, otp));
+    }
+
+    public static OtpEmailBatchEvent otpEmailBatch(String type, List<OtpEmailEvent.Data> emails) {
+        return new OtpEmailBatchEvent(EMAIL_BATCH_PATTERN, type, emails);
+    }
+}
@@ -0,0 +1,190 @@
+package com.chatstack.authservice.services;
+
+import com.chatstack.authservice.entities.OtpCode;
+import com.chatstack.authservice.entities.OtpPurpose;
+import com.chatstack.authservice.repositories.OtpCodeRepository;
+import com.chatstack.authservice.util.TimerWheel;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * One-time codes keyed by email and purpose, kept off the users row. Codes live in a map whose entries a
+ * timer wheel removes when they expire; using one is a single compare-and-remove, so two requests with the
+ * same code cannot both succeed.
+ * With otp.store.write-through (the default) each code is also written to otp_codes, so it survives a restart
+ * and another instance can check it. The map still decides for the codes it holds, and the row is removed in
+ * the same step so the code cannot be used a second time elsewhere. A code the map does not hold, or holds an
+ * older one for, is looked up in the table: it was issued before a restart or by another instance.
+ */
+@Service
+public class OtpStore {
+    private static final Logger log = LoggerFactory.getLogger(OtpStore.class);
+    // How long an expired code is remembered, so a late attempt is reported as expired rather than missing
+    private static final Duration EXPIRED_KEPT = Duration.ofMinutes(10);
+
+    private final ConcurrentHashMap<Key, Issued> codes = new ConcurrentHashMap<>();
+    private final SecureRandom random = new SecureRandom();
+    private final TimerWheel<Expiry> wheel;
+    private final OtpCodeRepository otpCodeRepository;
+    private final boolean writeThrough;
+    private final Counter expired;
+    private final Map<Outcome, Counter> outcomes = new EnumMap<>(Outcome.class);
+
+    public OtpStore(OtpCodeRepository otpCodeRepository,
+                    MeterRegistry meterRegistry,
+                    @Value("${otp.store.write-through:true}") boolean writeThrough,
+                    @Value("${otp.store.tick-ms:1000}") long tickMs) {
+        this.otpCodeRepository = otpCodeRepository;
+        this.writeThrough = writeThrough;
+        this.wheel = new TimerWheel<>(tickMs, System.currentTimeMillis());
+        Gauge.builder("otp.store.size", codes, ConcurrentHashMap::size)
+                .description("Codes currently held in memory")
+                .register(meterRegistry);
+        this.expired = Counter.builder("otp.store.expired")
+                .description("Codes removed by the timer wheel before they were used")
+                .register(meterRegistry);
+        for (Outcome outcome : Outcome.values()) {
+            outcomes.put(outcome, meterRegistry.counter("otp.store.consume", "result", outcome.name().toLowerCase()));
+        }
+    }
+
+    /**
+     * Generates a code for the email and purpose, replacing any earlier one.
+     * Call inside the transaction that sends it when write-through is on, so the row commits with the email event.
+     */
+    public String issue(String email, OtpPurpose purpose, Duration ttl) {
+        String code = String.valueOf(100000 + random.nextInt(900000));
+        long expiresAt = System.currentTimeMillis() + ttl.toMillis();
+        if (writeThrough) {
+            otpCodeRepository.upsert(email, purpose.name(), code, toLocalDateTime(expiresAt));
+        }
+        Key key = new Key(email, purpose);
+        Issued issued = new Issued(code, expiresAt);
+        codes.put(key, issued);
+        wheel.schedule(new Expiry(key, issued), expiresAt + EXPIRED_KEPT.toMillis());
+        return code;
+    }
+
+    /**
+     * ACCEPTED exactly once per issued code. Otherwise says why: MISMATCH for a wrong code, EXPIRED for one
+     * past its expiry, MISSING when no code was issued or it has already been used.
+     */
+    public Outcome consume(String email, OtpPurpose purpose, String code) {
+        Outcome outcome;
+        if (code == null || code.length() != 6) {
+            // Could never have been issued, so no need to look it up
+            outcome = Outcome.MISMATCH;
+        } else {
+            Key key = new Key(email, purpose);
+            Issued issued = codes.get(key);
+            // The expiry decides; the wheel only reclaims the memory, later
+            boolean expiredHere = issued != null && issued.expiresAt <= System.currentTimeMillis();
+            if (issued != null && !expiredHere && issued.code.equals(code)) {
+                // Lost the remove: a concurrent request used it first
+                outcome = !codes.remove(key, issued) ? Outcome.MISSING
+                        : writeThrough ? consumeRow(key, code) : Outcome.ACCEPTED;
+            } else if (writeThrough) {
+                // Issued before a restart or by another instance, possibly replacing the code held here
+                outcome = consumeRow(key, code);
+                if (outcome == Outcome.ACCEPTED && issued != null) {
+                    codes.remove(key, issued);
+                }
+            } else {
+                outcome = issued == null ? Outcome.MISSING : expiredHere ? Outcome.EXPIRED : Outcome.MISMATCH;
+            }
+        }
+        outcomes.get(outcome).increment();
+        return outcome;
+    }
+
+    /**
+     * Whether this instance holds a code for the email and purpose that has not expired yet. Codes written
+     * through to otp_codes are better checked there, where those issued by other instances are too.
+     */
+    public boolean holdsLive(String email, OtpPurpose purpose) {
+        Issued issued = codes.get(new Key(email, purpose));
+        return issued != null && issued.expiresAt > System.currentTimeMillis();
+    }
+
+    public int size() {
+        return codes.size();
+    }
+
+    @Scheduled(fixedRateString = "${otp.store.tick-ms:1000}")
+    public void expire() {
+        // Fires EXPIRED_KEPT after the expiry. A replaced or used code is no longer mapped to this Issued,
+        // so its timer removes nothing
+        wheel.advance(System.currentTimeMillis(), expiry -> {
+            if (codes.remove(expiry.key, expiry.issued)) {
+                expired.increment();
+                if (writeThrough) {
+                    deleteRow(expiry);
+                }
+            }
+        });
+    }
+
+    // Rows the wheel did not remove: codes issued by an instance that has since stopped
+    @Scheduled(fixedDelayString = "${otp.store.purge-interval-ms:600000}")
+    public void purgeExpiredRows() {
+        if (writeThrough) {
+            otpCodeRepository.deleteExpired(LocalDateTime.now().minus(EXPIRED_KEPT));
+        }
+    }
+
+    private void deleteRow(Expiry expiry) {
+        try {
+            otpCodeRepository.deleteIssued(expiry.key.toRowKey(), expiry.issued.code);
+        } catch (RuntimeException e) {
+            // Already unusable past its expires_at; purgeExpiredRows clears it later
+            log.warn("Could not delete expired OTP row: {}", e.getMessage());
+        }
+    }
+
+    // Compare-and-delete on the row; fails if another instance has since replaced or used the code.
+    // Only a failure reads the row back, to tell why.
+    private Outcome consumeRow(Key key, String code) {
+        LocalDateTime now = LocalDateTime.now();
+        if (otpCodeRepository.consume(key.toRowKey(), code, now) == 1) {
+            return Outcome.ACCEPTED;
+        }
+        return otpCodeRepository.findById(key.toRowKey())
+                .map(row -> !row.getExpiresAt().isAfter(now) ? Outcome.EXPIRED : Outcome.MISMATCH)
+                .orElse(Outcome.MISSING);
+    }
+
+    private static LocalDateTime toLocalDateTime(long epochMillis) {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(epochMillis), ZoneId.systemDefault());
+    }
+
+    public enum Outcome {
+        ACCEPTED, MISMATCH, EXPIRED, MISSING
+    }
+
+    private record Key(String email, OtpPurpose purpose) {
+        OtpCode.Key toRowKey() {
+            return new OtpCode.Key(email, purpose);
+        }
+    }
+
+    private record Issued(String code, long expiresAt) {
+    }
+
+    private record Expiry(Key key, Issued issued) {
+    }
+}
@@ -0,0 +1,216 @@
+package com.chatstack.authservice.services;
+
+import com.chatstack.authservice.entities.OutboxEvent;
+import com.chatstack.authservice.repositories.OutboxEventRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.TimeGauge;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.AmqpException;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageBuilder;
+import org.springframework.amqp.core.MessageDeliveryMode;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Drains the outbox to RabbitMQ in batches. A batch is claimed in a short transaction that pushes its
+ * next_attempt_at past a lease, so the row locks and the connection are released before anything is sent.
+ * The batch is then published with correlated publisher confirms, and a second short transaction deletes
+ * the confirmed rows and schedules the rest for a retry with backoff. Rows of a relay that dies in between
+ * are picked up again once the lease runs out.
+ * Delivery is at-least-once, consumers may see a message again after a relay crash.
+ */
+@Component
+public class OutboxRelay {
+    private static final Logger log = LoggerFactory.getLogger(OutboxRelay.class);
+    private static final long MAX_BACKOFF_SECONDS = 300;
+
+    private final OutboxEventRepository outboxEventRepository;
+    private final RabbitTemplate rabbitTemplate;
+    private final EventEncoder eventEncoder;
+    private final TransactionTemplate transactionTemplate;
+    private final int batchSize;
+    private final long confirmTimeoutMs;
+    // Twice the confirm wait, which leaves the sends before it time to finish
+    private final Duration lease;
+
+    private final Counter published;
+    private final Counter failed;
+    private final Timer batchTimer;
+    private final Timer relayLag;
+    private final MeterRegistry meterRegistry;
+    private final AtomicLong oldestPendingAgeMs = new AtomicLong();
+
+    public OutboxRelay(OutboxEventRepository outboxEventRepository,
+                       RabbitTemplate rabbitTemplate,
+                       EventEncoder eventEncoder,
+                       TransactionTemplate transactionTemplate,
+                       MeterRegistry meterRegistry,
+                       @Value("${outbox.relay.batch-size:100}") int batchSize,
+                       @Value("${outbox.relay.confirm-timeout-ms:5000}") long confirmTimeoutMs) {
+        this.outboxEventRepository = outboxEventRepository;
+        this.rabbitTemplate = rabbitTemplate;
+        this.eventEncoder = eventEncoder;
+        this.transactionTemplate = transactionTemplate;
+        this.batchSize = batchSize;
+        this.confirmTimeoutMs = confirmTimeoutMs;
+        this.lease = Duration.ofMillis(confirmTimeoutMs).multipliedBy(2);
+        this.meterRegistry = meterRegistry;
+
+        this.published = Counter.builder("outbox.relay.published")
+                .description("Outbox messages confirmed by the broker")
+                .register(meterRegistry);
+        this.failed = Counter.builder("outbox.relay.failed")
+                .description("Outbox publish attempts that were nacked, timed out or errored")
+                .register(meterRegistry);
+        this.batchTimer = Timer.builder("outbox.relay.batch")
+                .description("Time to publish and confirm one outbox batch")
+                .register(meterRegistry);
+        this.relayLag = Timer.builder("outbox.relay.lag")
+                .description("Time from outbox insert to broker confirm")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        TimeGauge.builder("outbox.pending.age", oldestPendingAgeMs, TimeUnit.MILLISECONDS, AtomicLong::get)
+                .description("Age of the oldest outbox message seen in the last relay pass")
+                .register(meterRegistry);
+    }
+
+    @Scheduled(fixedDelayString = "${outbox.relay.interval-ms:200}")
+    public void drain() {
+        int confirmed;
+        do {
+            confirmed = relayBatch();
+        } while (confirmed == batchSize);
+    }
+
+    /**
+     * Publishes one claimed batch and returns how many messages were confirmed.
+     * A short count means the outbox is drained or the broker is struggling; either way the caller stops.
+     */
+    private int relayBatch() {
+        LocalDateTime now = LocalDateTime.now();
+        List<OutboxEvent> batch = transactionTemplate.execute(status -> claimNextBatch(now));
+        if (batch.isEmpty()) {
+            oldestPendingAgeMs.set(0);
+            return 0;
+        }
+        oldestPendingAgeMs.set(Duration.between(batch.get(0).getCreatedAt(), now).toMillis());
+
+        Timer.Sample sample = Timer.start();
+        List<CorrelationData> confirmations = new ArrayList<>(batch.size());
+        for (OutboxEvent event : batch) {
+            confirmations.add(send(event));
+        }
+
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(confirmTimeoutMs);
+        List<Long> confirmed = new ArrayList<>(batch.size());
+        List<OutboxEvent> unconfirmed = new ArrayList<>();
+        for (int i = 0; i < batch.size(); i++) {
+            OutboxEvent event = batch.get(i);
+            if (awaitAck(confirmations.get(i), deadline)) {
+                confirmed.add(event.getId());
+                relayLag.record(Duration.between(event.getCreatedAt(), LocalDateTime.now()));
+            } else {
+                unconfirmed.add(event);
+            }
+        }
+
+        LocalDateTime settledAt = LocalDateTime.now();
+        transactionTemplate.executeWithoutResult(status -> {
+            outboxEventRepository.deleteAllByIdInBatch(confirmed);
+            for (OutboxEvent event : unconfirmed) {
+                scheduleRetry(event, settledAt);
+            }
+        });
+        published.increment(confirmed.size());
+        sample.stop(batchTimer);
+        return confirmed.size();
+    }
+
+    private List<OutboxEvent> claimNextBatch(LocalDateTime now) {
+        List<OutboxEvent> batch = outboxEventRepository.lockNextBatch(now, batchSize);
+        if (!batch.isEmpty()) {
+            outboxEventRepository.claim(batch.stream().map(OutboxEvent::getId).toList(), now.plus(lease));
+        }
+        return batch;
+    }
+
+    private CorrelationData send(OutboxEvent event) {
+        EventFormat format = eventEncoder.formatFor(event.getExchange());
+        byte[] body = eventEncoder.encode(format, event.getPayload());
+        payloadSize(event.getExchange(), format).record(body.length);
+        Message message = MessageBuilder.withBody(body)
+                .setContentType(format.contentType())
+                .setContentEncoding(format.contentEncoding())
+                .setMessageId(event.getId().toString())
+                .setDeliveryMode(MessageDeliveryMode.PERSISTENT)
+                .build();
+        CorrelationData correlation = new CorrelationData(event.getId().toString());
+        Timer.Sample sample = Timer.start(meterRegistry);
+        try {
+            rabbitTemplate.send(event.getExchange(), event.getRoutingKey(), message, correlation);
+        } catch (AmqpException e) {
+            sample.stop(publishTimer(event.getExchange(), "error"));
+            log.warn("Failed to publish outbox event {}: {}", event.getId(), e.getMessage());
+            return null;
+        }
+        // Publish latency runs until the broker confirm, which is what a slow broker actually delays
+        correlation.getFuture().whenComplete((confirm, error) ->
+                sample.stop(publishTimer(event.getExchange(), confirm != null && confirm.ack() ? "ack" : "nack")));
+        return correlation;
+    }
+
+    private Timer publishTimer(String exchange, String outcome) {
+        return Timer.builder("outbox.relay.publish")
+                .description("Time from send to broker confirm for one message")
+                .tags("exchange", exchange, "outcome", outcome)
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+
+    private DistributionSummary payloadSize(String exchange, EventFormat format) {
+        return DistributionSummary.builder("outbox.relay.payload")
+                .description("Size of published message bodies")
+                .baseUnit("bytes")
+                .tags("exchange", exchange, "format", format.name().toLowerCase())
+                .register(meterRegistry);
+    }
+
+    private boolean awaitAck(CorrelationData correlation, long deadline) {
+        if (correlation == null) {
+            return false;
+        }
+        try {
+            long remaining = Math.max(0, deadline - System.nanoTime());
+            return correlation.getFuture().get(remaining, TimeUnit.NANOSECONDS).ack();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    private void scheduleRetry(OutboxEvent event, LocalDateTime now) {
+        int attempts = event.getAttempts() + 1;
+        long backoffSeconds = Math.min(MAX_BACKOFF_SECONDS, 1L << Math.min(attempts, 16));
+        outboxEventRepository.scheduleRetry(event.getId(), attempts, now.plusSeconds(backoffSeconds));
+        failed.increment();
+        log.warn("Outbox event {} not confirmed (attempt {}), retrying in {}s", event.getId(), attempts, backoffSeconds);
+    }
+}
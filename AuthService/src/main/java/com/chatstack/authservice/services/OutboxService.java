@@ -0,0 +1,27 @@
+package com.chatstack.authservice.services;
+
+import com.chatstack.authservice.entities.OutboxEvent;
+import com.chatstack.authservice.repositories.OutboxEventRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import tools.jackson.databind.ObjectMapper;
+
+@Service
+public class OutboxService {
+    @Autowired
+    private OutboxEventRepository outboxEventRepository;
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    /**
+     * Records a message for OutboxRelay to publish. Must join the caller's transaction,
+     * so the message exists if and only if the caller's changes commit.
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void enqueue(String exchange, String routingKey, Object payload) {
+        String json = objectMapper.writeValueAsString(payload);
+        outboxEventRepository.save(new OutboxEvent(exchange, routingKey, json));
+    }
+}
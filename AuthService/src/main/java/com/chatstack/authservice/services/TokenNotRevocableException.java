@@ -0,0 +1,7 @@
+package com.chatstack.authservice.services;
+
+public class TokenNotRevocableException extends RuntimeException {
+    public TokenNotRevocableException(String message) {
+        super(message);
+    }
+}
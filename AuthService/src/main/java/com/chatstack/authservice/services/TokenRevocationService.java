@@ -0,0 +1,111 @@
+package com.chatstack.authservice.services;
+
+import com.chatstack.authservice.config.RabbitMQConfig;
+import com.chatstack.authservice.dto.TokenRevokedEvent;
+import com.chatstack.authservice.entities.RevokedToken;
+import com.chatstack.authservice.repositories.RevokedTokenRepository;
+import com.chatstack.authservice.security.JwtUtil;
+import com.chatstack.authservice.security.TokenDenylist;
+import io.jsonwebtoken.Claims;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.core.ExchangeTypes;
+import org.springframework.amqp.rabbit.annotation.Exchange;
+import org.springframework.amqp.rabbit.annotation.Queue;
+import org.springframework.amqp.rabbit.annotation.QueueBinding;
+import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+
+/**
+ * Logout and revocation. The jti goes into this node's TokenDenylist right away and reaches the other
+ * nodes through the outbox and token.revocation.exchange, usually within one relay interval.
+ * revoked_tokens holds the same entries so a node that starts later rebuilds its denylist before it
+ * reports ready.
+ */
+@Service
+public class TokenRevocationService {
+    private static final Logger log = LoggerFactory.getLogger(TokenRevocationService.class);
+
+    private final JwtUtil jwtUtil;
+    private final TokenDenylist denylist;
+    private final RevokedTokenRepository revokedTokenRepository;
+    private final OutboxService outboxService;
+    private final TransactionTemplate transactionTemplate;
+    private final MeterRegistry meterRegistry;
+
+    public TokenRevocationService(JwtUtil jwtUtil,
+                                  TokenDenylist denylist,
+                                  RevokedTokenRepository revokedTokenRepository,
+                                  OutboxService outboxService,
+                                  TransactionTemplate transactionTemplate,
+                                  MeterRegistry meterRegistry) {
+        this.jwtUtil = jwtUtil;
+        this.denylist = denylist;
+        this.revokedTokenRepository = revokedTokenRepository;
+        this.outboxService = outboxService;
+        this.transactionTemplate = transactionTemplate;
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * Revokes a token issued to userId. Revoking a token twice is allowed.
+     */
+    public void revoke(String token, Long userId) {
+        Claims claims = token != null ? jwtUtil.extractClaims(token) : null;
+        if (claims == null || claims.getId() == null || claims.getExpiration() == null
+                || !userId.toString().equals(claims.getSubject())) {
+            meterRegistry.counter("jwt.revocations", "result", "rejected").increment();
+            throw new TokenNotRevocableException("Token is invalid, expired or cannot be revoked");
+        }
+        long expiresAt = claims.getExpiration().getTime();
+        transactionTemplate.executeWithoutResult(status -> {
+            revokedTokenRepository.insertIfAbsent(claims.getId(), toLocalDateTime(expiresAt));
+            outboxService.enqueue(RabbitMQConfig.TOKEN_REVOCATION_EXCHANGE, "",
+                    new TokenRevokedEvent(claims.getId(), expiresAt));
+        });
+        denylist.revoke(claims.getId(), expiresAt);
+        meterRegistry.counter("jwt.revocations", "result", "revoked").increment();
+    }
+
+    // Also delivered to the node that revoked; the denylist ignores the repeat
+    @RabbitListener(bindings = @QueueBinding(
+            value = @Queue,
+            exchange = @Exchange(value = RabbitMQConfig.TOKEN_REVOCATION_EXCHANGE, type = ExchangeTypes.FANOUT)))
+    public void onRevoked(TokenRevokedEvent event) {
+        denylist.revoke(event.tokenId(), event.expiresAtMillis());
+    }
+
+    // Application-ready listeners finish before readiness is reported, so no traffic is routed here without the list.
+    // Not read-only, which would send it to a replica that may not have the latest revocations yet.
+    @EventListener(ApplicationReadyEvent.class)
+    @Transactional
+    public void restore() {
+        int restored = 0;
+        for (RevokedToken row : revokedTokenRepository.findByExpiresAtAfter(LocalDateTime.now())) {
+            long expiresAt = row.getExpiresAt().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+            if (denylist.revoke(row.getTokenId(), expiresAt)) {
+                restored++;
+            }
+        }
+        log.info("Restored {} revoked tokens from revoked_tokens", restored);
+    }
+
+    @Scheduled(fixedDelayString = "${jwt.denylist.purge-interval-ms:3600000}")
+    public void purgeExpiredRows() {
+        revokedTokenRepository.deleteExpired(LocalDateTime.now());
+    }
+
+    private static LocalDateTime toLocalDateTime(long epochMillis) {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(epochMillis), ZoneId.systemDefault());
+    }
+}
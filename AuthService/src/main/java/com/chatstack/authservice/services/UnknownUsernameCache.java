@@ -0,0 +1,101 @@
+package com.chatstack.authservice.services;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Bounded LRU of usernames a login recently looked up and did not find, so repeated attempts on them
+ * skip the database. AvailabilityIndex evicts a name as soon as it is registered on any node; the short
+ * TTL covers a registration broadcast that never arrived and a lookup racing with the registration.
+ * Guarded by a ReentrantLock rather than synchronized so virtual threads are never pinned here.
+ */
+@Component
+public class UnknownUsernameCache {
+    private final boolean enabled;
+    private final long ttlMillis;
+    private final Map<String, Long> expiresAt;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Counter hits;
+
+    public UnknownUsernameCache(MeterRegistry meterRegistry,
+                                @Value("${login.unknown-usernames.enabled:true}") boolean enabled,
+                                @Value("${login.unknown-usernames.ttl:30s}") Duration ttl,
+                                @Value("${login.unknown-usernames.max-size:100000}") int maxSize) {
+        this.enabled = enabled && maxSize > 0;
+        this.ttlMillis = ttl.toMillis();
+        this.expiresAt = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+                return size() > maxSize;
+            }
+        };
+        this.hits = Counter.builder("login.unknown_usernames.hits")
+                .description("Logins for an unknown username answered without a database lookup")
+                .register(meterRegistry);
+        Gauge.builder("login.unknown_usernames.size", this, UnknownUsernameCache::size)
+                .description("Usernames currently cached as unknown")
+                .register(meterRegistry);
+    }
+
+    public boolean contains(String username) {
+        if (!enabled) {
+            return false;
+        }
+        lock.lock();
+        try {
+            Long expiry = expiresAt.get(username);
+            if (expiry == null) {
+                return false;
+            }
+            if (expiry <= System.currentTimeMillis()) {
+                expiresAt.remove(username);
+                return false;
+            }
+        } finally {
+            lock.unlock();
+        }
+        hits.increment();
+        return true;
+    }
+
+    public void put(String username) {
+        if (!enabled) {
+            return;
+        }
+        lock.lock();
+        try {
+            expiresAt.put(username, System.currentTimeMillis() + ttlMillis);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void evict(String username) {
+        if (!enabled) {
+            return;
+        }
+        lock.lock();
+        try {
+            expiresAt.remove(username);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int size() {
+        lock.lock();
+        try {
+            return expiresAt.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package com.chatstack.authservice.services;
+
+import com.chatstack.authservice.config.RabbitMQConfig;
+import com.chatstack.authservice.entities.OtpPurpose;
+import com.chatstack.authservice.entities.User;
+import com.chatstack.authservice.repositories.UserRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.TimeGauge;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Deletes accounts that were never verified once their verification code is long gone: registered more than
+ * the code's lifetime plus users.sweeper.grace ago. Runs one small batch per batch interval, so a backlog drains
+ * at no more than batch-size rows per interval instead of competing with live traffic. Batches follow a keyset
+ * cursor on (registered_at, id), so each one starts after the last row of the previous one instead of walking
+ * over the index entries of rows already deleted. A short batch ends the pass; the next one starts after
+ * users.sweeper.pass-interval.
+ * An account whose latest code is still valid, because it was resent near the deadline, is skipped until that
+ * code has expired too.
+ * Each batch is announced on user.exchange through the outbox, and leaves a tombstone per user in the change
+ * feed, in the transaction that deletes it.
+ */
+@Service
+public class UnverifiedUserSweeper {
+    private static final LocalDateTime START = LocalDateTime.of(1970, 1, 1, 0, 0);
+
+    private final UserRepository userRepository;
+    private final OutboxService outboxService;
+    private final UserChangeFeed userChangeFeed;
+    private final OtpStore otpStore;
+    private final TransactionTemplate transactionTemplate;
+    private final boolean enabled;
+    private final Duration grace;
+    private final int batchSize;
+    private final Duration passInterval;
+    private final Counter purged;
+    // Seconds the oldest account found by the last batch had been due for deletion
+    private final AtomicLong lagSeconds = new AtomicLong();
+
+    // Keyset cursor of the current pass; guarded by this
+    private LocalDateTime afterRegisteredAt = START;
+    private long afterId;
+    private long nextPassAt;
+
+    public UnverifiedUserSweeper(UserRepository userRepository,
+                                 OutboxService outboxService,
+                                 UserChangeFeed userChangeFeed,
+                                 OtpStore otpStore,
+                                 TransactionTemplate transactionTemplate,
+                                 MeterRegistry meterRegistry,
+                                 @Value("${users.sweeper.enabled:true}") boolean enabled,
+                                 @Value("${users.sweeper.grace:7d}") Duration grace,
+                                 @Value("${users.sweeper.batch-size:100}") int batchSize,
+                                 @Value("${users.sweeper.pass-interval:10m}") Duration passInterval) {
+        this.userRepository = userRepository;
+        this.outboxService = outboxService;
+        this.userChangeFeed = userChangeFeed;
+        this.otpStore = otpStore;
+        this.transactionTemplate = transactionTemplate;
+        this.enabled = enabled;
+        this.grace = grace;
+        this.batchSize = batchSize;
+        this.passInterval = passInterval;
+        this.purged = Counter.builder("users.sweeper.purged")
+                .description("Unverified accounts deleted after their verification window")
+                .register(meterRegistry);
+        TimeGauge.builder("users.sweeper.lag", lagSeconds, TimeUnit.SECONDS, AtomicLong::get)
+                .description("How long the oldest account in the last batch had been due for deletion; 0 once caught up")
+                .register(meterRegistry);
+    }
+
+    @Scheduled(fixedDelayString = "${users.sweeper.batch-interval-ms:1000}")
+    public void sweep() {
+        if (enabled && System.currentTimeMillis() >= nextPassAt) {
+            sweepBatch();
+        }
+    }
+
+    /**
+     * Deletes the next batch of the current pass and returns how many accounts it removed.
+     */
+    public synchronized int sweepBatch() {
+        LocalDateTime now = LocalDateTime.now();
+        LocalDateTime cutoff = now.minus(AuthService.VERIFY_CODE_TTL).minus(grace);
+        Batch batch = transactionTemplate.execute(status -> {
+            List<User> scanned = userRepository.findUnverifiedRegisteredBefore(
+                    cutoff, now, afterRegisteredAt, afterId, Limit.of(batchSize));
+            // otp_codes only has the codes written through; one issued here with write-through off is in memory
+            List<User> users = scanned.stream()
+                    .filter(user -> !otpStore.holdsLive(user.getEmail(), OtpPurpose.VERIFY))
+                    .toList();
+            if (!users.isEmpty()) {
+                // Entity deletes rather than a bulk statement: each is checked against its version and only
+                // that user leaves the second-level cache, where a bulk delete would empty the whole region
+                userRepository.deleteAll(users);
+                userChangeFeed.recordDeletions(users);
+                outboxService.enqueue(
+                        RabbitMQConfig.EXCHANGE,
+                        RabbitMQConfig.DELETION_BATCH_ROUTING_KEY,
+                        MessageEnvelopes.usersDeleted(users)
+                );
+            }
+            return new Batch(scanned, users);
+        });
+
+        List<User> deleted = batch.deleted();
+        if (deleted.isEmpty()) {
+            lagSeconds.set(0);
+        } else {
+            lagSeconds.set(Duration.between(deleted.getFirst().getRegisteredAt(), cutoff).toSeconds());
+            purged.increment(deleted.size());
+        }
+        // The cursor moves past skipped accounts too; the next pass looks at them again
+        if (!batch.scanned().isEmpty()) {
+            User last = batch.scanned().getLast();
+            afterRegisteredAt = last.getRegisteredAt();
+            afterId = last.getId();
+        }
+        if (batch.scanned().size() < batchSize) {
+            afterRegisteredAt = START;
+            afterId = 0;
+            nextPassAt = System.currentTimeMillis() + passInterval.toMillis();
+        }
+        return deleted.size();
+    }
+
+    private record Batch(List<User> scanned, List<User> deleted) {
+    }
+}
@@ -0,0 +1,61 @@
+package com.chatstack.authservice.services;
+
+import com.chatstack.authservice.config.RabbitMQConfig;
+import com.chatstack.authservice.config.ReadYourWrites;
+import com.chatstack.authservice.dto.UserChangedEvent;
+import com.chatstack.authservice.dto.UserDeletedBatchEvent;
+import com.chatstack.authservice.entities.User;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.Cache;
+import org.hibernate.SessionFactory;
+import org.springframework.amqp.rabbit.annotation.Exchange;
+import org.springframework.amqp.rabbit.annotation.Queue;
+import org.springframework.amqp.rabbit.annotation.QueueBinding;
+import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.stereotype.Component;
+
+/**
+ * Drops a changed user from this node's second-level cache and UserCredentialsCache when the change is
+ * announced. The node that made the change has already updated its own caches on commit; evicting there as
+ * well only costs one load.
+ * Batch imports announce only their last user, which is fine: new users cannot be stale anywhere.
+ * Deleted users are evicted too, together with every cached username: a username kept pointing at a deleted
+ * id would hide a new account registered under the same name until the entry expired.
+ */
+@Component
+public class UserCacheInvalidator {
+    private final Cache cache;
+    private final UserCredentialsCache credentials;
+    private final ReadYourWrites readYourWrites;
+
+    public UserCacheInvalidator(EntityManagerFactory entityManagerFactory, UserCredentialsCache credentials,
+                                ReadYourWrites readYourWrites) {
+        this.cache = entityManagerFactory.unwrap(SessionFactory.class).getCache();
+        this.credentials = credentials;
+        this.readYourWrites = readYourWrites;
+    }
+
+    @RabbitListener(bindings = @QueueBinding(
+            value = @Queue,
+            exchange = @Exchange(value = RabbitMQConfig.EXCHANGE, type = "topic"),
+            key = RabbitMQConfig.USER_CHANGED_ROUTING_KEY))
+    public void onChange(UserChangedEvent event) {
+        // The reload must not come from a replica that is still behind, or the old row is cached for the whole ttl
+        readYourWrites.recordCommittedWrite(event.id(), event.username(), event.email());
+        cache.evict(User.class, event.id());
+        credentials.evict(event.username());
+    }
+
+    // Hibernate can only drop the username entries by region, so a batch of deletions empties it once
+    @RabbitListener(bindings = @QueueBinding(
+            value = @Queue,
+            exchange = @Exchange(value = RabbitMQConfig.EXCHANGE, type = "topic"),
+            key = RabbitMQConfig.DELETION_BATCH_ROUTING_KEY))
+    public void onDeletion(UserDeletedBatchEvent event) {
+        event.users().forEach(user -> {
+            cache.evict(User.class, user.id());
+            credentials.evict(user.username());
+        });
+        cache.evictNaturalIdData(User.class);
+    }
+}
@@ -0,0 +1,226 @@
+package com.chatstack.authservice.services;
+
+import com.chatstack.authservice.config.RabbitMQConfig;
+import com.chatstack.authservice.config.ReadYourWrites;
+import com.chatstack.authservice.dto.UserChangeEntry;
+import com.chatstack.authservice.dto.UserChangePage;
+import com.chatstack.authservice.dto.UserChangedEvent;
+import com.chatstack.authservice.dto.UserDto;
+import com.chatstack.authservice.entities.User;
+import com.chatstack.authservice.entities.UserChange;
+import com.chatstack.authservice.repositories.UserChangeRepository;
+import org.springframework.amqp.rabbit.annotation.Exchange;
+import org.springframework.amqp.rabbit.annotation.Queue;
+import org.springframework.amqp.rabbit.annotation.QueueBinding;
+import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.web.context.request.async.DeferredResult;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Sequence-numbered feed of user changes, so other services can keep a replica instead of
+ * calling /batch on every listing. Each change is appended to user_changes in the transaction that
+ * made it and published on user.exchange (user.changed.key) through the outbox.
+ * Readers bootstrap from the snapshot, then tail with a cursor; entries are kept for the retention
+ * window, and a cursor older than that must bootstrap again.
+ * Appends take no lock: seq comes from the identity column at insert, so a transaction can commit seq N+1
+ * while N is still in flight. A read stops at such a gap until it settles, that is until the entry after it
+ * is user.changes.settle old, by when the transaction holding N has committed or rolled back.
+ */
+@Service
+public class UserChangeFeed {
+    private final UserChangeRepository userChangeRepository;
+    private final OutboxService outboxService;
+    private final ReadYourWrites readYourWrites;
+    private final Duration retention;
+    private final Duration settle;
+    private final Set<Waiter> waiters = ConcurrentHashMap.newKeySet();
+
+    public UserChangeFeed(UserChangeRepository userChangeRepository,
+                          OutboxService outboxService,
+                          ReadYourWrites readYourWrites,
+                          @Value("${user.changes.retention:7d}") Duration retention,
+                          @Value("${user.changes.settle:10s}") Duration settle) {
+        this.userChangeRepository = userChangeRepository;
+        this.outboxService = outboxService;
+        this.readYourWrites = readYourWrites;
+        this.retention = retention;
+        this.settle = settle;
+    }
+
+    /**
+     * Appends the user's current state. Must join the transaction that changed the user, after the
+     * change has been flushed, so the version in the feed is the committed one.
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void record(User user) {
+        UserChange change = userChangeRepository.save(new UserChange(user));
+        outboxService.enqueue(
+                RabbitMQConfig.EXCHANGE,
+                RabbitMQConfig.USER_CHANGED_ROUTING_KEY,
+                MessageEnvelopes.userChanged(change)
+        );
+    }
+
+    /**
+     * Appends a batch of users with one insert and announces it once; listeners only use the announcement
+     * to wake up and read the feed. Same transaction rules as record, the users must already be flushed.
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void recordAll(List<User> users) {
+        if (users.isEmpty()) {
+            return;
+        }
+        userChangeRepository.appendAll(users.stream().map(User::getId).toList(), LocalDateTime.now());
+        userChangeRepository.findFirstByOrderBySeqDesc().ifPresent(last -> outboxService.enqueue(
+                RabbitMQConfig.EXCHANGE,
+                RabbitMQConfig.USER_CHANGED_ROUTING_KEY,
+                MessageEnvelopes.userChanged(last)
+        ));
+    }
+
+    /**
+     * Appends a tombstone for each deleted user and announces the last one. Must join the deleting
+     * transaction, so a reader never sees a user go before the delete commits, or miss that it went.
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void recordDeletions(List<User> users) {
+        if (users.isEmpty()) {
+            return;
+        }
+        List<UserChange> tombstones = userChangeRepository.saveAll(users.stream().map(UserChange::tombstone).toList());
+        outboxService.enqueue(
+                RabbitMQConfig.EXCHANGE,
+                RabbitMQConfig.USER_CHANGED_ROUTING_KEY,
+                MessageEnvelopes.userChanged(tombstones.getLast())
+        );
+    }
+
+    public UserChangePage read(long after, int limit) {
+        Long oldest = userChangeRepository.findOldestSeq();
+        if (oldest != null && after < oldest - 1) {
+            throw new ChangeFeedCursorExpiredException(after, oldest);
+        }
+        return page(after, settled(after, userChangeRepository.findBySeqGreaterThanOrderBySeq(after, Limit.of(limit)), limit));
+    }
+
+    /**
+     * Long-poll: answers at once if there are changes after the cursor, otherwise when the next one
+     * is announced on user.exchange, or with an empty page after waitMs.
+     */
+    public DeferredResult<UserChangePage> poll(long after, int limit, long waitMs) {
+        UserChangePage page = read(after, limit);
+        if (!page.changes().isEmpty() || waitMs <= 0) {
+            DeferredResult<UserChangePage> result = new DeferredResult<>();
+            result.setResult(page);
+            return result;
+        }
+
+        DeferredResult<UserChangePage> result = new DeferredResult<>(waitMs, page);
+        Waiter waiter = new Waiter(after, limit, result);
+        waiters.add(waiter);
+        result.onCompletion(() -> waiters.remove(waiter));
+        // A change committed between the read and the registration would otherwise wait for the next one
+        wake(waiter);
+        return result;
+    }
+
+    /**
+     * A cursor to tail from after reading the users, as the snapshot does: every change up to it is
+     * committed, so none of them can be missing from what is read afterwards. Entries younger than the settle
+     * window may sit behind an in-flight one, so the cursor stays before them and they are replayed.
+     */
+    public long latestSeq() {
+        Long unsettled = userChangeRepository.findFirstSeqChangedAfter(LocalDateTime.now().minus(settle));
+        if (unsettled != null) {
+            return unsettled - 1;
+        }
+        Long latest = userChangeRepository.findLatestSeq();
+        return latest != null ? latest : 0;
+    }
+
+    // Every node gets every announcement through its own anonymous queue, including its own changes
+    @RabbitListener(bindings = @QueueBinding(
+            value = @Queue,
+            exchange = @Exchange(value = RabbitMQConfig.EXCHANGE, type = "topic"),
+            key = RabbitMQConfig.USER_CHANGED_ROUTING_KEY))
+    public void onChange(UserChangedEvent event) {
+        List<Waiter> pending = waiters.stream().filter(waiter -> !waiter.result.isSetOrExpired()).toList();
+        if (pending.isEmpty()) {
+            return;
+        }
+        // One read for every waiter: from the oldest cursor, long enough to give the newest one a full page.
+        // Waiters only register once they have caught up, so their cursors are close together. Retention
+        // always keeps the newest entry, so none of them can expire while waiting.
+        long from = pending.stream().mapToLong(Waiter::after).min().orElseThrow();
+        long to = pending.stream().mapToLong(Waiter::after).max().orElseThrow();
+        int limit = pending.stream().mapToInt(Waiter::limit).max().orElseThrow();
+        // The announcement means the change is committed on the primary; the replica may not have it yet
+        List<UserChange> changes = readYourWrites.onPrimary(() -> userChangeRepository.findBySeqGreaterThanOrderBySeq(
+                from, Limit.of((int) Math.min(Integer.MAX_VALUE, limit + to - from))));
+        for (Waiter waiter : pending) {
+            List<UserChange> after = changes.stream().filter(change -> change.getSeq() > waiter.after).toList();
+            List<UserChange> settled = settled(waiter.after, after, waiter.limit);
+            if (!settled.isEmpty()) {
+                waiter.result.setResult(page(waiter.after, settled));
+            }
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${user.changes.purge-interval-ms:3600000}")
+    public void purge() {
+        userChangeRepository.deleteOlderThan(LocalDateTime.now().minus(retention));
+    }
+
+    private void wake(Waiter waiter) {
+        if (waiter.result.isSetOrExpired()) {
+            return;
+        }
+        try {
+            // The announcement means the change is committed on the primary; the replica may not have it yet
+            UserChangePage page = readYourWrites.onPrimary(() -> read(waiter.after, waiter.limit));
+            if (!page.changes().isEmpty()) {
+                waiter.result.setResult(page);
+            }
+        } catch (ChangeFeedCursorExpiredException e) {
+            waiter.result.setErrorResult(e);
+        }
+    }
+
+    // The entries up to the first gap that has not settled yet, at most limit of them
+    private List<UserChange> settled(long after, List<UserChange> changes, int limit) {
+        LocalDateTime settledBefore = LocalDateTime.now().minus(settle);
+        long expected = after + 1;
+        int count = 0;
+        for (UserChange change : changes) {
+            if (count == limit || change.getSeq() != expected && change.getChangedAt().isAfter(settledBefore)) {
+                break;
+            }
+            expected = change.getSeq() + 1;
+            count++;
+        }
+        return changes.subList(0, count);
+    }
+
+    private static UserChangePage page(long after, List<UserChange> changes) {
+        long cursor = changes.isEmpty() ? after : changes.getLast().getSeq();
+        return new UserChangePage(cursor, changes.stream()
+                .map(change -> new UserChangeEntry(change.getSeq(), new UserDto(
+                        change.getUserId(), change.getUsername(), change.getEmail(), change.getEnabled(), change.getVersion()),
+                        change.isDeleted()))
+                .toList());
+    }
+
+    private record Waiter(long after, int limit, DeferredResult<UserChangePage> result) {
+    }
+}
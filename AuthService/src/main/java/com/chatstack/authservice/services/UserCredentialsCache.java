@@ -0,0 +1,58 @@
+package com.chatstack.authservice.services;
+
+import com.chatstack.authservice.dto.UserCredentials;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.function.Supplier;
+
+/**
+ * Login's credential projection by username, kept next to the second-level cache with the same size and
+ * ttl, so a repeated login costs no query and never loads a User entity. Only users that were found are kept.
+ * Entries are dropped when the user changes: on commit on the node that made the change, and on every node
+ * when it is announced (UserCacheInvalidator). The ttl bounds how long a lost announcement leaves one stale.
+ */
+@Component
+public class UserCredentialsCache {
+    private final Cache<String, UserCredentials> entries;
+
+    public UserCredentialsCache(@Value("${users.cache.max-size:100000}") long maxSize,
+                                @Value("${users.cache.ttl:10m}") Duration ttl) {
+        this.entries = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttl)
+                .build();
+    }
+
+    public Optional<UserCredentials> get(String username, Supplier<Optional<UserCredentials>> load) {
+        UserCredentials cached = entries.getIfPresent(username);
+        if (cached != null) {
+            return Optional.of(cached);
+        }
+        Optional<UserCredentials> loaded = load.get();
+        loaded.ifPresent(credentials -> entries.put(username, credentials));
+        return loaded;
+    }
+
+    /**
+     * Drops the username once the current transaction commits, or right away outside one.
+     */
+    public void evict(String username) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    entries.invalidate(username);
+                }
+            });
+        } else {
+            entries.invalidate(username);
+        }
+    }
+}
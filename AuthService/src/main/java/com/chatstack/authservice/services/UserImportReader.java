@@ -0,0 +1,195 @@
+package com.chatstack.authservice.services;
+
+import com.chatstack.authservice.dto.UserImportRow;
+import tools.jackson.core.JacksonException;
+import tools.jackson.databind.MappingIterator;
+import tools.jackson.databind.ObjectMapper;
+
+import java.io.BufferedReader;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.NoSuchElementException;
+
+/**
+ * Reads bulk import input one row at a time, so the request body is never held in memory.
+ * A CSV row with the wrong number of columns comes back as null and is rejected by the import;
+ * input that cannot be read past (broken JSON, an unterminated quote) fails with UserImportException.
+ */
+public final class UserImportReader {
+    private static final List<String> COLUMNS = List.of("username", "email", "password");
+
+    private UserImportReader() {
+    }
+
+    /**
+     * The input as the readers see it, failing with UserImportTooLargeException once more than maxBytes
+     * have been read; a body without a Content-Length is only caught here, part way through the import.
+     */
+    public static InputStream limit(InputStream in, long maxBytes) {
+        return new FilterInputStream(in) {
+            private long read;
+
+            @Override
+            public int read() throws IOException {
+                int b = super.read();
+                if (b >= 0) {
+                    count(1);
+                }
+                return b;
+            }
+
+            @Override
+            public int read(byte[] buffer, int offset, int length) throws IOException {
+                int n = super.read(buffer, offset, length);
+                if (n > 0) {
+                    count(n);
+                }
+                return n;
+            }
+
+            private void count(int n) {
+                read += n;
+                if (read > maxBytes) {
+                    throw new UserImportTooLargeException("Import input is limited to " + maxBytes + " bytes per request");
+                }
+            }
+        };
+    }
+
+    /**
+     * CSV with a header naming the username, email and password columns in any order.
+     * Fields may be quoted (RFC 4180), but a row cannot span lines.
+     */
+    public static Iterator<UserImportRow> csv(InputStream in) {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        String header = readLine(reader);
+        if (header == null) {
+            return List.<UserImportRow>of().iterator();
+        }
+        // A BOM from spreadsheet exports would otherwise stick to the first column name
+        List<String> columns = split(header.replace("\uFEFF", ""), "the CSV header");
+        int[] positions = positions(columns);
+        return new Iterator<>() {
+            private String next = nextDataLine(reader);
+            // Data rows from 1, as the import reports them
+            private long row;
+
+            @Override
+            public boolean hasNext() {
+                return next != null;
+            }
+
+            @Override
+            public UserImportRow next() {
+                if (next == null) {
+                    throw new NoSuchElementException();
+                }
+                List<String> fields = split(next, "CSV row " + ++row);
+                next = nextDataLine(reader);
+                if (fields.size() != columns.size()) {
+                    return null;
+                }
+                return new UserImportRow(fields.get(positions[0]), fields.get(positions[1]), fields.get(positions[2]));
+            }
+        };
+    }
+
+    /**
+     * A JSON array of {"username", "email", "password"} objects, or the objects one after another (NDJSON).
+     */
+    public static Iterator<UserImportRow> json(ObjectMapper objectMapper, InputStream in) {
+        MappingIterator<UserImportRow> rows;
+        try {
+            rows = objectMapper.readerFor(UserImportRow.class).readValues(in);
+        } catch (JacksonException e) {
+            throw new UserImportException("Malformed JSON import input", e);
+        }
+        return new Iterator<>() {
+            @Override
+            public boolean hasNext() {
+                try {
+                    return rows.hasNextValue();
+                } catch (JacksonException e) {
+                    throw new UserImportException("Malformed JSON import input", e);
+                }
+            }
+
+            @Override
+            public UserImportRow next() {
+                try {
+                    return rows.nextValue();
+                } catch (JacksonException e) {
+                    throw new UserImportException("Malformed JSON import input", e);
+                }
+            }
+        };
+    }
+
+    private static int[] positions(List<String> header) {
+        List<String> names = header.stream().map(name -> name.trim().toLowerCase(Locale.ROOT)).toList();
+        int[] positions = new int[COLUMNS.size()];
+        for (int i = 0; i < COLUMNS.size(); i++) {
+            positions[i] = names.indexOf(COLUMNS.get(i));
+            if (positions[i] < 0) {
+                throw new UserImportException("CSV header must name the columns " + String.join(",", COLUMNS));
+            }
+        }
+        return positions;
+    }
+
+    // Errors name the row and field only: the row itself carries a plaintext password
+    static List<String> split(String line, String where) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c != '"') {
+                    field.append(c);
+                } else if (i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else {
+                    quoted = false;
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        if (quoted) {
+            throw new UserImportException("Unterminated quote in " + where + ", field " + (fields.size() + 1));
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+
+    private static String nextDataLine(BufferedReader reader) {
+        String line;
+        do {
+            line = readLine(reader);
+        } while (line != null && line.isBlank());
+        return line;
+    }
+
+    private static String readLine(BufferedReader reader) {
+        try {
+            return reader.readLine();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
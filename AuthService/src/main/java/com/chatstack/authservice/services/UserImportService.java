@@ -0,0 +1,220 @@
+package com.chatstack.authservice.services;
+
+import com.chatstack.authservice.config.RabbitMQConfig;
+import com.chatstack.authservice.config.ReadYourWrites;
+import com.chatstack.authservice.dto.OtpEmailEvent;
+import com.chatstack.authservice.dto.UserImportResult;
+import com.chatstack.authservice.dto.UserImportRow;
+import com.chatstack.authservice.entities.OtpPurpose;
+import com.chatstack.authservice.entities.User;
+import com.chatstack.authservice.repositories.UserRepository;
+import com.chatstack.authservice.security.PasswordHasher;
+import io.micrometer.core.annotation.Timed;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.*;
+
+/**
+ * Bulk registration. Rows are taken in chunks: each chunk is validated and checked against existing users
+ * with one query per column, hashed on the BCrypt pool in parallel, inserted in JDBC batches in its own
+ * transaction, and announced with one registration and one OTP email event instead of two per user.
+ * A rejected row never fails the import; committed chunks stay committed, so re-running an input is safe.
+ * An input longer than users.import.max-rows fails at the first row past the limit.
+ */
+@Service
+public class UserImportService {
+    private static final int MAX_LISTED_REJECTIONS = 1000;
+
+    @Autowired
+    private UserRepository userRepository;
+    @Autowired
+    private PasswordHasher passwordHasher;
+    @Autowired
+    private OutboxService outboxService;
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+    @Autowired
+    private AvailabilityIndex availabilityIndex;
+    @Autowired
+    private OtpStore otpStore;
+    @Autowired
+    private UserChangeFeed userChangeFeed;
+    @Autowired
+    private ReadYourWrites readYourWrites;
+    @Autowired
+    private Validator validator;
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${users.import.chunk-size:500}")
+    private int chunkSize;
+    @Value("${users.import.max-rows:100000}")
+    private long maxRows;
+
+    @Timed(value = "auth.operation", extraTags = {"operation", "importUsers"}, histogram = true)
+    public UserImportResult importUsers(Iterator<UserImportRow> rows) {
+        Tally tally = new Tally();
+        List<Candidate> chunk = new ArrayList<>(chunkSize);
+        long rowNumber = 0;
+        while (rows.hasNext()) {
+            if (rowNumber == maxRows) {
+                throw new UserImportTooLargeException("Import is limited to " + maxRows + " rows per request");
+            }
+            UserImportRow row = rows.next();
+            rowNumber++;
+            if (row == null) {
+                tally.reject(rowNumber, "Malformed row");
+            } else {
+                chunk.add(new Candidate(rowNumber, toUser(row)));
+            }
+            if (chunk.size() == chunkSize) {
+                importChunk(chunk, tally);
+                chunk.clear();
+            }
+        }
+        if (!chunk.isEmpty()) {
+            importChunk(chunk, tally);
+        }
+        meterRegistry.counter("users.import.rows", "result", "imported").increment(tally.imported);
+        meterRegistry.counter("users.import.rows", "result", "rejected").increment(tally.rejected);
+        return tally.result();
+    }
+
+    private void importChunk(List<Candidate> chunk, Tally tally) {
+        List<Candidate> accepted = withoutExisting(valid(chunk, tally), tally);
+        if (accepted.isEmpty()) {
+            return;
+        }
+
+        // Hashed before the transaction, like a single registration, so no pooled connection waits on BCrypt
+        List<String> hashes = passwordHasher.encodeAll(accepted.stream().map(c -> c.user().getPassword()).toList());
+        for (int i = 0; i < accepted.size(); i++) {
+            User user = accepted.get(i).user();
+            user.setPassword(hashes.get(i));
+            availabilityIndex.record(user.getUsername(), user.getEmail());
+        }
+
+        List<User> users;
+        try {
+            users = insertAndPublish(accepted);
+        } catch (DataIntegrityViolationException e) {
+            // A concurrent registration took a name after the check; drop the rows that lost and retry once
+            accepted.forEach(c -> {
+                c.user().setId(null);
+                c.user().setVersion(null);
+            });
+            accepted = withoutExisting(accepted, tally);
+            users = accepted.isEmpty() ? List.of() : insertAndPublish(accepted);
+        }
+        tally.imported += users.size();
+    }
+
+    private List<User> insertAndPublish(List<Candidate> candidates) {
+        List<User> users = candidates.stream().map(Candidate::user).toList();
+        return transactionTemplate.execute(status -> {
+            List<User> saved = userRepository.saveAllAndFlush(users);
+            userChangeFeed.recordAll(saved);
+
+            List<OtpEmailEvent.Data> emails = new ArrayList<>(saved.size());
+            for (User user : saved) {
+                readYourWrites.recordWrite(user);
+                emails.add(new OtpEmailEvent.Data(user.getEmail(), otpStore.issue(user.getEmail(), OtpPurpose.VERIFY, AuthService.VERIFY_CODE_TTL)));
+            }
+
+            outboxService.enqueue(
+                    RabbitMQConfig.EXCHANGE,
+                    RabbitMQConfig.REGISTRATION_BATCH_ROUTING_KEY,
+                    MessageEnvelopes.userRegisteredBatch(saved)
+            );
+            outboxService.enqueue(
+                    RabbitMQConfig.Email_EXCHANGE,
+                    RabbitMQConfig.Email_ROUTING_KEY,
+                    MessageEnvelopes.otpEmailBatch("VERIFY", emails)
+            );
+            return saved;
+        });
+    }
+
+    private List<Candidate> valid(List<Candidate> chunk, Tally tally) {
+        List<Candidate> valid = new ArrayList<>(chunk.size());
+        Set<String> usernames = new HashSet<>();
+        Set<String> emails = new HashSet<>();
+        for (Candidate candidate : chunk) {
+            User user = candidate.user();
+            Optional<String> violation = validator.validate(user).stream()
+                    .map(ConstraintViolation::getMessage)
+                    .sorted()
+                    .findFirst();
+            if (violation.isPresent()) {
+                tally.reject(candidate.row(), violation.get());
+            } else if (!usernames.add(user.getUsername())) {
+                tally.reject(candidate.row(), "Duplicate username in input");
+            } else if (!emails.add(user.getEmail())) {
+                tally.reject(candidate.row(), "Duplicate email in input");
+            } else {
+                valid.add(candidate);
+            }
+        }
+        return valid;
+    }
+
+    // Read on the primary: earlier chunks of this import may not have reached a replica yet
+    private List<Candidate> withoutExisting(List<Candidate> candidates, Tally tally) {
+        if (candidates.isEmpty()) {
+            return candidates;
+        }
+        Set<String> takenUsernames = new HashSet<>(readYourWrites.onPrimary(() -> userRepository.findExistingUsernames(
+                candidates.stream().map(c -> c.user().getUsername()).toList())));
+        Set<String> takenEmails = new HashSet<>(readYourWrites.onPrimary(() -> userRepository.findExistingEmails(
+                candidates.stream().map(c -> c.user().getEmail()).toList())));
+
+        List<Candidate> remaining = new ArrayList<>(candidates.size());
+        for (Candidate candidate : candidates) {
+            if (takenUsernames.contains(candidate.user().getUsername())) {
+                tally.reject(candidate.row(), "Username already exists");
+            } else if (takenEmails.contains(candidate.user().getEmail())) {
+                tally.reject(candidate.row(), "Email already exists");
+            } else {
+                remaining.add(candidate);
+            }
+        }
+        return remaining;
+    }
+
+    private static User toUser(UserImportRow row) {
+        User user = new User();
+        user.setUsername(row.username());
+        user.setEmail(row.email());
+        user.setPassword(row.password());
+        user.setEnabled(false);
+        return user;
+    }
+
+    private record Candidate(long row, User user) {
+    }
+
+    private static class Tally {
+        private final List<UserImportResult.Rejection> rejections = new ArrayList<>();
+        private long imported;
+        private long rejected;
+
+        void reject(long row, String reason) {
+            rejected++;
+            if (rejections.size() < MAX_LISTED_REJECTIONS) {
+                rejections.add(new UserImportResult.Rejection(row, reason));
+            }
+        }
+
+        UserImportResult result() {
+            rejections.sort(Comparator.comparingLong(UserImportResult.Rejection::row));
+            return new UserImportResult(imported, rejected, rejections);
+        }
+    }
+}
@@ -0,0 +1,7 @@
+package com.chatstack.authservice.services;
+
+public class UserImportTooLargeException extends UserImportException {
+    public UserImportTooLargeException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,226 @@
+package com.chatstack.authservice.services;
+
+import com.chatstack.authservice.config.RabbitMQConfig;
+import com.chatstack.authservice.config.ReadYourWrites;
+import com.chatstack.authservice.dto.UserChangeEntry;
+import com.chatstack.authservice.dto.UserChangePage;
+import com.chatstack.authservice.dto.UserChangedEvent;
+import com.chatstack.authservice.dto.UserProfile;
+import com.chatstack.authservice.repositories.UserRepository;
+import com.chatstack.authservice.util.UsernameIndex;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.rabbit.annotation.Exchange;
+import org.springframework.amqp.rabbit.annotation.Queue;
+import org.springframework.amqp.rabbit.annotation.QueueBinding;
+import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Limit;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.stream.Stream;
+
+/**
+ * Username search for mention autocomplete, answered from memory. Verified users live in a compact
+ * UsernameIndex built at startup; users verified since then are kept in a small sorted map and folded
+ * into a rebuilt index once there are merge-threshold of them. The index follows the user change feed
+ * from a cursor taken before the startup scan, so every node sees every verification, batch imports included.
+ * A deleted user leaves the recent map at once; one already in the index is hidden from results until the
+ * next rebuild drops it. Until the scan has finished, prefix searches go to the database.
+ */
+@Service
+public class UserSearchIndex {
+    private static final Logger log = LoggerFactory.getLogger(UserSearchIndex.class);
+    private static final int CATCH_UP_PAGE = 1000;
+    private static final double MIN_FUZZY_SIMILARITY = 0.5;
+    private static final int MIN_FUZZY_QUERY = 3;
+
+    private final UserRepository userRepository;
+    private final UserChangeFeed userChangeFeed;
+    private final ReadYourWrites readYourWrites;
+    private final TransactionTemplate readOnlyTransaction;
+    private final int mergeThreshold;
+    // Keyed by folded username, then id, so a prefix is a contiguous sub-map in the index's order
+    private final ConcurrentSkipListMap<String, UserProfile> recent = new ConcurrentSkipListMap<>();
+    // Verified users deleted since the index was built, which it still holds
+    private final Set<Long> removed = ConcurrentHashMap.newKeySet();
+    private volatile UsernameIndex index = UsernameIndex.empty();
+    private volatile boolean ready;
+    // Feed position applied so far; guarded by this
+    private long cursor;
+
+    public UserSearchIndex(UserRepository userRepository,
+                           UserChangeFeed userChangeFeed,
+                           ReadYourWrites readYourWrites,
+                           PlatformTransactionManager transactionManager,
+                           MeterRegistry meterRegistry,
+                           @Value("${users.search.merge-threshold:10000}") int mergeThreshold) {
+        this.userRepository = userRepository;
+        this.userChangeFeed = userChangeFeed;
+        this.readYourWrites = readYourWrites;
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+        this.mergeThreshold = mergeThreshold;
+
+        Gauge.builder("users.search.index.entries", this, search -> search.index.size() + search.recent.size())
+                .description("Verified users in the username search index")
+                .register(meterRegistry);
+        Gauge.builder("users.search.index.bytes", this, search -> search.index.memoryBytes())
+                .description("Size of the compact username index arrays")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public synchronized void build() {
+        long start = System.currentTimeMillis();
+        // Scanned on the primary: the cursor must not be ahead of the rows the scan sees
+        UsernameIndex built = readYourWrites.onPrimary(() -> readOnlyTransaction.execute(status -> {
+            cursor = userChangeFeed.latestSeq();
+            UsernameIndex.Builder builder = UsernameIndex.builder();
+            try (Stream<UserProfile> users = userRepository.streamVerifiedProfiles()) {
+                users.forEach(user -> builder.add(user.id(), user.username()));
+            }
+            return builder.build();
+        }));
+        index = built;
+        recent.clear();
+        removed.clear();
+        ready = true;
+        log.info("User search index built from {} users ({} KiB) in {} ms",
+                built.size(), built.memoryBytes() / 1024, System.currentTimeMillis() - start);
+        catchUp();
+    }
+
+    /**
+     * Verified users whose name starts with the query, ignoring ASCII case, in alphabetical order. When fewer
+     * than limit match and fuzzy is set, the rest is filled with names sharing most of the query's trigrams.
+     */
+    public List<UserProfile> search(String query, int limit, boolean fuzzy) {
+        if (!ready) {
+            return userRepository.findVerifiedProfilesByUsernameLike(likePrefix(query), Limit.of(limit));
+        }
+        UsernameIndex current = index;
+        String folded = UsernameIndex.fold(query);
+
+        List<UserProfile> prefixed = new ArrayList<>();
+        current.prefix(query, limit + removed.size()).forEach(match -> prefixed.add(new UserProfile(match.id(), match.username())));
+        recent.subMap(folded, folded + Character.MAX_VALUE).values().stream().limit(limit).forEach(prefixed::add);
+        prefixed.sort(Comparator.comparing((UserProfile user) -> UsernameIndex.fold(user.username())));
+
+        // A user can briefly be in both the index and the recent map, while a merge swaps them
+        Map<Long, UserProfile> results = new LinkedHashMap<>();
+        for (UserProfile user : prefixed) {
+            if (results.size() == limit) {
+                break;
+            }
+            if (!removed.contains(user.id())) {
+                results.putIfAbsent(user.id(), user);
+            }
+        }
+        if (fuzzy && results.size() < limit && query.length() >= MIN_FUZZY_QUERY) {
+            fuzzyMatches(current, query, limit).forEach(match -> {
+                if (results.size() < limit && !removed.contains(match.id())) {
+                    results.putIfAbsent(match.id(), new UserProfile(match.id(), match.username()));
+                }
+            });
+        }
+        return new ArrayList<>(results.values());
+    }
+
+    private List<UsernameIndex.Match> fuzzyMatches(UsernameIndex current, String query, int limit) {
+        List<UsernameIndex.Match> matches = new ArrayList<>(current.fuzzy(query, limit + removed.size(), MIN_FUZZY_SIMILARITY));
+        // The recent map is bounded by the merge threshold, so scoring it directly stays cheap
+        for (UserProfile user : recent.values()) {
+            double similarity = UsernameIndex.similarity(query, user.username());
+            if (similarity >= MIN_FUZZY_SIMILARITY) {
+                matches.add(new UsernameIndex.Match(user.id(), user.username(), similarity));
+            }
+        }
+        matches.sort(Comparator.comparingDouble(UsernameIndex.Match::similarity).reversed()
+                .thenComparingInt(match -> match.username().length()));
+        return matches;
+    }
+
+    // Every node gets every announcement; a batch import announces only its last change, so read the feed itself
+    @RabbitListener(bindings = @QueueBinding(
+            value = @Queue,
+            exchange = @Exchange(value = RabbitMQConfig.EXCHANGE, type = "topic"),
+            key = RabbitMQConfig.USER_CHANGED_ROUTING_KEY))
+    public void onChange(UserChangedEvent event) {
+        catchUp();
+    }
+
+    /**
+     * Also catches up, in case an announcement was lost, then rebuilds the index with the recent users
+     * once there are enough of them, or without the deleted ones as soon as there are any.
+     */
+    @Scheduled(fixedDelayString = "${users.search.merge-interval-ms:60000}")
+    public synchronized void merge() {
+        if (!ready) {
+            return;
+        }
+        catchUp();
+        if (recent.size() < mergeThreshold && removed.isEmpty()) {
+            return;
+        }
+        Map<String, UserProfile> merged = new HashMap<>(recent);
+        Set<Long> dropped = new HashSet<>(removed);
+        UsernameIndex.Builder builder = UsernameIndex.builder().addAll(index);
+        merged.values().forEach(user -> builder.add(user.id(), user.username()));
+        index = builder.removeAll(dropped).build();
+        merged.forEach(recent::remove);
+        removed.removeAll(dropped);
+    }
+
+    private synchronized void catchUp() {
+        if (!ready) {
+            return;
+        }
+        try {
+            UserChangePage page;
+            do {
+                long after = cursor;
+                // The announcement means the change is committed on the primary; the replica may not have it yet
+                page = readYourWrites.onPrimary(() -> userChangeFeed.read(after, CATCH_UP_PAGE));
+                for (UserChangeEntry entry : page.changes()) {
+                    UserProfile user = new UserProfile(entry.user().getId(), entry.user().getUsername());
+                    if (entry.deleted()) {
+                        recent.remove(key(user));
+                        // Only verified users are ever indexed
+                        if (Boolean.TRUE.equals(entry.user().getEnabled())) {
+                            removed.add(user.id());
+                        }
+                    } else if (Boolean.TRUE.equals(entry.user().getEnabled())) {
+                        recent.put(key(user), user);
+                    }
+                }
+                cursor = page.cursor();
+            } while (page.changes().size() == CATCH_UP_PAGE);
+        } catch (ChangeFeedCursorExpiredException e) {
+            log.warn("User search index fell behind the change feed retention, rebuilding");
+            build();
+        }
+    }
+
+    private static String key(UserProfile user) {
+        return UsernameIndex.fold(user.username()) + '\0' + user.id();
+    }
+
+    private static String likePrefix(String query) {
+        return query.toLowerCase(Locale.ROOT)
+                .replace("\\", "\\\\")
+                .replace("%", "\\%")
+                .replace("_", "\\_") + "%";
+    }
+}
@@ -0,0 +1,113 @@
+package com.chatstack.authservice.util;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * Hierarchical timing wheel: scheduling is O(1) and each tick only touches the slot that is due.
+ * Three levels of 64 slots cover 64^3 ticks; timers further out park in the top level and are re-placed
+ * as it turns. A timer fires on the first advance at or after its deadline, at most one tick late.
+ * There is no cancel; owners ignore a stale firing instead (see OtpStore).
+ */
+public class TimerWheel<T> {
+    private static final int SLOT_BITS = 6;
+    private static final int SLOTS = 1 << SLOT_BITS;
+    private static final int MASK = SLOTS - 1;
+    private static final int LEVELS = 3;
+
+    private final long tickMillis;
+    private final ArrayDeque<Timer<T>>[][] wheels;
+    private final ReentrantLock lock = new ReentrantLock();
+    private long currentTick;
+    private int size;
+
+    @SuppressWarnings("unchecked")
+    public TimerWheel(long tickMillis, long startMillis) {
+        if (tickMillis <= 0) {
+            throw new IllegalArgumentException("tickMillis must be positive");
+        }
+        this.tickMillis = tickMillis;
+        this.currentTick = startMillis / tickMillis;
+        this.wheels = new ArrayDeque[LEVELS][SLOTS];
+        for (int level = 0; level < LEVELS; level++) {
+            for (int slot = 0; slot < SLOTS; slot++) {
+                wheels[level][slot] = new ArrayDeque<>();
+            }
+        }
+    }
+
+    public void schedule(T item, long deadlineMillis) {
+        // Rounded up, so nothing fires before its deadline
+        long deadlineTick = Math.floorDiv(deadlineMillis + tickMillis - 1, tickMillis);
+        lock.lock();
+        try {
+            place(new Timer<>(item, Math.max(deadlineTick, currentTick + 1)));
+            size++;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Turns the wheel up to nowMillis and hands every timer that came due to the callback,
+     * outside the lock so the callback may schedule again.
+     */
+    public int advance(long nowMillis, Consumer<T> onExpired) {
+        long targetTick = nowMillis / tickMillis;
+        List<T> expired = new ArrayList<>();
+        lock.lock();
+        try {
+            while (currentTick < targetTick) {
+                currentTick++;
+                cascade();
+                ArrayDeque<Timer<T>> due = wheels[0][(int) (currentTick & MASK)];
+                for (Timer<T> timer; (timer = due.poll()) != null; ) {
+                    expired.add(timer.item);
+                }
+            }
+            size -= expired.size();
+        } finally {
+            lock.unlock();
+        }
+        expired.forEach(onExpired);
+        return expired.size();
+    }
+
+    public int size() {
+        lock.lock();
+        try {
+            return size;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // When a level wraps, the next level's current slot is pulled down; higher levels only when lower ones wrap too
+    private void cascade() {
+        for (int level = 1; level < LEVELS; level++) {
+            if ((currentTick & ((1L << (SLOT_BITS * level)) - 1)) != 0) {
+                return;
+            }
+            ArrayDeque<Timer<T>> slot = wheels[level][(int) ((currentTick >>> (SLOT_BITS * level)) & MASK)];
+            int pending = slot.size();
+            for (int i = 0; i < pending; i++) {
+                place(slot.poll());
+            }
+        }
+    }
+
+    private void place(Timer<T> timer) {
+        long delta = timer.deadlineTick - currentTick;
+        int level = 0;
+        while (level < LEVELS - 1 && delta >= 1L << (SLOT_BITS * (level + 1))) {
+            level++;
+        }
+        wheels[level][(int) ((timer.deadlineTick >>> (SLOT_BITS * level)) & MASK)].add(timer);
+    }
+
+    private record Timer<T>(T item, long deadlineTick) {
+    }
+}
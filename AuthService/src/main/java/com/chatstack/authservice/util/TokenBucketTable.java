@@ -0,0 +1,106 @@
+package com.chatstack.authservice.util;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Fixed-size table of token buckets, updated with CAS only.
+ * Each bucket is one long, its theoretical arrival time (GCRA): taking a token pushes it forward by the
+ * refill interval, and a request is refused while it would run more than burst intervals ahead of now.
+ * A key hashes to a stripe of 8 slots. A bucket whose arrival time has passed is full again and carries no
+ * state, so it is reused for another key as is; that is the idle eviction, and memory never grows.
+ * Only when all 8 slots are busy does a key take over the bucket that is closest to full, debt included.
+ */
+public class TokenBucketTable {
+    private static final int WAYS = 8;
+    private static final int CLAIM_ATTEMPTS = 4;
+
+    private final AtomicLongArray keys;
+    private final AtomicLongArray arrivals;
+    private final int stripeMask;
+    private final LongSupplier clock;
+    private final long origin;
+    private final LongAdder busyEvictions = new LongAdder();
+
+    public TokenBucketTable(int buckets) {
+        this(buckets, System::nanoTime);
+    }
+
+    public TokenBucketTable(int buckets, LongSupplier nanoClock) {
+        int stripes = 1;
+        while (stripes * WAYS < buckets) {
+            stripes <<= 1;
+        }
+        this.keys = new AtomicLongArray(stripes * WAYS);
+        this.arrivals = new AtomicLongArray(stripes * WAYS);
+        this.stripeMask = stripes - 1;
+        this.clock = nanoClock;
+        // Times are kept relative to construction, so an empty slot (0) always reads as full
+        this.origin = nanoClock.getAsLong() - 1;
+    }
+
+    /**
+     * Takes one token from the key's bucket.
+     *
+     * @return 0 if the token was granted, otherwise nanoseconds until one will be
+     */
+    public long tryAcquire(String key, long refillIntervalNanos, int burst) {
+        long now = clock.getAsLong() - origin;
+        int slot = slotFor(fingerprint(key), now);
+        long limit = refillIntervalNanos * burst;
+        while (true) {
+            long arrival = arrivals.get(slot);
+            long next = Math.max(arrival, now) + refillIntervalNanos;
+            long wait = next - now - limit;
+            if (wait > 0) {
+                return wait;
+            }
+            if (arrivals.compareAndSet(slot, arrival, next)) {
+                return 0;
+            }
+        }
+    }
+
+    public int capacity() {
+        return keys.length();
+    }
+
+    // Keys that had to displace a bucket that was still refilling; if this keeps growing, the table is too small
+    public long busyEvictions() {
+        return busyEvictions.sum();
+    }
+
+    private int slotFor(long fingerprint, long now) {
+        int base = (int) (fingerprint & stripeMask) * WAYS;
+        for (int attempt = 0; ; attempt++) {
+            int victim = -1;
+            long victimKey = 0;
+            long victimArrival = Long.MAX_VALUE;
+            for (int i = base; i < base + WAYS; i++) {
+                long key = keys.get(i);
+                if (key == fingerprint) {
+                    return i;
+                }
+                long arrival = arrivals.get(i);
+                if (arrival < victimArrival) {
+                    victim = i;
+                    victimKey = key;
+                    victimArrival = arrival;
+                }
+            }
+            boolean busy = victimArrival > now;
+            if (keys.compareAndSet(victim, victimKey, fingerprint) || attempt == CLAIM_ATTEMPTS) {
+                if (busy) {
+                    busyEvictions.increment();
+                }
+                return victim;
+            }
+        }
+    }
+
+    private static long fingerprint(String key) {
+        long hash = BloomFilter.hash(key);
+        return hash == 0 ? 1 : hash;
+    }
+}
@@ -0,0 +1,444 @@
+package com.chatstack.authservice.util;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Immutable, compact search index over usernames. The names are packed into one UTF-8 array in
+ * case-folded order, so a prefix lookup is a binary search followed by a contiguous scan. Trigram
+ * posting lists, stored as varint-coded gaps, back a fuzzy fallback for names with a typo.
+ * Case folding covers ASCII letters only; other bytes compare as they are.
+ * No per-entry objects are kept, so a million names take a few tens of megabytes.
+ */
+public final class UsernameIndex {
+    private static final int PAD = ' ';
+    // Posting bytes (about one per candidate) a fuzzy query may walk; a vaguer query gets no fuzzy matches
+    private static final int MAX_FUZZY_POSTING_BYTES = 16 * 1024;
+    private static final UsernameIndex EMPTY = new Builder().build();
+
+    private final byte[] names;
+    private final int[] offsets;
+    private final long[] ids;
+    // Sorted trigram keys; postings for grams[i] are postings[postingOffsets[i] .. postingOffsets[i + 1])
+    private final int[] grams;
+    private final int[] postingOffsets;
+    private final byte[] postings;
+
+    private UsernameIndex(byte[] names, int[] offsets, long[] ids, int[] grams, int[] postingOffsets, byte[] postings) {
+        this.names = names;
+        this.offsets = offsets;
+        this.ids = ids;
+        this.grams = grams;
+        this.postingOffsets = postingOffsets;
+        this.postings = postings;
+    }
+
+    public record Match(long id, String username, double similarity) {
+    }
+
+    public static UsernameIndex empty() {
+        return EMPTY;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public int size() {
+        return ids.length;
+    }
+
+    // Sum of the backing arrays, without object headers
+    public long memoryBytes() {
+        return names.length + 4L * offsets.length + 8L * ids.length
+                + 4L * grams.length + 4L * postingOffsets.length + postings.length;
+    }
+
+    /**
+     * Up to limit names starting with the prefix, ignoring ASCII case, in folded alphabetical order
+     * (an exact match comes first).
+     */
+    public List<Match> prefix(String prefix, int limit) {
+        byte[] query = prefix.getBytes(StandardCharsets.UTF_8);
+        List<Match> matches = new ArrayList<>(Math.min(limit, 16));
+        for (int i = lowerBound(query); i < ids.length && matches.size() < limit && startsWith(i, query); i++) {
+            matches.add(match(i, 1.0));
+        }
+        return matches;
+    }
+
+    /**
+     * Up to limit names sharing at least minSimilarity of the query's trigrams, best first; among equal
+     * scores shorter names win. The query is treated as the start of a name, so its end is not padded.
+     * Empty when even the query's rarest trigrams are too common to narrow the candidates down.
+     */
+    public List<Match> fuzzy(String query, int limit, double minSimilarity) {
+        int[] queryGrams = grams(fold(query.getBytes(StandardCharsets.UTF_8)), false);
+        if (queryGrams.length == 0 || queryGrams.length > Long.SIZE || limit <= 0) {
+            return List.of();
+        }
+        int minShared = Math.max(1, (int) Math.ceil(minSimilarity * queryGrams.length));
+
+        List<Integer> slots = new ArrayList<>(queryGrams.length);
+        for (int gram : queryGrams) {
+            int slot = Arrays.binarySearch(grams, gram);
+            if (slot >= 0) {
+                slots.add(slot);
+            }
+        }
+        if (slots.size() < minShared) {
+            return List.of();
+        }
+        // A name sharing minShared grams has at least one of any (present - minShared + 1) of them,
+        // so only the rarest lists are walked for candidates and each candidate is scored on its own bytes
+        slots.sort(Comparator.comparingInt(slot -> postingOffsets[slot + 1] - postingOffsets[slot]));
+        List<Integer> rarest = slots.subList(0, slots.size() - minShared + 1);
+        if (rarest.stream().mapToInt(slot -> postingOffsets[slot + 1] - postingOffsets[slot]).sum() > MAX_FUZZY_POSTING_BYTES) {
+            return List.of();
+        }
+        PostingCursor[] cursors = new PostingCursor[rarest.size()];
+        for (int i = 0; i < cursors.length; i++) {
+            int slot = rarest.get(i);
+            cursors[i] = new PostingCursor(postingOffsets[slot], postingOffsets[slot + 1]);
+            cursors[i].advance();
+        }
+        GramSet querySet = new GramSet(queryGrams);
+
+        long[] best = new long[limit];
+        int found = 0;
+        int worst = 0;
+        // Few lists are walked, so the smallest ordinal is found by a scan rather than a heap
+        while (true) {
+            int ordinal = Integer.MAX_VALUE;
+            for (PostingCursor cursor : cursors) {
+                ordinal = Math.min(ordinal, cursor.ordinal);
+            }
+            if (ordinal == Integer.MAX_VALUE) {
+                break;
+            }
+            for (PostingCursor cursor : cursors) {
+                if (cursor.ordinal == ordinal) {
+                    cursor.advance();
+                }
+            }
+            int shared = sharedGrams(ordinal, querySet);
+            if (shared < minShared) {
+                continue;
+            }
+            long rank = rank(shared, length(ordinal), ordinal);
+            if (found < limit) {
+                best[found++] = rank;
+            } else if (rank > best[worst]) {
+                best[worst] = rank;
+            } else {
+                continue;
+            }
+            if (found == limit) {
+                for (int i = 0; i < limit; i++) {
+                    worst = best[i] < best[worst] ? i : worst;
+                }
+            }
+        }
+
+        long[] ranked = Arrays.copyOf(best, found);
+        Arrays.sort(ranked);
+        List<Match> matches = new ArrayList<>(found);
+        for (int i = found - 1; i >= 0; i--) {
+            int shared = (int) (ranked[i] >>> 40);
+            matches.add(match(Integer.MAX_VALUE - (int) (ranked[i] & Integer.MAX_VALUE), (double) shared / queryGrams.length));
+        }
+        return matches;
+    }
+
+    // Orders candidates as one number: more shared grams, then a shorter name, then the earlier name
+    private static long rank(int shared, int length, int ordinal) {
+        return ((long) shared << 40) | ((long) (255 - Math.min(length, 255)) << 31) | (Integer.MAX_VALUE - ordinal);
+    }
+
+    private int sharedGrams(int ordinal, GramSet queryGrams) {
+        int from = offsets[ordinal];
+        int length = length(ordinal);
+        long found = 0;
+        int gram = (PAD << 8) | PAD;
+        for (int i = 0; i <= length; i++) {
+            gram = ((gram << 8) | (i < length ? fold(names[from + i]) : PAD)) & 0xFFFFFF;
+            found |= queryGrams.bit(gram);
+        }
+        return Long.bitCount(found);
+    }
+
+    /**
+     * The share of the query's trigrams found in the name, as fuzzy scores it; for names kept outside an index.
+     */
+    public static double similarity(String query, String username) {
+        int[] queryGrams = grams(fold(query.getBytes(StandardCharsets.UTF_8)), false);
+        if (queryGrams.length == 0) {
+            return 0;
+        }
+        int[] nameGrams = grams(fold(username.getBytes(StandardCharsets.UTF_8)), true);
+        int shared = 0;
+        for (int gram : queryGrams) {
+            if (Arrays.binarySearch(nameGrams, gram) >= 0) {
+                shared++;
+            }
+        }
+        return (double) shared / queryGrams.length;
+    }
+
+    // The key the index orders by, for callers that merge their own entries with its results
+    public static String fold(String username) {
+        StringBuilder folded = null;
+        for (int i = 0; i < username.length(); i++) {
+            char c = username.charAt(i);
+            if (c >= 'A' && c <= 'Z') {
+                if (folded == null) {
+                    folded = new StringBuilder(username);
+                }
+                folded.setCharAt(i, (char) (c + 32));
+            }
+        }
+        return folded != null ? folded.toString() : username;
+    }
+
+    private Match match(int ordinal, double similarity) {
+        return new Match(ids[ordinal],
+                new String(names, offsets[ordinal], length(ordinal), StandardCharsets.UTF_8), similarity);
+    }
+
+    private int length(int ordinal) {
+        return offsets[ordinal + 1] - offsets[ordinal];
+    }
+
+    private int lowerBound(byte[] query) {
+        int low = 0;
+        int high = ids.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (compare(names, offsets[mid], offsets[mid + 1], query, 0, query.length) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private boolean startsWith(int ordinal, byte[] query) {
+        if (length(ordinal) < query.length) {
+            return false;
+        }
+        int from = offsets[ordinal];
+        for (int i = 0; i < query.length; i++) {
+            if (fold(names[from + i]) != fold(query[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int compare(byte[] a, int aFrom, int aTo, byte[] b, int bFrom, int bTo) {
+        int length = Math.min(aTo - aFrom, bTo - bFrom);
+        for (int i = 0; i < length; i++) {
+            int x = fold(a[aFrom + i]);
+            int y = fold(b[bFrom + i]);
+            if (x != y) {
+                return x - y;
+            }
+        }
+        return (aTo - aFrom) - (bTo - bFrom);
+    }
+
+    private static int fold(byte b) {
+        int c = b & 0xFF;
+        return c >= 'A' && c <= 'Z' ? c + 32 : c;
+    }
+
+    private static byte[] fold(byte[] bytes) {
+        byte[] folded = new byte[bytes.length];
+        for (int i = 0; i < bytes.length; i++) {
+            folded[i] = (byte) fold(bytes[i]);
+        }
+        return folded;
+    }
+
+    /**
+     * Distinct, sorted trigrams of the folded bytes, padded with two spaces in front (so the first letters
+     * weigh more) and, for stored names, one behind.
+     */
+    private static int[] grams(byte[] folded, boolean padEnd) {
+        if (folded.length == 0) {
+            return new int[0];
+        }
+        int padded = folded.length + 2 + (padEnd ? 1 : 0);
+        int[] grams = new int[padded - 2];
+        for (int i = 0; i < grams.length; i++) {
+            grams[i] = (at(folded, i - 2) << 16) | (at(folded, i - 1) << 8) | at(folded, i);
+        }
+        return Arrays.stream(grams).sorted().distinct().toArray();
+    }
+
+    private static int at(byte[] folded, int index) {
+        return index < 0 || index >= folded.length ? PAD : folded[index] & 0xFF;
+    }
+
+    // Open-addressed set of at most 64 trigrams, answering with a distinct bit per member
+    private static final class GramSet {
+        private final int[] keys;
+        private final long[] bits;
+        private final int shift;
+
+        GramSet(int[] grams) {
+            int capacity = Integer.highestOneBit(grams.length * 4 - 1) << 1;
+            keys = new int[capacity];
+            bits = new long[capacity];
+            shift = 32 - Integer.numberOfTrailingZeros(capacity);
+            Arrays.fill(keys, -1);
+            for (int i = 0; i < grams.length; i++) {
+                int slot = slot(grams[i]);
+                while (keys[slot] != -1) {
+                    slot = (slot + 1) & (keys.length - 1);
+                }
+                keys[slot] = grams[i];
+                bits[slot] = 1L << i;
+            }
+        }
+
+        long bit(int gram) {
+            for (int slot = slot(gram); keys[slot] != -1; slot = (slot + 1) & (keys.length - 1)) {
+                if (keys[slot] == gram) {
+                    return bits[slot];
+                }
+            }
+            return 0;
+        }
+
+        private int slot(int gram) {
+            return (gram * 0x9E3779B1) >>> shift;
+        }
+    }
+
+    private final class PostingCursor {
+        private int position;
+        private final int end;
+        // MAX_VALUE once the list is exhausted
+        private int ordinal = -1;
+
+        PostingCursor(int position, int end) {
+            this.position = position;
+            this.end = end;
+        }
+
+        void advance() {
+            if (position >= end) {
+                ordinal = Integer.MAX_VALUE;
+                return;
+            }
+            int gap = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = postings[position++];
+                gap |= (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0);
+            ordinal += gap;
+        }
+    }
+
+    /**
+     * Collects entries for a new index. An id added twice keeps its last name.
+     */
+    public static final class Builder {
+        private final List<Entry> entries = new ArrayList<>();
+
+        private Builder() {
+        }
+
+        public Builder add(long id, String username) {
+            entries.add(new Entry(id, username.getBytes(StandardCharsets.UTF_8), entries.size()));
+            return this;
+        }
+
+        public Builder addAll(UsernameIndex index) {
+            for (int i = 0; i < index.ids.length; i++) {
+                entries.add(new Entry(index.ids[i],
+                        Arrays.copyOfRange(index.names, index.offsets[i], index.offsets[i + 1]), entries.size()));
+            }
+            return this;
+        }
+
+        // Drops what was added so far for these ids; sequence numbers only order entries, so gaps are fine
+        public Builder removeAll(Set<Long> ids) {
+            if (!ids.isEmpty()) {
+                entries.removeIf(entry -> ids.contains(entry.id()));
+            }
+            return this;
+        }
+
+        public UsernameIndex build() {
+            entries.sort(Comparator.comparingLong(Entry::id).thenComparingInt(Entry::sequence));
+            List<Entry> unique = new ArrayList<>(entries.size());
+            for (int i = 0; i < entries.size(); i++) {
+                if (i + 1 == entries.size() || entries.get(i + 1).id() != entries.get(i).id()) {
+                    unique.add(entries.get(i));
+                }
+            }
+            unique.sort((a, b) -> compare(a.name(), 0, a.name().length, b.name(), 0, b.name().length));
+
+            int count = unique.size();
+            long[] ids = new long[count];
+            int[] offsets = new int[count + 1];
+            for (int i = 0; i < count; i++) {
+                ids[i] = unique.get(i).id();
+                offsets[i + 1] = offsets[i] + unique.get(i).name().length;
+            }
+            byte[] names = new byte[offsets[count]];
+            Map<Integer, PostingList> lists = new HashMap<>();
+            for (int ordinal = 0; ordinal < count; ordinal++) {
+                byte[] name = unique.get(ordinal).name();
+                System.arraycopy(name, 0, names, offsets[ordinal], name.length);
+                for (int gram : UsernameIndex.grams(fold(name), true)) {
+                    lists.computeIfAbsent(gram, g -> new PostingList()).add(ordinal);
+                }
+            }
+
+            int[] grams = lists.keySet().stream().mapToInt(Integer::intValue).sorted().toArray();
+            int[] postingOffsets = new int[grams.length + 1];
+            for (int i = 0; i < grams.length; i++) {
+                postingOffsets[i + 1] = postingOffsets[i] + lists.get(grams[i]).size;
+            }
+            byte[] postings = new byte[postingOffsets[grams.length]];
+            for (int i = 0; i < grams.length; i++) {
+                PostingList list = lists.get(grams[i]);
+                System.arraycopy(list.bytes, 0, postings, postingOffsets[i], list.size);
+            }
+            return new UsernameIndex(names, offsets, ids, grams, postingOffsets, postings);
+        }
+
+        private record Entry(long id, byte[] name, int sequence) {
+        }
+    }
+
+    // Ordinals arrive in increasing order, so each is stored as the gap from the previous one
+    private static final class PostingList {
+        private byte[] bytes = new byte[4];
+        private int size;
+        private int last = -1;
+
+        void add(int ordinal) {
+            int gap = ordinal - last;
+            last = ordinal;
+            while (true) {
+                if (size == bytes.length) {
+                    bytes = Arrays.copyOf(bytes, size * 2);
+                }
+                if ((gap & ~0x7F) == 0) {
+                    bytes[size++] = (byte) gap;
+                    return;
+                }
+                bytes[size++] = (byte) ((gap & 0x7F) | 0x80);
+                gap >>>= 7;
+            }
+        }
+    }
+}
@@ -0,0 +1,13 @@
+-- Schema as the service had it before migrations, generated by Hibernate under ddl-auto=update. Databases
+-- created that way already have it: spring.flyway.baseline-on-migrate records them at version 1 and only the
+-- later migrations run.
+
+CREATE TABLE users (
+    id                          BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    email                       VARCHAR(255) NOT NULL UNIQUE,
+    enabled                     BOOLEAN,
+    password                    VARCHAR(255) NOT NULL,
+    username                    VARCHAR(20)  NOT NULL UNIQUE,
+    verfication_code            VARCHAR(255),
+    verfication_code_expires_at TIMESTAMP(6)
+);
@@ -0,0 +1,12 @@
+-- Broker messages written in the same transaction as the change that caused them (OutboxRelay publishes them)
+CREATE TABLE outbox_events (
+    id              BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    exchange        VARCHAR(255) NOT NULL,
+    routing_key     VARCHAR(255) NOT NULL,
+    payload         TEXT         NOT NULL,
+    attempts        INTEGER      NOT NULL,
+    created_at      TIMESTAMP(6) NOT NULL,
+    next_attempt_at TIMESTAMP(6) NOT NULL
+);
+
+CREATE INDEX idx_outbox_next_attempt ON outbox_events (next_attempt_at);
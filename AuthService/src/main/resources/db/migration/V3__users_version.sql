@@ -0,0 +1,2 @@
+-- Optimistic-locking version, also served to other services as the user's ETag
+ALTER TABLE users ADD COLUMN version BIGINT NOT NULL DEFAULT 0;
@@ -0,0 +1,20 @@
+-- One-time codes move off the users row into their own table, one row per email and purpose
+CREATE TABLE otp_codes (
+    email      VARCHAR(255) NOT NULL,
+    purpose    VARCHAR(16)  NOT NULL CHECK (purpose IN ('VERIFY', 'RESET')),
+    code       VARCHAR(6)   NOT NULL,
+    expires_at TIMESTAMP(6) NOT NULL,
+    PRIMARY KEY (purpose, email)
+);
+
+CREATE INDEX idx_otp_codes_expires_at ON otp_codes (expires_at);
+
+-- Codes still valid at migration time keep working: the old column held the verification code of an
+-- unverified account and the reset code of a verified one
+INSERT INTO otp_codes (email, purpose, code, expires_at)
+SELECT email, CASE WHEN enabled THEN 'RESET' ELSE 'VERIFY' END, verfication_code, verfication_code_expires_at
+FROM users
+WHERE verfication_code IS NOT NULL AND verfication_code_expires_at > CURRENT_TIMESTAMP;
+
+ALTER TABLE users DROP COLUMN verfication_code;
+ALTER TABLE users DROP COLUMN verfication_code_expires_at;
@@ -0,0 +1,12 @@
+-- Sequence-numbered feed of committed user changes (/api/internal/users/changes)
+CREATE TABLE user_changes (
+    seq        BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    user_id    BIGINT       NOT NULL,
+    username   VARCHAR(255) NOT NULL,
+    email      VARCHAR(255) NOT NULL,
+    enabled    BOOLEAN,
+    version    BIGINT       NOT NULL,
+    changed_at TIMESTAMP(6) NOT NULL
+);
+
+CREATE INDEX idx_user_changes_changed_at ON user_changes (changed_at);
@@ -0,0 +1,6 @@
+-- users.id used to be an IDENTITY column stepping by 1. It is now filled by Hibernate from users_id_seq with a
+-- pooled optimizer: each nextval returns the highest of the next 50 ids, which the node then hands out itself.
+ALTER TABLE users ALTER COLUMN id DROP IDENTITY;
+CREATE SEQUENCE users_id_seq INCREMENT BY 50 OWNED BY users.id;
+-- The first nextval then reserves the 50 ids after the highest existing one
+SELECT setval('users_id_seq', COALESCE((SELECT MAX(id) FROM users), 0) + 50, false);
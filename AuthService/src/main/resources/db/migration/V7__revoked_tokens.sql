@@ -0,0 +1,6 @@
+CREATE TABLE revoked_tokens (
+    token_id   VARCHAR(36)  NOT NULL PRIMARY KEY,
+    expires_at TIMESTAMP(6) NOT NULL
+);
+
+CREATE INDEX idx_revoked_tokens_expires_at ON revoked_tokens (expires_at);
@@ -0,0 +1,6 @@
+-- When each account was created, so accounts that were never verified can be deleted once their code is long
+-- expired. Rows that predate the column count as registered by this migration and get the full grace period.
+ALTER TABLE users ADD COLUMN registered_at TIMESTAMP(6) NOT NULL DEFAULT CURRENT_TIMESTAMP;
+
+-- The sweeper pages through unverified accounts by (registered_at, id); verified ones are never in the index
+CREATE INDEX idx_users_unverified_registered_at ON users (registered_at, id) WHERE enabled = false;
@@ -0,0 +1,2 @@
+-- Tombstones: a deleted user's last state, so feed readers can drop it
+ALTER TABLE user_changes ADD COLUMN deleted BOOLEAN NOT NULL DEFAULT FALSE;
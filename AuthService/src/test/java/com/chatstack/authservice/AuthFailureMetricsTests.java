@@ -0,0 +1,99 @@
+package com.chatstack.authservice;
+
+import com.chatstack.authservice.dto.LoginRequest;
+import com.chatstack.authservice.entities.OtpPurpose;
+import com.chatstack.authservice.entities.User;
+import com.chatstack.authservice.repositories.UserRepository;
+import com.chatstack.authservice.security.PasswordHasher;
+import com.chatstack.authservice.services.AuthService;
+import com.chatstack.authservice.services.OtpStore;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+// In-memory H2 and no broker; each way a login or a one-time code is turned away has its own auth.failures reason
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:failures;MODE=PostgreSQL;DB_CLOSE_DELAY=-1",
+        "spring.datasource.driver-class-name=org.h2.Driver",
+        "spring.datasource.username=sa",
+        "spring.datasource.password=",
+        "spring.jpa.hibernate.ddl-auto=create-drop",
+        "spring.flyway.enabled=false",
+        "spring.rabbitmq.listener.simple.auto-startup=false",
+        "management.server.port=-1",
+        "password.bcrypt.strength=4",
+        "otp.store.write-through=false"
+})
+class AuthFailureMetricsTests {
+    @Autowired
+    private AuthService authService;
+    @Autowired
+    private OtpStore otpStore;
+    @Autowired
+    private UserRepository userRepository;
+    @Autowired
+    private PasswordHasher passwordHasher;
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Test
+    void loginRejectionsAreCountedByReason() {
+        save("pending", false);
+        save("active", true);
+
+        authService.login(login("nobody", "password123"));
+        authService.login(login("pending", "password123"));
+        authService.login(login("active", "wrongPassword"));
+        // Without the right password an unverified account looks like any other
+        authService.login(login("pending", "wrongPassword"));
+
+        assertEquals(1, failures("login", "unknown_user"));
+        assertEquals(1, failures("login", "not_verified"));
+        assertEquals(2, failures("login", "bad_credentials"));
+    }
+
+    @Test
+    void otpRejectionsAreCountedByReason() {
+        save("verifying", false);
+        save("resetting", true);
+
+        String current = otpStore.issue("verifying@example.com", OtpPurpose.VERIFY, Duration.ofMinutes(10));
+        String wrong = current.equals("123456") ? "654321" : "123456";
+        assertThrows(RuntimeException.class, () -> authService.verifyUser("verifying@example.com", wrong));
+
+        String expired = otpStore.issue("verifying@example.com", OtpPurpose.VERIFY, Duration.ofMillis(-1));
+        assertThrows(RuntimeException.class, () -> authService.verifyUser("verifying@example.com", expired));
+
+        assertThrows(RuntimeException.class, () -> authService.resetPassword("resetting@example.com", "123456", "newPassword123"));
+
+        assertEquals(1, failures("verify", "invalid_otp"));
+        assertEquals(1, failures("verify", "expired_otp"));
+        assertEquals(1, failures("resetPassword", "missing_otp"));
+    }
+
+    private void save(String username, boolean enabled) {
+        User user = new User();
+        user.setUsername(username);
+        user.setEmail(username + "@example.com");
+        user.setPassword(passwordHasher.encode("password123"));
+        user.setEnabled(enabled);
+        userRepository.save(user);
+    }
+
+    private static LoginRequest login(String username, String password) {
+        LoginRequest request = new LoginRequest();
+        request.username = username;
+        request.password = password;
+        return request;
+    }
+
+    private double failures(String operation, String reason) {
+        return meterRegistry.counter("auth.failures", "operation", operation, "reason", reason).count();
+    }
+}
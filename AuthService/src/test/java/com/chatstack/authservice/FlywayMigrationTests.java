@@ -0,0 +1,89 @@
+package com.chatstack.authservice;
+
+import com.chatstack.authservice.entities.User;
+import com.chatstack.authservice.repositories.UserRepository;
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.init.ScriptUtils;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// A database as the service left it before migrations: the V1 schema with users in it and no Flyway history.
+// The service starts on it with Flyway on and Hibernate validating its mapping against the migrated schema.
+@SpringBootTest(properties = {
+        "spring.jpa.hibernate.ddl-auto=validate",
+        "spring.rabbitmq.listener.simple.auto-startup=false",
+        "management.server.port=-1",
+        "password.bcrypt.strength=4"
+})
+class FlywayMigrationTests {
+    private static EmbeddedPostgres postgres;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    @Autowired
+    private UserRepository userRepository;
+
+    @DynamicPropertySource
+    static void legacyDatabase(DynamicPropertyRegistry registry) throws IOException, SQLException {
+        // Stopped by its own shutdown hook, after the cached application context has closed
+        postgres = EmbeddedPostgres.start();
+        DataSource dataSource = postgres.getPostgresDatabase();
+        try (Connection connection = dataSource.getConnection()) {
+            ScriptUtils.executeSqlScript(connection, new ClassPathResource("db/migration/V1__baseline.sql"));
+        }
+        JdbcTemplate legacy = new JdbcTemplate(dataSource);
+        LocalDateTime later = LocalDateTime.now().plusMinutes(5);
+        String insert = "insert into users (username, email, password, enabled, verfication_code, verfication_code_expires_at)"
+                + " values (?, ?, ?, ?, ?, ?)";
+        legacy.update(insert, "verified", "verified@example.com", "$2a$04$legacy", true, "111111", later);
+        legacy.update(insert, "pending", "pending@example.com", "$2a$04$legacy", false, "222222", later);
+        legacy.update(insert, "lapsed", "lapsed@example.com", "$2a$04$legacy", false, "333333",
+                LocalDateTime.now().minusMinutes(5));
+
+        registry.add("spring.datasource.url", () -> postgres.getJdbcUrl("postgres", "postgres"));
+        registry.add("spring.datasource.username", () -> "postgres");
+        registry.add("spring.datasource.password", () -> "");
+    }
+
+    @Test
+    void migratesTheSchemaTheServiceUsedToCreate() {
+        List<String> versions = jdbcTemplate.queryForList(
+                "select version from flyway_schema_history where success order by installed_rank", String.class);
+        assertEquals(List.of("1", "2", "3", "4", "5", "6", "7", "8", "9"), versions);
+        assertEquals("BASELINE", jdbcTemplate.queryForObject(
+                "select type from flyway_schema_history where version = '1'", String.class));
+
+        List<Map<String, Object>> codes = jdbcTemplate.queryForList(
+                "select email, purpose, code from otp_codes order by email");
+        assertEquals(List.of(
+                Map.of("email", "pending@example.com", "purpose", "VERIFY", "code", "222222"),
+                Map.of("email", "verified@example.com", "purpose", "RESET", "code", "111111")), codes);
+
+        User existing = userRepository.findByUsername("verified").orElseThrow();
+        assertEquals(0L, existing.getVersion());
+
+        // New ids come from the identity column's sequence in steps of 50 and stay clear of the old ones
+        User registered = new User();
+        registered.setUsername("newcomer");
+        registered.setEmail("newcomer@example.com");
+        registered.setPassword("not-a-real-hash");
+        registered = userRepository.save(registered);
+        assertTrue(registered.getId() > 3, "id " + registered.getId() + " collides with a migrated user");
+    }
+}
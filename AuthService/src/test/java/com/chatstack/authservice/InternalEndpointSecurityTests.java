@@ -0,0 +1,100 @@
+package com.chatstack.authservice;
+
+import com.chatstack.authservice.security.JwtUtil;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.webmvc.test.autoconfigure.AutoConfigureMockMvc;
+import org.springframework.test.web.servlet.MockMvc;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.not;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+// In-memory H2 and no broker; the authorization rules for /api/internal/** and service tokens, and how /import
+// turns input away
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:internal;MODE=PostgreSQL;DB_CLOSE_DELAY=-1",
+        "spring.datasource.driver-class-name=org.h2.Driver",
+        "spring.datasource.username=sa",
+        "spring.datasource.password=",
+        "spring.jpa.hibernate.ddl-auto=create-drop",
+        "spring.flyway.enabled=false",
+        "spring.rabbitmq.listener.simple.auto-startup=false",
+        "management.server.port=-1",
+        "password.bcrypt.strength=4",
+        "users.import.max-rows=1",
+        "users.import.max-bytes=64B"
+})
+@AutoConfigureMockMvc
+class InternalEndpointSecurityTests {
+    @Autowired
+    private MockMvc mockMvc;
+    @Autowired
+    private JwtUtil jwtUtil;
+
+    @Test
+    void snapshotNeedsAServiceToken() throws Exception {
+        mockMvc.perform(get("/api/internal/users/changes/snapshot"))
+                .andExpect(status().isForbidden());
+        mockMvc.perform(get("/api/internal/users/changes/snapshot")
+                        .header("Authorization", "Bearer " + jwtUtil.generateToken(1L)))
+                .andExpect(status().isForbidden());
+        mockMvc.perform(get("/api/internal/users/changes/snapshot")
+                        .header("Authorization", "Bearer " + jwtUtil.generateServiceToken("chat-service")))
+                .andExpect(status().isOk());
+    }
+
+    @Test
+    void changeFeedNeedsAServiceToken() throws Exception {
+        mockMvc.perform(get("/api/internal/users/changes")
+                        .header("Authorization", "Bearer " + jwtUtil.generateToken(1L)))
+                .andExpect(status().isForbidden());
+        mockMvc.perform(get("/api/internal/users/changes").param("waitMs", "0")
+                        .header("Authorization", "Bearer " + jwtUtil.generateServiceToken("chat-service")))
+                .andExpect(status().isOk());
+    }
+
+    @Test
+    void serviceTokenCannotActAsAUser() throws Exception {
+        String service = "Bearer " + jwtUtil.generateServiceToken("chat-service");
+
+        mockMvc.perform(get("/api/auth/me").header("Authorization", service))
+                .andExpect(status().isForbidden());
+        mockMvc.perform(post("/api/auth/logout").header("Authorization", service))
+                .andExpect(status().isForbidden());
+        mockMvc.perform(post("/api/auth/revoke").contentType("application/json").content("{\"token\":\"x\"}")
+                        .header("Authorization", service))
+                .andExpect(status().isForbidden());
+    }
+
+    @Test
+    void importNeedsAServiceTokenAndStaysWithinTheLimits() throws Exception {
+        String twoRows = "username,email,password\na,a@x.io,password1\nb,b@x.io,password2\n";
+        String service = "Bearer " + jwtUtil.generateServiceToken("chat-service");
+
+        mockMvc.perform(post("/api/internal/users/import").contentType("text/csv").content(twoRows)
+                        .header("Authorization", "Bearer " + jwtUtil.generateToken(1L)))
+                .andExpect(status().isForbidden());
+        mockMvc.perform(post("/api/internal/users/import").contentType("text/csv").content(twoRows)
+                        .header("Authorization", service))
+                .andExpect(status().isContentTooLarge());
+        mockMvc.perform(post("/api/internal/users/import").contentType("text/csv").content(twoRows + "c,c@x.io,password3\n")
+                        .header("Authorization", service))
+                .andExpect(status().isContentTooLarge());
+    }
+
+    @Test
+    void malformedImportRowIsReportedWithoutItsContent() throws Exception {
+        mockMvc.perform(post("/api/internal/users/import").contentType("text/csv")
+                        .content("username,email,password\n\"a,a@x.io,s3cretPass\n")
+                        .header("Authorization", "Bearer " + jwtUtil.generateServiceToken("chat-service")))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.message").value("Unterminated quote in CSV row 1, field 1"))
+                .andExpect(content().string(not(containsString("s3cretPass"))));
+    }
+}
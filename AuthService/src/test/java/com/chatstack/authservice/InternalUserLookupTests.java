@@ -0,0 +1,113 @@
+package com.chatstack.authservice;
+
+import com.chatstack.authservice.entities.User;
+import com.chatstack.authservice.repositories.UserRepository;
+import com.chatstack.authservice.security.JwtUtil;
+import jakarta.persistence.EntityManagerFactory;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.webmvc.test.autoconfigure.AutoConfigureMockMvc;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+import static org.hamcrest.Matchers.contains;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+// In-memory H2 and no broker; conditional reads on GET /{id} and POST /batch
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:lookup;MODE=PostgreSQL;DB_CLOSE_DELAY=-1",
+        "spring.datasource.driver-class-name=org.h2.Driver",
+        "spring.datasource.username=sa",
+        "spring.datasource.password=",
+        "spring.jpa.hibernate.ddl-auto=create-drop",
+        "spring.flyway.enabled=false",
+        "spring.rabbitmq.listener.simple.auto-startup=false",
+        "management.server.port=-1",
+        "password.bcrypt.strength=4"
+})
+@AutoConfigureMockMvc
+class InternalUserLookupTests {
+    @Autowired
+    private MockMvc mockMvc;
+    @Autowired
+    private JwtUtil jwtUtil;
+    @Autowired
+    private UserRepository userRepository;
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    private String service;
+
+    @BeforeEach
+    void setUp() {
+        service = "Bearer " + jwtUtil.generateServiceToken("chat-service");
+    }
+
+    @Test
+    void userCarriesItsVersionAsETag() throws Exception {
+        User user = save("tagged");
+        user.setEnabled(true);
+        userRepository.save(user);
+
+        mockMvc.perform(get("/api/internal/users/{id}", user.getId()).header("Authorization", service))
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", "\"1\""))
+                .andExpect(jsonPath("$.version").value(1));
+    }
+
+    @Test
+    void matchingIfNoneMatchIsAnsweredWithoutLoadingTheUser() throws Exception {
+        Long id = save("revalidated").getId();
+        entityManagerFactory.getCache().evictAll();
+
+        mockMvc.perform(get("/api/internal/users/{id}", id).header("Authorization", service)
+                        .header("If-None-Match", "\"0\""))
+                .andExpect(status().isNotModified())
+                .andExpect(header().string("ETag", "\"0\""))
+                .andExpect(content().string(""));
+        // Only the version was read, the entity never reached the second-level cache
+        assertFalse(entityManagerFactory.getCache().contains(User.class, id));
+
+        mockMvc.perform(get("/api/internal/users/{id}", id).header("Authorization", service)
+                        .header("If-None-Match", "\"7\""))
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", "\"0\""))
+                .andExpect(jsonPath("$.username").value("revalidated"));
+    }
+
+    @Test
+    void batchLeavesOutUsersTheCallerHoldsCurrent() throws Exception {
+        Long known = save("known").getId();
+        Long stale = save("stale").getId();
+        Long unknown = save("unknown").getId();
+
+        MvcResult started = mockMvc.perform(post("/api/internal/users/batch").contentType("application/json")
+                        .content("{\"ids\":[" + known + "," + stale + "," + unknown + "],"
+                                + "\"knownVersions\":{\"" + known + "\":0,\"" + stale + "\":5}}")
+                        .header("Authorization", service))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        mockMvc.perform(asyncDispatch(started))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[*].username", contains("stale", "unknown")));
+    }
+
+    private User save(String username) {
+        User user = new User();
+        user.setUsername(username);
+        user.setEmail(username + "@example.com");
+        user.setPassword("not-a-real-hash");
+        user.setEnabled(false);
+        return userRepository.save(user);
+    }
+}
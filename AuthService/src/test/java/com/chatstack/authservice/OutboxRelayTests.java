@@ -0,0 +1,119 @@
+package com.chatstack.authservice;
+
+import com.chatstack.authservice.services.OutboxRelay;
+import com.chatstack.authservice.services.OutboxService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.amqp.AmqpConnectException;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.clearInvocations;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+// In-memory H2 and a mocked RabbitTemplate that confirms, nacks, never answers or fails per routing key;
+// the scheduled relay only runs once at startup, the test drains the outbox itself
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:outbox;MODE=PostgreSQL;DB_CLOSE_DELAY=-1",
+        "spring.datasource.driver-class-name=org.h2.Driver",
+        "spring.datasource.username=sa",
+        "spring.datasource.password=",
+        "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+        "spring.jpa.hibernate.ddl-auto=create-drop",
+        "spring.flyway.enabled=false",
+        "spring.rabbitmq.listener.simple.auto-startup=false",
+        "management.server.port=-1",
+        "password.bcrypt.strength=4",
+        "outbox.relay.interval-ms=3600000",
+        "outbox.relay.confirm-timeout-ms=200"
+})
+class OutboxRelayTests {
+    @MockitoBean
+    private RabbitTemplate rabbitTemplate;
+    @Autowired
+    private OutboxRelay outboxRelay;
+    @Autowired
+    private OutboxService outboxService;
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @BeforeEach
+    void brokerByRoutingKey() {
+        jdbcTemplate.update("delete from outbox_events");
+        doAnswer(invocation -> {
+            // Nothing may be locked or open while the relay talks to the broker
+            assertFalse(TransactionSynchronizationManager.isActualTransactionActive());
+            CorrelationData correlation = invocation.getArgument(3);
+            switch ((String) invocation.getArgument(1)) {
+                case "ack" -> correlation.getFuture().complete(new CorrelationData.Confirm(true, null));
+                case "nack" -> correlation.getFuture().complete(new CorrelationData.Confirm(false, "rejected"));
+                case "down" -> throw new AmqpConnectException(new java.net.ConnectException("refused"));
+                default -> { }
+            }
+            return null;
+        }).when(rabbitTemplate).send(anyString(), anyString(), any(Message.class), any(CorrelationData.class));
+    }
+
+    @Test
+    void deletesConfirmedEventsAndBacksOffTheRest() {
+        enqueue("ack", "ack", "nack", "silent", "down");
+        LocalDateTime before = LocalDateTime.now();
+
+        outboxRelay.drain();
+
+        List<Map<String, Object>> left = jdbcTemplate.queryForList(
+                "select routing_key, attempts, next_attempt_at from outbox_events order by id");
+        assertEquals(List.of("nack", "silent", "down"), left.stream().map(row -> row.get("routing_key")).toList());
+        for (Map<String, Object> row : left) {
+            assertEquals(1, ((Number) row.get("attempts")).intValue());
+            // 2^attempts seconds
+            assertTrue(((Timestamp) row.get("next_attempt_at")).toLocalDateTime().isAfter(before.plusSeconds(1)));
+        }
+
+        clearInvocations(rabbitTemplate);
+        outboxRelay.drain();
+        verify(rabbitTemplate, never()).send(anyString(), anyString(), any(Message.class), any(CorrelationData.class));
+        assertEquals(3, jdbcTemplate.queryForObject("select count(*) from outbox_events", Integer.class));
+    }
+
+    @Test
+    void retriesOnceTheBackoffHasPassed() {
+        enqueue("ack");
+        jdbcTemplate.update("update outbox_events set attempts = 3, next_attempt_at = ?", LocalDateTime.now().minusSeconds(1));
+
+        outboxRelay.drain();
+
+        verify(rabbitTemplate).send(eq("user.exchange"), eq("ack"), any(Message.class), any(CorrelationData.class));
+        assertEquals(0, jdbcTemplate.queryForObject("select count(*) from outbox_events", Integer.class));
+    }
+
+    private void enqueue(String... routingKeys) {
+        transactionTemplate.executeWithoutResult(status -> {
+            for (String routingKey : routingKeys) {
+                outboxService.enqueue("user.exchange", routingKey, Map.of("routingKey", routingKey));
+            }
+        });
+    }
+}
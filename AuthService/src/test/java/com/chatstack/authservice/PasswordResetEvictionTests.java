@@ -0,0 +1,111 @@
+package com.chatstack.authservice;
+
+import com.chatstack.authservice.config.RabbitMQConfig;
+import com.chatstack.authservice.dto.UserChangedEvent;
+import com.chatstack.authservice.entities.User;
+import com.chatstack.authservice.repositories.UserRepository;
+import com.chatstack.authservice.services.AuthService;
+import com.chatstack.authservice.services.OutboxRelay;
+import com.chatstack.authservice.services.UserCacheInvalidator;
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+import jakarta.persistence.EntityManagerFactory;
+import org.junit.jupiter.api.Test;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.amqp.support.converter.MessageConverter;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+
+// Embedded Postgres, since codes are written through to otp_codes with ON CONFLICT; the broker is a RabbitTemplate mock that
+// confirms every send and keeps the user.changed messages, which the test hands to the invalidator itself
+@SpringBootTest(properties = {
+        "spring.rabbitmq.listener.simple.auto-startup=false",
+        "management.server.port=-1",
+        "password.bcrypt.strength=4",
+        "outbox.relay.interval-ms=3600000"
+})
+class PasswordResetEvictionTests {
+    private static EmbeddedPostgres postgres;
+
+    @MockitoBean
+    private RabbitTemplate rabbitTemplate;
+    @Autowired
+    private AuthService authService;
+    @Autowired
+    private UserRepository userRepository;
+    @Autowired
+    private OutboxRelay outboxRelay;
+    @Autowired
+    private UserCacheInvalidator userCacheInvalidator;
+    @Autowired
+    private MessageConverter messageConverter;
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @DynamicPropertySource
+    static void database(DynamicPropertyRegistry registry) throws IOException {
+        // Stopped by its own shutdown hook, after the cached application context has closed
+        postgres = EmbeddedPostgres.start();
+        registry.add("spring.datasource.url", () -> postgres.getJdbcUrl("postgres", "postgres"));
+        registry.add("spring.datasource.username", () -> "postgres");
+        registry.add("spring.datasource.password", () -> "");
+    }
+
+    @Test
+    void resetIsAnnouncedSoEveryNodeDropsTheCachedUser() {
+        List<Message> announced = new ArrayList<>();
+        doAnswer(invocation -> {
+            if (RabbitMQConfig.USER_CHANGED_ROUTING_KEY.equals(invocation.getArgument(1))) {
+                announced.add(invocation.getArgument(2));
+            }
+            CorrelationData correlation = invocation.getArgument(3);
+            correlation.getFuture().complete(new CorrelationData.Confirm(true, null));
+            return null;
+        }).when(rabbitTemplate).send(anyString(), anyString(), any(Message.class), any(CorrelationData.class));
+
+        User user = new User();
+        user.setUsername("resetting");
+        user.setEmail("resetting@example.com");
+        user.setPassword("not-a-real-hash");
+        user.setEnabled(true);
+        Long id = userRepository.save(user).getId();
+        outboxRelay.drain();
+        announced.clear();
+        userRepository.findById(id).orElseThrow();
+        assertTrue(entityManagerFactory.getCache().contains(User.class, id));
+
+        authService.requestPasswordReset("resetting@example.com");
+        String code = jdbcTemplate.queryForObject(
+                "select code from otp_codes where email = ? and purpose = 'RESET'", String.class, "resetting@example.com");
+        authService.resetPassword("resetting@example.com", code, "newPassword123");
+        outboxRelay.drain();
+
+        assertEquals(1, announced.size());
+        Message message = announced.getFirst();
+        message.getMessageProperties().setInferredArgumentType(UserChangedEvent.class);
+        UserChangedEvent event = (UserChangedEvent) messageConverter.fromMessage(message);
+        assertEquals(id, event.id());
+        assertEquals(1L, event.version());
+
+        userCacheInvalidator.onChange(event);
+        assertFalse(entityManagerFactory.getCache().contains(User.class, id));
+    }
+}
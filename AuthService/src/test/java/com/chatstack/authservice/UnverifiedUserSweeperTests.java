@@ -0,0 +1,121 @@
+package com.chatstack.authservice;
+
+import com.chatstack.authservice.config.RabbitMQConfig;
+import com.chatstack.authservice.dto.UserChangeEntry;
+import com.chatstack.authservice.entities.OtpPurpose;
+import com.chatstack.authservice.entities.User;
+import com.chatstack.authservice.repositories.UserRepository;
+import com.chatstack.authservice.services.OtpStore;
+import com.chatstack.authservice.services.UnverifiedUserSweeper;
+import com.chatstack.authservice.services.UserChangeFeed;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// In-memory H2 with its own dialect (the Postgres one writes a locking clause H2 rejects) and no broker, so the
+// deletion events stay in the outbox; the scheduled sweep is off for tests and this one runs the batches itself.
+// Codes are issued in memory only; one in otp_codes stands for a code written through by another instance.
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:sweeper;MODE=PostgreSQL;DB_CLOSE_DELAY=-1",
+        "spring.datasource.driver-class-name=org.h2.Driver",
+        "spring.datasource.username=sa",
+        "spring.datasource.password=",
+        "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+        "spring.jpa.hibernate.ddl-auto=create-drop",
+        "spring.flyway.enabled=false",
+        "spring.rabbitmq.listener.simple.auto-startup=false",
+        "management.server.port=-1",
+        "password.bcrypt.strength=4",
+        "users.sweeper.grace=1d",
+        "users.sweeper.batch-size=2",
+        "otp.store.write-through=false"
+})
+class UnverifiedUserSweeperTests {
+    @Autowired
+    private UnverifiedUserSweeper sweeper;
+    @Autowired
+    private UserRepository userRepository;
+    @Autowired
+    private UserChangeFeed userChangeFeed;
+    @Autowired
+    private OtpStore otpStore;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void deletesExpiredUnverifiedAccountsInBatches() {
+        long cursor = userChangeFeed.latestSeq();
+        int announced = deletionBatches();
+        LocalDateTime longAgo = LocalDateTime.now().minusDays(2);
+        for (int i = 0; i < 5; i++) {
+            save("expired" + i, false, longAgo);
+        }
+        save("verified", true, longAgo);
+        save("pending", false, null);
+
+        assertEquals(2, sweeper.sweepBatch());
+        assertEquals(2, sweeper.sweepBatch());
+        assertEquals(1, sweeper.sweepBatch());
+        assertEquals(0, sweeper.sweepBatch());
+
+        List<String> remaining = jdbcTemplate.queryForList(
+                "select username from users where username like 'expired%' or username in ('pending', 'verified') order by username",
+                String.class);
+        assertEquals(List.of("pending", "verified"), remaining);
+        assertEquals(announced + 3, deletionBatches());
+
+        // Feed readers learn about every deletion, in the order the batches committed
+        List<UserChangeEntry> tombstones = userChangeFeed.read(cursor, 100).changes().stream()
+                .filter(entry -> entry.user().getUsername().startsWith("expired"))
+                .toList();
+        assertEquals(List.of("expired0", "expired1", "expired2", "expired3", "expired4"),
+                tombstones.stream().map(entry -> entry.user().getUsername()).toList());
+        assertTrue(tombstones.stream().allMatch(UserChangeEntry::deleted));
+    }
+
+    @Test
+    void keepsAccountsWhoseResentCodeIsStillValid() {
+        // Past the grace, but newer than the accounts of the other test, so its batches are not cut short
+        LocalDateTime longAgo = LocalDateTime.now().minusDays(1).minusHours(1);
+        save("resentHere", false, longAgo);
+        save("resentElsewhere", false, longAgo);
+        save("resentLongAgo", false, longAgo);
+        otpStore.issue("resentHere@example.com", OtpPurpose.VERIFY, Duration.ofMinutes(10));
+        jdbcTemplate.update("insert into otp_codes (email, purpose, code, expires_at) values (?, 'VERIFY', '123456', ?)",
+                "resentElsewhere@example.com", LocalDateTime.now().plusMinutes(10));
+        jdbcTemplate.update("insert into otp_codes (email, purpose, code, expires_at) values (?, 'VERIFY', '654321', ?)",
+                "resentLongAgo@example.com", LocalDateTime.now().minusMinutes(1));
+
+        assertEquals(1, sweeper.sweepBatch());
+        assertEquals(0, sweeper.sweepBatch());
+
+        List<String> remaining = jdbcTemplate.queryForList(
+                "select username from users where username like 'resent%' order by username", String.class);
+        assertEquals(List.of("resentElsewhere", "resentHere"), remaining);
+    }
+
+    private int deletionBatches() {
+        return jdbcTemplate.queryForObject("select count(*) from outbox_events where routing_key = ?", Integer.class,
+                RabbitMQConfig.DELETION_BATCH_ROUTING_KEY);
+    }
+
+    private void save(String username, boolean enabled, LocalDateTime registeredAt) {
+        User user = new User();
+        user.setUsername(username);
+        user.setEmail(username + "@example.com");
+        user.setPassword("not-a-real-hash");
+        user.setEnabled(enabled);
+        user = userRepository.save(user);
+        if (registeredAt != null) {
+            jdbcTemplate.update("update users set registered_at = ? where id = ?", registeredAt, user.getId());
+        }
+    }
+}
@@ -0,0 +1,208 @@
+package com.chatstack.authservice;
+
+import com.chatstack.authservice.dto.UserChangePage;
+import com.chatstack.authservice.dto.UserChangedEvent;
+import com.chatstack.authservice.entities.User;
+import com.chatstack.authservice.repositories.UserChangeRepository;
+import com.chatstack.authservice.repositories.UserRepository;
+import com.chatstack.authservice.security.JwtUtil;
+import com.chatstack.authservice.services.UserChangeFeed;
+import com.jayway.jsonpath.JsonPath;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.boot.webmvc.test.autoconfigure.AutoConfigureMockMvc;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.ResultActions;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.context.request.async.DeferredResult;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.hasItem;
+import static org.hamcrest.Matchers.hasSize;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+// In-memory H2 and no broker, so the test announces changes to the feed itself; a real server for the
+// long-poll timeout, which MockMvc does not run. The snapshot is read two users per query.
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+        "spring.datasource.url=jdbc:h2:mem:changes;MODE=PostgreSQL;DB_CLOSE_DELAY=-1",
+        "spring.datasource.driver-class-name=org.h2.Driver",
+        "spring.datasource.username=sa",
+        "spring.datasource.password=",
+        "spring.jpa.hibernate.ddl-auto=create-drop",
+        "spring.flyway.enabled=false",
+        "spring.rabbitmq.listener.simple.auto-startup=false",
+        "management.server.port=-1",
+        "password.bcrypt.strength=4",
+        "outbox.relay.interval-ms=3600000",
+        "internal.users.batch.chunk-size=2"
+})
+@AutoConfigureMockMvc
+class UserChangeFeedTests {
+    @LocalServerPort
+    private int port;
+    @Autowired
+    private MockMvc mockMvc;
+    @Autowired
+    private JwtUtil jwtUtil;
+    @Autowired
+    private UserChangeFeed userChangeFeed;
+    @Autowired
+    private UserRepository userRepository;
+    @Autowired
+    private UserChangeRepository userChangeRepository;
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private String service;
+    private long head;
+
+    @BeforeEach
+    void setUp() {
+        service = "Bearer " + jwtUtil.generateServiceToken("chat-service");
+        Long latest = userChangeRepository.findLatestSeq();
+        head = latest != null ? latest : 0;
+    }
+
+    @Test
+    void cursorAdvancesPageByPage() throws Exception {
+        for (String username : List.of("paged1", "paged2", "paged3")) {
+            change(username);
+        }
+
+        changes(head, 2)
+                .andExpect(jsonPath("$.cursor").value(head + 2))
+                .andExpect(jsonPath("$.changes[*].user.username", contains("paged1", "paged2")));
+        changes(head + 2, 2)
+                .andExpect(jsonPath("$.cursor").value(head + 3))
+                .andExpect(jsonPath("$.changes[*].user.username", contains("paged3")));
+        changes(head + 3, 2)
+                .andExpect(jsonPath("$.cursor").value(head + 3))
+                .andExpect(jsonPath("$.changes", hasSize(0)));
+    }
+
+    @Test
+    void cursorBeforeTheRetentionWindowIsGone() throws Exception {
+        change("retained1");
+        change("retained2");
+        // What the retention purge does to old entries; the newest always stays
+        jdbcTemplate.update("delete from user_changes where seq <= ?", head + 1);
+
+        mockMvc.perform(get("/api/internal/users/changes").param("after", String.valueOf(head))
+                        .param("waitMs", "0").header("Authorization", service))
+                .andExpect(status().isGone());
+        changes(head + 1, 10)
+                .andExpect(jsonPath("$.changes[*].user.username", contains("retained2")));
+    }
+
+    @Test
+    void readStopsAtAnUnsettledGap() {
+        change("gap1");
+        change("gap2");
+        change("gap3");
+        // Stands in for seq head + 2 still being in flight, or rolled back
+        jdbcTemplate.update("delete from user_changes where seq = ?", head + 2);
+
+        UserChangePage page = userChangeFeed.read(head, 10);
+        assertEquals(head + 1, page.cursor());
+
+        // Once the entry after the gap is older than the settle window, the gap is passed
+        jdbcTemplate.update("update user_changes set changed_at = ? where seq = ?", LocalDateTime.now().minusMinutes(1), head + 3);
+        page = userChangeFeed.read(head + 1, 10);
+        assertEquals(head + 3, page.cursor());
+        assertEquals("gap3", page.changes().getFirst().user().getUsername());
+    }
+
+    @Test
+    void snapshotIsPagedAndTailedFromItsCursor() throws Exception {
+        for (String username : List.of("snap1", "snap2", "snap3", "snap4", "snap5")) {
+            change(username);
+        }
+
+        MvcResult snapshot = mockMvc.perform(get("/api/internal/users/changes/snapshot").header("Authorization", service))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        snapshot.getAsyncResult();
+        String body = snapshot.getResponse().getContentAsString();
+        long cursor = ((Number) JsonPath.read(body, "$.cursor")).longValue();
+        List<String> usernames = JsonPath.read(body, "$.users[*].username");
+        assertEquals(userRepository.count(), usernames.size());
+        assertTrue(usernames.containsAll(List.of("snap1", "snap2", "snap3", "snap4", "snap5")));
+
+        change("afterSnapshot");
+        changes(cursor, 1000)
+                .andExpect(jsonPath("$.changes[*].user.username", hasItem("afterSnapshot")));
+    }
+
+    @Test
+    void longPollIsWokenByTheAnnouncement() {
+        DeferredResult<UserChangePage> first = userChangeFeed.poll(head, 10, 30_000);
+        DeferredResult<UserChangePage> second = userChangeFeed.poll(head, 1, 30_000);
+        assertFalse(first.hasResult());
+
+        change("announced");
+        userChangeFeed.onChange(new UserChangedEvent(head + 1, null, "announced", null, false, 0L));
+
+        for (DeferredResult<UserChangePage> result : List.of(first, second)) {
+            UserChangePage page = (UserChangePage) result.getResult();
+            assertEquals(head + 1, page.cursor());
+            assertEquals("announced", page.changes().getFirst().user().getUsername());
+        }
+    }
+
+    @Test
+    void longPollTimesOutWithAnEmptyPage() throws Exception {
+        HttpRequest request = HttpRequest.newBuilder(URI.create(
+                        "http://localhost:" + port + "/api/internal/users/changes?after=" + head + "&waitMs=200"))
+                .header("Authorization", service)
+                .build();
+        try (HttpClient client = HttpClient.newHttpClient()) {
+            long start = System.nanoTime();
+            HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+
+            assertEquals(200, response.statusCode());
+            assertTrue(System.nanoTime() - start >= 200_000_000L);
+            assertEquals("{\"cursor\":" + head + ",\"changes\":[]}", response.body());
+        }
+    }
+
+    private void change(String username) {
+        transactionTemplate.executeWithoutResult(status -> {
+            User user = new User();
+            user.setUsername(username);
+            user.setEmail(username + "@example.com");
+            user.setPassword("not-a-real-hash");
+            user.setEnabled(false);
+            userChangeFeed.record(userRepository.saveAndFlush(user));
+        });
+    }
+
+    private ResultActions changes(long after, int limit) throws Exception {
+        MvcResult started = mockMvc.perform(get("/api/internal/users/changes")
+                        .param("after", String.valueOf(after)).param("limit", String.valueOf(limit)).param("waitMs", "0")
+                        .header("Authorization", service))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        return mockMvc.perform(asyncDispatch(started)).andExpect(status().isOk());
+    }
+}
@@ -0,0 +1,155 @@
+package com.chatstack.authservice;
+
+import com.chatstack.authservice.dto.LoginRequest;
+import com.chatstack.authservice.dto.LoginResult;
+import com.chatstack.authservice.entities.OtpPurpose;
+import com.chatstack.authservice.entities.User;
+import com.chatstack.authservice.repositories.UserRepository;
+import com.chatstack.authservice.security.JwtUtil;
+import com.chatstack.authservice.security.PasswordHasher;
+import com.chatstack.authservice.services.AuthService;
+import com.chatstack.authservice.services.OtpStore;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.webmvc.test.autoconfigure.AutoConfigureMockMvc;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+// In-memory H2 instead of Postgres and no broker; only statements issued by the test thread are counted,
+// the scheduled jobs keep querying in the background
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:cache;MODE=PostgreSQL;DB_CLOSE_DELAY=-1",
+        "spring.datasource.driver-class-name=org.h2.Driver",
+        "spring.datasource.username=sa",
+        "spring.datasource.password=",
+        "spring.jpa.hibernate.ddl-auto=create-drop",
+        "spring.jpa.properties.hibernate.session_factory.statement_inspector=com.chatstack.authservice.UserSecondLevelCacheTests$CountingInspector",
+        "spring.flyway.enabled=false",
+        "spring.rabbitmq.listener.simple.auto-startup=false",
+        "management.server.port=-1",
+        "password.bcrypt.strength=4",
+        "otp.store.write-through=false"
+})
+@AutoConfigureMockMvc
+class UserSecondLevelCacheTests {
+    @Autowired
+    private MockMvc mockMvc;
+    @Autowired
+    private UserRepository userRepository;
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+    @Autowired
+    private JwtUtil jwtUtil;
+    @Autowired
+    private AuthService authService;
+    @Autowired
+    private OtpStore otpStore;
+    @Autowired
+    private PasswordHasher passwordHasher;
+
+    @Test
+    void repeatedMeDoesNotQueryTheDatabase() throws Exception {
+        User user = new User();
+        user.setUsername("cached");
+        user.setEmail("cached@example.com");
+        user.setPassword("not-a-real-hash");
+        user.setEnabled(true);
+        user = userRepository.save(user);
+        entityManagerFactory.getCache().evictAll();
+        String authorization = "Bearer " + jwtUtil.generateToken(user.getId());
+
+        assertEquals(1, CountingInspector.count(() -> me(authorization)));
+        assertEquals(0, CountingInspector.count(() -> me(authorization)));
+        assertEquals(0, CountingInspector.count(() -> me(authorization)));
+    }
+
+    @Test
+    void usernameLookupIsServedFromTheNaturalIdCache() {
+        User user = new User();
+        user.setUsername("natural");
+        user.setEmail("natural@example.com");
+        user.setPassword("not-a-real-hash");
+        user.setEnabled(true);
+        userRepository.save(user);
+        entityManagerFactory.getCache().evictAll();
+
+        assertEquals(1, CountingInspector.count(() -> userRepository.findByUsername("natural").orElseThrow()));
+        assertEquals(0, CountingInspector.count(() -> userRepository.findByUsername("natural").orElseThrow()));
+    }
+
+    @Test
+    void repeatedLoginReadsOnlyTheCredentials() {
+        User user = new User();
+        user.setUsername("credentials");
+        user.setEmail("credentials@example.com");
+        user.setPassword(passwordHasher.encode("password123"));
+        user.setEnabled(false);
+        Long id = userRepository.save(user).getId();
+        entityManagerFactory.getCache().evictAll();
+
+        assertEquals(1, CountingInspector.count(() -> assertEquals(LoginResult.Failure.NOT_VERIFIED, login("credentials"))));
+        assertEquals(0, CountingInspector.count(() -> assertEquals(LoginResult.Failure.NOT_VERIFIED, login("credentials"))));
+        // A projection: no User entity was loaded, so none reached the second-level cache
+        assertFalse(entityManagerFactory.getCache().contains(User.class, id));
+
+        // Verifying drops the cached credentials, so the next login sees the account enabled
+        String code = otpStore.issue("credentials@example.com", OtpPurpose.VERIFY, Duration.ofMinutes(10));
+        authService.verifyUser("credentials@example.com", code);
+        assertInstanceOf(LoginResult.Success.class, login("credentials"));
+    }
+
+    private LoginResult login(String username) {
+        LoginRequest request = new LoginRequest();
+        request.username = username;
+        request.password = "password123";
+        return authService.login(request);
+    }
+
+    private void me(String authorization) throws Exception {
+        mockMvc.perform(get("/api/auth/me").header("Authorization", authorization))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.username").exists());
+    }
+
+    public static class CountingInspector implements StatementInspector {
+        private static final ThreadLocal<AtomicInteger> STATEMENTS = new ThreadLocal<>();
+
+        static int count(ThrowingRunnable action) {
+            AtomicInteger statements = new AtomicInteger();
+            STATEMENTS.set(statements);
+            try {
+                action.run();
+            } catch (Exception e) {
+                throw new AssertionError(e);
+            } finally {
+                STATEMENTS.remove();
+            }
+            return statements.get();
+        }
+
+        @Override
+        public String inspect(String sql) {
+            AtomicInteger statements = STATEMENTS.get();
+            if (statements != null) {
+                statements.incrementAndGet();
+            }
+            return sql;
+        }
+    }
+
+    interface ThrowingRunnable {
+        void run() throws Exception;
+    }
+}
@@ -0,0 +1,107 @@
+package com.chatstack.authservice.config;
+
+import com.chatstack.authservice.entities.User;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DataSourceUtils;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DataSourceRoutingTests {
+    private final CountingDataSource primary = new CountingDataSource();
+    private final CountingDataSource replica = new CountingDataSource();
+    private final DataSource dataSource = DataSourceConfig.routingDataSource(primary.dataSource(), replica.dataSource());
+    private final DataSourceTransactionManager transactionManager = new DataSourceTransactionManager(dataSource);
+    private final AtomicLong clock = new AtomicLong();
+    private final ReadYourWrites readYourWrites =
+            new ReadYourWrites(true, Duration.ofSeconds(5), clock::get, new SimpleMeterRegistry());
+
+    @BeforeEach
+    void probeDefaults() throws SQLException {
+        // The lazy proxy reads auto-commit and isolation from one primary connection on first use
+        dataSource.getConnection().getAutoCommit();
+    }
+
+    @Test
+    void readOnlyTransactionsUseTheReplicaAndTheRestThePrimary() {
+        assertEquals("replica", runStatement(true));
+        assertEquals("primary", runStatement(false));
+        assertEquals("primary", readYourWrites.onPrimary(() -> runStatement(true)));
+    }
+
+    @Test
+    void readsOfARecentlyWrittenUserStayOnThePrimaryUntilTheWindowPasses() {
+        User user = new User();
+        user.setId(42L);
+        user.setUsername("johndoe");
+        user.setEmail("john@example.com");
+        readYourWrites.recordWrite(user);
+
+        assertEquals("primary", readYourWrites.read(42L, () -> runStatement(true)));
+        assertEquals("primary", readYourWrites.read("john@example.com", () -> runStatement(true)));
+        assertEquals("replica", readYourWrites.read(7L, () -> runStatement(true)));
+
+        clock.addAndGet(Duration.ofSeconds(5).toNanos());
+        assertEquals("replica", readYourWrites.read(42L, () -> runStatement(true)));
+    }
+
+    // Which pool served a transaction that ran one statement
+    private String runStatement(boolean readOnly) {
+        TransactionTemplate template = new TransactionTemplate(transactionManager);
+        template.setReadOnly(readOnly);
+        int primaryBefore = primary.connections.get();
+        int replicaBefore = replica.connections.get();
+        template.executeWithoutResult(status -> {
+            try {
+                DataSourceUtils.getConnection(dataSource).createStatement();
+            } catch (SQLException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        int fromPrimary = primary.connections.get() - primaryBefore;
+        int fromReplica = replica.connections.get() - replicaBefore;
+        assertEquals(1, fromPrimary + fromReplica);
+        return fromPrimary == 1 ? "primary" : "replica";
+    }
+
+    // Stand-in pool: counts connections handed out, which answer every call with a neutral default
+    private static class CountingDataSource {
+        final AtomicInteger connections = new AtomicInteger();
+
+        DataSource dataSource() {
+            return (DataSource) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{DataSource.class},
+                    (proxy, method, args) -> switch (method.getName()) {
+                        case "getConnection" -> {
+                            connections.incrementAndGet();
+                            yield connection();
+                        }
+                        case "hashCode" -> System.identityHashCode(proxy);
+                        case "equals" -> proxy == args[0];
+                        default -> null;
+                    });
+        }
+
+        private static Connection connection() {
+            return (Connection) Proxy.newProxyInstance(CountingDataSource.class.getClassLoader(), new Class<?>[]{Connection.class},
+                    (proxy, method, args) -> switch (method.getName()) {
+                        case "getAutoCommit" -> true;
+                        case "getTransactionIsolation" -> Connection.TRANSACTION_READ_COMMITTED;
+                        case "isReadOnly", "isClosed", "isWrapperFor" -> false;
+                        case "hashCode" -> System.identityHashCode(proxy);
+                        case "equals" -> proxy == args[0];
+                        default -> null;
+                    });
+        }
+    }
+}
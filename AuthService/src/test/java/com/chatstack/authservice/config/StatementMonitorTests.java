@@ -0,0 +1,107 @@
+package com.chatstack.authservice.config;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StatementMonitorTests {
+    @Test
+    void countsStatementsOfTheCurrentThreadOnly() throws Exception {
+        StatementMonitor monitor = new StatementMonitor(Duration.ofHours(1), 10);
+        JdbcDataSource h2 = new JdbcDataSource();
+        h2.setURL("jdbc:h2:mem:monitor;DB_CLOSE_DELAY=-1");
+        DataSource dataSource = (DataSource) monitor.postProcessAfterInitialization(h2, "dataSource");
+
+        try (Connection connection = dataSource.getConnection(); Statement statement = connection.createStatement()) {
+            statement.execute("create table if not exists t (id int)");
+
+            StatementMonitor.Tally tally = monitor.begin();
+            try (PreparedStatement insert = connection.prepareStatement("insert into t values (?)")) {
+                insert.setInt(1, 1);
+                insert.executeUpdate();
+                statement.executeQuery("select count(*) from t").close();
+            } finally {
+                monitor.end();
+            }
+            statement.execute("delete from t");
+
+            assertEquals(2, tally.statements());
+            assertTrue(tally.nanos() > 0);
+        }
+        assertSame(h2, monitor.postProcessAfterInitialization(h2, "replicaDataSource"));
+        monitor.destroy();
+    }
+
+    @Test
+    void redactsLiteralsButKeepsIdentifiers() {
+        assertEquals("select u1_0.id from users u1_0 where u1_0.email=? and u1_0.version>? limit ?",
+                StatementMonitor.redact("select u1_0.id from users u1_0 where u1_0.email='a''b@x.io' and u1_0.version>2.5 limit 10"));
+        assertEquals("update users set password=? where id=?",
+                StatementMonitor.redact("update users set password=? where id=?"));
+    }
+
+    @Test
+    void parsesEndpointBudgets() {
+        assertEquals(Map.of("POST /api/auth/login", 2, "GET /api/auth/me", 1),
+                QueryBudgetFilter.parse("POST  /api/auth/login=2, GET /api/auth/me = 1,"));
+        assertEquals(Map.of(), QueryBudgetFilter.parse(""));
+    }
+
+    @Test
+    void failsOverBudgetRequestsOnlyWhileTheResponseCanStillSayIt() throws Exception {
+        StatementMonitor monitor = new StatementMonitor(Duration.ofHours(1), 10);
+        JdbcDataSource h2 = new JdbcDataSource();
+        h2.setURL("jdbc:h2:mem:budget;DB_CLOSE_DELAY=-1");
+        DataSource dataSource = (DataSource) monitor.postProcessAfterInitialization(h2, "dataSource");
+        QueryBudgetFilter filter = new QueryBudgetFilter(monitor, new SimpleMeterRegistry(), 0, "", true);
+
+        // The handler flushes a small body, which the filter holds back so the request can still fail
+        MockHttpServletResponse flushed = new MockHttpServletResponse();
+        assertThrows(IllegalStateException.class, () -> filter.doFilter(new MockHttpServletRequest("GET", "/x"), flushed,
+                (request, response) -> {
+                    query(dataSource);
+                    response.getOutputStream().write(new byte[]{'{', '}'});
+                    response.flushBuffer();
+                }));
+        assertFalse(flushed.isCommitted());
+
+        // A body past the buffer has gone out already, so it is only logged
+        MockHttpServletResponse large = new MockHttpServletResponse();
+        large.setBufferSize(16);
+        filter.doFilter(new MockHttpServletRequest("GET", "/x"), large, (request, response) -> {
+            query(dataSource);
+            response.getOutputStream().write(new byte[64]);
+        });
+        assertTrue(large.isCommitted());
+
+        // The rest of an async request runs elsewhere, so what this thread saw is not its total
+        MockHttpServletRequest async = new MockHttpServletRequest("GET", "/x");
+        async.setAsyncSupported(true);
+        filter.doFilter(async, new MockHttpServletResponse(), (request, response) -> {
+            query(dataSource);
+            request.startAsync();
+        });
+        monitor.destroy();
+    }
+
+    private static void query(DataSource dataSource) throws IOException {
+        try (Connection connection = dataSource.getConnection(); Statement statement = connection.createStatement()) {
+            statement.executeQuery("select 1").close();
+        } catch (SQLException e) {
+            throw new IOException(e);
+        }
+    }
+}
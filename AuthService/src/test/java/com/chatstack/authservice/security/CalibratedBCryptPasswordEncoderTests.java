@@ -0,0 +1,47 @@
+package com.chatstack.authservice.security;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.DelegatingPasswordEncoder;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CalibratedBCryptPasswordEncoderTests {
+
+    @Test
+    void asksForRehashOnlyWhenCostIsLower() {
+        CalibratedBCryptPasswordEncoder encoder = new CalibratedBCryptPasswordEncoder(5);
+
+        assertFalse(encoder.upgradeEncoding(encoder.encode("password123")));
+        assertTrue(encoder.upgradeEncoding(new BCryptPasswordEncoder(4).encode("password123")));
+        assertFalse(encoder.upgradeEncoding(new BCryptPasswordEncoder(6).encode("password123")));
+        assertFalse(encoder.upgradeEncoding("not-a-bcrypt-hash"));
+    }
+
+    @Test
+    void untaggedLegacyHashesStillMatchAndAreRewritten() {
+        CalibratedBCryptPasswordEncoder bcrypt = new CalibratedBCryptPasswordEncoder(4);
+        DelegatingPasswordEncoder encoder = new DelegatingPasswordEncoder("bcrypt", Map.of("bcrypt", bcrypt));
+        encoder.setDefaultPasswordEncoderForMatches(bcrypt);
+        String legacy = new BCryptPasswordEncoder(4).encode("password123");
+
+        assertTrue(encoder.matches("password123", legacy));
+        assertTrue(encoder.upgradeEncoding(legacy));
+
+        String tagged = encoder.encode("password123");
+        assertTrue(tagged.startsWith("{bcrypt}$2a$04$"));
+        assertFalse(encoder.upgradeEncoding(tagged));
+    }
+
+    @Test
+    void calibrationPicksLargestCostWithinTarget() {
+        long ms = 1_000_000L;
+        assertEquals(10, BCryptCostCalibrator.strengthFor(250 * ms, 130 * ms, 10, 14));
+        assertEquals(11, BCryptCostCalibrator.strengthFor(250 * ms, 125 * ms, 10, 14));
+        assertEquals(12, BCryptCostCalibrator.strengthFor(250 * ms, 50 * ms, 10, 14));
+        assertEquals(10, BCryptCostCalibrator.strengthFor(10 * ms, 50 * ms, 10, 14));
+        assertEquals(14, BCryptCostCalibrator.strengthFor(10_000 * ms, 1 * ms, 10, 14));
+    }
+}
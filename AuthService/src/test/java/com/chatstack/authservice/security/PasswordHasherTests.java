@@ -0,0 +1,89 @@
+package com.chatstack.authservice.security;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PasswordHasherTests {
+
+    @Test
+    void encodesAndMatchesOnThePool() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        PasswordHasher hasher = new PasswordHasher(new BCryptPasswordEncoder(4), registry, 2, 4);
+
+        String hash = hasher.encode("password123");
+
+        assertTrue(hasher.matches("password123", hash));
+        assertFalse(hasher.matches("wrong-password", hash));
+        assertEquals(1, registry.get("password.hashing.duration").tag("operation", "encode").timer().count());
+        assertEquals(2, registry.get("password.hashing.queue").tag("operation", "matches").timer().count());
+        hasher.shutdown();
+    }
+
+    @Test
+    void encodeAllKeepsInputOrderAndNeverRejects() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        PasswordHasher hasher = new PasswordHasher(new BCryptPasswordEncoder(4), registry, 2, 1);
+        List<String> passwords = IntStream.range(0, 20).mapToObj(i -> "password" + i).toList();
+
+        List<String> hashes = hasher.encodeAll(passwords);
+
+        assertEquals(passwords.size(), hashes.size());
+        for (int i = 0; i < passwords.size(); i++) {
+            assertTrue(hasher.matches(passwords.get(i), hashes.get(i)));
+        }
+        assertEquals(0, registry.get("password.hashing.rejected").counter().count());
+        hasher.shutdown();
+    }
+
+    @Test
+    void rejectsWhenQueueIsFull() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch started = new CountDownLatch(1);
+        PasswordEncoder blocking = new BlockingEncoder(started, release);
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        PasswordHasher hasher = new PasswordHasher(blocking, registry, 1, 1);
+
+        CompletableFuture<String> running = CompletableFuture.supplyAsync(() -> hasher.encode("a"));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        CompletableFuture<String> queued = CompletableFuture.supplyAsync(() -> hasher.encode("b"));
+        while (registry.get("executor.queued").gauge().value() < 1) {
+            Thread.onSpinWait();
+        }
+
+        assertThrows(PasswordHashingRejectedException.class, () -> hasher.encode("c"));
+        assertEquals(1, registry.get("password.hashing.rejected").counter().count());
+
+        release.countDown();
+        assertEquals("a", running.get(5, TimeUnit.SECONDS));
+        assertEquals("b", queued.get(5, TimeUnit.SECONDS));
+        hasher.shutdown();
+    }
+
+    private record BlockingEncoder(CountDownLatch started, CountDownLatch release) implements PasswordEncoder {
+        @Override
+        public String encode(CharSequence rawPassword) {
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return rawPassword.toString();
+        }
+
+        @Override
+        public boolean matches(CharSequence rawPassword, String encodedPassword) {
+            return rawPassword.toString().equals(encodedPassword);
+        }
+    }
+}
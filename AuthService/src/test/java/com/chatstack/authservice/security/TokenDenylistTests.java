@@ -0,0 +1,32 @@
+package com.chatstack.authservice.security;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TokenDenylistTests {
+    @Test
+    void revokedTokenStaysListedUntilItExpires() {
+        TokenDenylist denylist = new TokenDenylist(new SimpleMeterRegistry(), 1000);
+        long inAnHour = System.currentTimeMillis() + 3_600_000;
+
+        assertTrue(denylist.revoke("a", inAnHour));
+        assertFalse(denylist.revoke("a", inAnHour));
+        denylist.expire();
+
+        assertTrue(denylist.isRevoked("a"));
+        assertFalse(denylist.isRevoked("b"));
+        assertEquals(1, denylist.size());
+    }
+
+    @Test
+    void expiredOrMissingIdsAreNotListed() {
+        TokenDenylist denylist = new TokenDenylist(new SimpleMeterRegistry(), 1000);
+
+        assertFalse(denylist.revoke("old", System.currentTimeMillis() - 1));
+        assertFalse(denylist.isRevoked("old"));
+        assertFalse(denylist.isRevoked(null));
+        assertEquals(0, denylist.size());
+    }
+}
@@ -0,0 +1,60 @@
+package com.chatstack.authservice.security;
+
+import com.chatstack.authservice.entities.User;
+import io.jsonwebtoken.Claims;
+import org.junit.jupiter.api.Test;
+
+import java.util.Date;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class VerifiedTokenCacheTests {
+    private static final String SECRET = "a_very_long_random_string_for_local_development_only";
+
+    @Test
+    void servesVerifiedTokenUntilItExpires() {
+        VerifiedTokenCache cache = new VerifiedTokenCache(true, 10);
+
+        cache.put("live", "1", "jti-1", false, new Date(System.currentTimeMillis() + 60_000));
+        cache.put("expired", "2", "jti-2", false, new Date(System.currentTimeMillis() - 1));
+
+        assertEquals("1", cache.get("live").subject());
+        assertEquals("jti-1", cache.get("live").tokenId());
+        assertNull(cache.get("expired"));
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    void staysWithinMaxSize() {
+        VerifiedTokenCache cache = new VerifiedTokenCache(true, 2);
+        Date exp = new Date(System.currentTimeMillis() + 60_000);
+
+        cache.put("a", "1", "jti-a", false, exp);
+        cache.put("b", "2", "jti-b", false, exp);
+        cache.put("c", "3", "jti-c", false, exp);
+
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    void forgedTokenFailsVerification() {
+        JwtUtil jwtUtil = new JwtUtil(SECRET);
+        User user = new User();
+        user.setId(7L);
+        String token = jwtUtil.generateToken(user);
+        String forged = new JwtUtil(SECRET + "_forged").generateToken(user);
+
+        Claims claims = jwtUtil.extractClaims(token);
+        assertEquals("7", claims.getSubject());
+        assertNull(jwtUtil.extractClaims(forged));
+    }
+
+    @Test
+    void disabledCacheStoresNothing() {
+        VerifiedTokenCache cache = new VerifiedTokenCache(false, 10);
+        cache.put("t", "1", "jti-t", false, new Date(System.currentTimeMillis() + 60_000));
+
+        assertNull(cache.get("t"));
+        assertEquals(0, cache.size());
+    }
+}
@@ -0,0 +1,48 @@
+package com.chatstack.authservice.services;
+
+import com.chatstack.authservice.config.RabbitMQConfig;
+import com.chatstack.authservice.dto.OtpEmailEvent;
+import com.chatstack.authservice.dto.UserChangedEvent;
+import org.junit.jupiter.api.Test;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageBuilder;
+import org.springframework.amqp.support.converter.MessageConverter;
+import tools.jackson.databind.ObjectMapper;
+import tools.jackson.databind.json.JsonMapper;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EventEncoderTests {
+    private final ObjectMapper jsonMapper = JsonMapper.builder().build();
+    private final MessageConverter converter = new RabbitMQConfig().converter();
+
+    @Test
+    void everyFormatDecodesToTheEventThatWasStored() {
+        UserChangedEvent event = new UserChangedEvent(7, 42L, "johndoe", "john@example.com", true, 3L);
+        String stored = jsonMapper.writeValueAsString(event);
+        for (EventFormat format : EventFormat.values()) {
+            EventEncoder encoder = new EventEncoder(jsonMapper, format.name());
+            assertSame(format, encoder.formatFor(RabbitMQConfig.EXCHANGE));
+            byte[] body = encoder.encode(format, stored);
+            if (format != EventFormat.JSON) {
+                assertTrue(body.length < stored.length(), format + " should be smaller than JSON");
+            }
+
+            Message message = MessageBuilder.withBody(body)
+                    .setContentType(format.contentType())
+                    .setContentEncoding(format.contentEncoding())
+                    .build();
+            message.getMessageProperties().setInferredArgumentType(UserChangedEvent.class);
+            assertEquals(event, converter.fromMessage(message), format.name());
+        }
+    }
+
+    @Test
+    void emailEventsStayJson() {
+        EventEncoder encoder = new EventEncoder(jsonMapper, "cbor");
+        assertSame(EventFormat.JSON, encoder.formatFor(RabbitMQConfig.Email_EXCHANGE));
+        OtpEmailEvent event = MessageEnvelopes.otpEmail("VERIFY", "john@example.com", "123456");
+        assertEquals("{\"pattern\":\"email.otp.key\",\"type\":\"VERIFY\",\"data\":{\"email\":\"john@example.com\",\"otp\":\"123456\"}}",
+                jsonMapper.writeValueAsString(event));
+    }
+}
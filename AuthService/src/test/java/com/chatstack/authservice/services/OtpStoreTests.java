@@ -0,0 +1,104 @@
+package com.chatstack.authservice.services;
+
+import com.chatstack.authservice.entities.OtpCode;
+import com.chatstack.authservice.entities.OtpPurpose;
+import com.chatstack.authservice.repositories.OtpCodeRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Proxy;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OtpStoreTests {
+
+    @Test
+    void onlyTheLatestCodeIssuedByAnyNodeIsAccepted() {
+        OtpCodeRepository table = sharedTable();
+        OtpStore nodeA = new OtpStore(table, new SimpleMeterRegistry(), true, 1000);
+        OtpStore nodeB = new OtpStore(table, new SimpleMeterRegistry(), true, 1000);
+
+        String older = nodeA.issue("a@example.com", OtpPurpose.VERIFY, Duration.ofMinutes(10));
+        String newer = nodeB.issue("a@example.com", OtpPurpose.VERIFY, Duration.ofMinutes(10));
+
+        if (!older.equals(newer)) {
+            assertEquals(OtpStore.Outcome.MISMATCH, nodeA.consume("a@example.com", OtpPurpose.VERIFY, older));
+        }
+        assertEquals(OtpStore.Outcome.ACCEPTED, nodeA.consume("a@example.com", OtpPurpose.VERIFY, newer));
+        assertEquals(OtpStore.Outcome.MISSING, nodeB.consume("a@example.com", OtpPurpose.VERIFY, newer));
+    }
+
+    @Test
+    void inMemoryCodeIsUsableOnce() {
+        OtpStore store = new OtpStore(null, new SimpleMeterRegistry(), false, 1000);
+
+        String code = store.issue("b@example.com", OtpPurpose.RESET, Duration.ofMinutes(5));
+
+        assertEquals(OtpStore.Outcome.MISSING, store.consume("b@example.com", OtpPurpose.VERIFY, code));
+        assertEquals(OtpStore.Outcome.ACCEPTED, store.consume("b@example.com", OtpPurpose.RESET, code));
+        assertEquals(OtpStore.Outcome.MISSING, store.consume("b@example.com", OtpPurpose.RESET, code));
+    }
+
+    @Test
+    void expiredCodeIsRejectedWithoutWaitingForTheWheel() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        OtpStore store = new OtpStore(null, registry, false, 1000);
+
+        String code = store.issue("c@example.com", OtpPurpose.VERIFY, Duration.ofMillis(-1));
+        store.expire();
+
+        assertEquals(OtpStore.Outcome.EXPIRED, store.consume("c@example.com", OtpPurpose.VERIFY, code));
+        assertEquals(OtpStore.Outcome.EXPIRED, store.consume("c@example.com", OtpPurpose.VERIFY, code));
+        assertEquals(2, registry.counter("otp.store.consume", "result", "expired").count());
+        assertEquals(1, store.size());
+    }
+
+    @Test
+    void writtenThroughCodeSurvivesARestartAndIsDeletedWhenUsed() {
+        Map<OtpCode.Key, OtpCode> rows = new ConcurrentHashMap<>();
+        OtpCodeRepository table = sharedTable(rows);
+        String code = new OtpStore(table, new SimpleMeterRegistry(), true, 1000)
+                .issue("d@example.com", OtpPurpose.RESET, Duration.ofMinutes(5));
+        assertEquals(1, rows.size());
+
+        OtpStore restarted = new OtpStore(table, new SimpleMeterRegistry(), true, 1000);
+        assertEquals(OtpStore.Outcome.ACCEPTED, restarted.consume("d@example.com", OtpPurpose.RESET, code));
+        assertTrue(rows.isEmpty());
+        assertEquals(OtpStore.Outcome.MISSING, restarted.consume("d@example.com", OtpPurpose.RESET, code));
+    }
+
+    private static OtpCodeRepository sharedTable() {
+        return sharedTable(new ConcurrentHashMap<>());
+    }
+
+    // otp_codes as the upsert and compare-and-delete queries see it
+    private static OtpCodeRepository sharedTable(Map<OtpCode.Key, OtpCode> rows) {
+        return (OtpCodeRepository) Proxy.newProxyInstance(
+                OtpCodeRepository.class.getClassLoader(),
+                new Class<?>[]{OtpCodeRepository.class},
+                (proxy, method, args) -> switch (method.getName()) {
+                    case "upsert" -> {
+                        OtpCode.Key key = new OtpCode.Key((String) args[0], OtpPurpose.valueOf((String) args[1]));
+                        rows.put(key, new OtpCode(key, (String) args[2], (LocalDateTime) args[3]));
+                        yield 1;
+                    }
+                    case "consume" -> {
+                        OtpCode row = rows.get((OtpCode.Key) args[0]);
+                        boolean hit = row != null && row.getCode().equals(args[1])
+                                && row.getExpiresAt().isAfter((LocalDateTime) args[2]) && rows.remove(args[0], row);
+                        yield hit ? 1 : 0;
+                    }
+                    case "findById" -> Optional.ofNullable(rows.get((OtpCode.Key) args[0]));
+                    case "deleteIssued" -> {
+                        OtpCode row = rows.get((OtpCode.Key) args[0]);
+                        yield row != null && row.getCode().equals(args[1]) && rows.remove(args[0], row) ? 1 : 0;
+                    }
+                    default -> throw new UnsupportedOperationException(method.getName());
+                });
+    }
+}
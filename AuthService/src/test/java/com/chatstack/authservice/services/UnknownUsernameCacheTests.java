@@ -0,0 +1,41 @@
+package com.chatstack.authservice.services;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class UnknownUsernameCacheTests {
+    @Test
+    void remembersUnknownUsernameUntilEvictedOrExpired() {
+        UnknownUsernameCache cache = new UnknownUsernameCache(new SimpleMeterRegistry(), true, Duration.ofMinutes(1), 10);
+
+        cache.put("ghost");
+        assertTrue(cache.contains("ghost"));
+        assertFalse(cache.contains("someone"));
+
+        cache.evict("ghost");
+        assertFalse(cache.contains("ghost"));
+
+        UnknownUsernameCache expiring = new UnknownUsernameCache(new SimpleMeterRegistry(), true, Duration.ZERO, 10);
+        expiring.put("ghost");
+        assertFalse(expiring.contains("ghost"));
+        assertEquals(0, expiring.size());
+    }
+
+    @Test
+    void keepsOnlyTheMostRecentlyUsedNames() {
+        UnknownUsernameCache cache = new UnknownUsernameCache(new SimpleMeterRegistry(), true, Duration.ofMinutes(1), 2);
+
+        cache.put("a");
+        cache.put("b");
+        cache.contains("a");
+        cache.put("c");
+
+        assertTrue(cache.contains("a"));
+        assertFalse(cache.contains("b"));
+        assertTrue(cache.contains("c"));
+    }
+}
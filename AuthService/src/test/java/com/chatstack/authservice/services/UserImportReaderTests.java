@@ -0,0 +1,78 @@
+package com.chatstack.authservice.services;
+
+import com.chatstack.authservice.dto.UserImportRow;
+import org.junit.jupiter.api.Test;
+import tools.jackson.databind.json.JsonMapper;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class UserImportReaderTests {
+
+    @Test
+    void readsCsvColumnsByHeaderName() {
+        String csv = """
+                \uFEFFEmail,password,USERNAME
+                alice@example.com,"pass,word""1",alice
+
+                bob@example.com,password2
+                carol@example.com,password3,carol
+                """;
+
+        List<UserImportRow> rows = drain(UserImportReader.csv(stream(csv)));
+
+        assertEquals(3, rows.size());
+        assertEquals(new UserImportRow("alice", "alice@example.com", "pass,word\"1"), rows.get(0));
+        assertNull(rows.get(1), "a row with missing columns is reported, not skipped");
+        assertEquals(new UserImportRow("carol", "carol@example.com", "password3"), rows.get(2));
+    }
+
+    @Test
+    void rejectsCsvWithoutTheRequiredColumns() {
+        assertThrows(UserImportException.class, () -> UserImportReader.csv(stream("username,email\na,a@x.io\n")));
+        assertThrows(UserImportException.class, () -> drain(UserImportReader.csv(stream("username,email,password\n\"a,a@x.io,p\n"))));
+    }
+
+    @Test
+    void readsJsonArraysAndNdjson() {
+        JsonMapper mapper = JsonMapper.builder().build();
+        String array = "[{\"username\":\"alice\",\"email\":\"a@x.io\",\"password\":\"password1\"},"
+                + "{\"username\":\"bob\",\"email\":\"b@x.io\",\"password\":\"password2\"}]";
+        String ndjson = "{\"username\":\"alice\",\"email\":\"a@x.io\",\"password\":\"password1\"}\n"
+                + "{\"username\":\"bob\",\"email\":\"b@x.io\",\"password\":\"password2\"}\n";
+
+        assertEquals(drain(UserImportReader.json(mapper, stream(array))), drain(UserImportReader.json(mapper, stream(ndjson))));
+        assertEquals(2, drain(UserImportReader.json(mapper, stream(array))).size());
+        assertThrows(UserImportException.class, () -> drain(UserImportReader.json(mapper, stream("[{\"username\":"))));
+    }
+
+    @Test
+    void stopsReadingPastTheByteLimit() {
+        JsonMapper mapper = JsonMapper.builder().build();
+        String csv = "username,email,password\nalice,a@x.io,password1\nbob,b@x.io,password2\n";
+        String ndjson = "{\"username\":\"alice\",\"email\":\"a@x.io\",\"password\":\"password1\"}\n"
+                + "{\"username\":\"bob\",\"email\":\"b@x.io\",\"password\":\"password2\"}\n";
+
+        assertEquals(2, drain(UserImportReader.csv(UserImportReader.limit(stream(csv), csv.length()))).size());
+        assertThrows(UserImportTooLargeException.class,
+                () -> drain(UserImportReader.csv(UserImportReader.limit(stream(csv), csv.length() - 1))));
+        assertThrows(UserImportTooLargeException.class,
+                () -> drain(UserImportReader.json(mapper, UserImportReader.limit(stream(ndjson), 40))));
+    }
+
+    private static InputStream stream(String content) {
+        return new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static List<UserImportRow> drain(Iterator<UserImportRow> rows) {
+        List<UserImportRow> all = new ArrayList<>();
+        rows.forEachRemaining(all::add);
+        return all;
+    }
+}
@@ -0,0 +1,50 @@
+package com.chatstack.authservice.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TimerWheelTests {
+
+    @Test
+    void firesEachTimerOnceOnTheFirstAdvancePastItsDeadline() {
+        long start = 1_000_000;
+        TimerWheel<Long> wheel = new TimerWheel<>(10, start);
+        Random random = new Random(42);
+        // Spans all three levels and beyond the top one (64^3 ticks of 10ms is ~44 minutes)
+        List<Long> deadlines = new ArrayList<>();
+        for (int i = 0; i < 20_000; i++) {
+            long deadline = start + 1 + (long) (random.nextDouble() * random.nextDouble() * 4_000_000);
+            deadlines.add(deadline);
+            wheel.schedule(deadline, deadline);
+        }
+        assertEquals(deadlines.size(), wheel.size());
+
+        Set<Long> seen = new HashSet<>();
+        long now = start;
+        long end = start + 4_100_000;
+        while (now < end) {
+            now += 1 + random.nextInt(5_000);
+            long current = now;
+            wheel.advance(current, deadline -> {
+                assertTrue(deadline <= current, "fired early");
+                assertTrue(current - deadline < 5_000 + 10, "fired late");
+                assertTrue(seen.add(deadline) || Collections.frequency(deadlines, deadline) > 1);
+            });
+        }
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    void pastDeadlinesFireOnTheNextTick() {
+        TimerWheel<String> wheel = new TimerWheel<>(1000, 10_000);
+        wheel.schedule("late", 5_000);
+        List<String> fired = new ArrayList<>();
+
+        assertEquals(0, wheel.advance(10_999, fired::add));
+        assertEquals(1, wheel.advance(11_000, fired::add));
+        assertEquals(List.of("late"), fired);
+    }
+}
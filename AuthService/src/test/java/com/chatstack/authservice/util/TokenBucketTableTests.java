@@ -0,0 +1,43 @@
+package com.chatstack.authservice.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TokenBucketTableTests {
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    @Test
+    void allowsBurstThenRefillsOneTokenPerInterval() {
+        AtomicLong clock = new AtomicLong(-5 * SECOND);
+        TokenBucketTable table = new TokenBucketTable(64, clock::get);
+
+        for (int i = 0; i < 3; i++) {
+            assertEquals(0, table.tryAcquire("a@x.io", 10 * SECOND, 3));
+        }
+        assertEquals(10 * SECOND, table.tryAcquire("a@x.io", 10 * SECOND, 3));
+        assertEquals(0, table.tryAcquire("b@x.io", 10 * SECOND, 3), "buckets are per key");
+
+        clock.addAndGet(4 * SECOND);
+        assertEquals(6 * SECOND, table.tryAcquire("a@x.io", 10 * SECOND, 3));
+        clock.addAndGet(6 * SECOND);
+        assertEquals(0, table.tryAcquire("a@x.io", 10 * SECOND, 3));
+        assertTrue(table.tryAcquire("a@x.io", 10 * SECOND, 3) > 0);
+    }
+
+    @Test
+    void reusesIdleBucketsSoMemoryStaysBounded() {
+        AtomicLong clock = new AtomicLong();
+        TokenBucketTable table = new TokenBucketTable(16, clock::get);
+
+        for (int i = 0; i < 10_000; i++) {
+            assertEquals(0, table.tryAcquire("client-" + i, SECOND, 1));
+            clock.addAndGet(SECOND);
+        }
+        assertEquals(16, table.capacity());
+        assertEquals(0, table.busyEvictions());
+    }
+}
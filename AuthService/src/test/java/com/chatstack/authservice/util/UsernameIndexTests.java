@@ -0,0 +1,83 @@
+package com.chatstack.authservice.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class UsernameIndexTests {
+
+    @Test
+    void prefixIgnoresAsciiCaseAndReturnsAlphabeticalOrder() {
+        UsernameIndex index = UsernameIndex.builder()
+                .add(1, "bob")
+                .add(2, "Alice")
+                .add(3, "al")
+                .add(4, "ALBERT")
+                .add(5, "zoë")
+                .build();
+
+        assertEquals(List.of("al", "ALBERT", "Alice"), names(index.prefix("Al", 10)));
+        assertEquals(List.of("al", "ALBERT"), names(index.prefix("al", 2)));
+        assertEquals(List.of("zoë"), names(index.prefix("zo", 10)));
+        assertTrue(index.prefix("carol", 10).isEmpty());
+    }
+
+    @Test
+    void laterEntryForAnIdReplacesTheEarlierOne() {
+        UsernameIndex first = UsernameIndex.builder().add(1, "alice").add(2, "bob").build();
+        UsernameIndex merged = UsernameIndex.builder().addAll(first).add(2, "robert").add(3, "carol").build();
+
+        assertEquals(3, merged.size());
+        assertTrue(merged.prefix("bob", 10).isEmpty());
+        assertEquals(2, merged.prefix("rob", 10).getFirst().id());
+
+        UsernameIndex pruned = UsernameIndex.builder().addAll(merged).removeAll(Set.of(1L, 3L)).build();
+        assertEquals(1, pruned.size());
+        assertTrue(pruned.prefix("alice", 10).isEmpty());
+        assertTrue(pruned.fuzzy("carol", 10, 0.5).isEmpty());
+    }
+
+    @Test
+    void fuzzyAgreesWithSimilarityOverEveryName() {
+        Random random = new Random(7);
+        List<String> names = IntStream.range(0, 2000)
+                .mapToObj(i -> randomName(random) + i)
+                .toList();
+        UsernameIndex.Builder builder = UsernameIndex.builder();
+        for (int i = 0; i < names.size(); i++) {
+            builder.add(i, names.get(i));
+        }
+        UsernameIndex index = builder.add(5000, "jonathan").build();
+
+        List<UsernameIndex.Match> matches = index.fuzzy("jonathon", 5, 0.5);
+        assertEquals("jonathan", matches.getFirst().username());
+
+        String query = names.get(1234).substring(0, 5);
+        List<UsernameIndex.Match> fuzzy = index.fuzzy(query, 20, 0.6);
+        long expected = names.stream().filter(name -> UsernameIndex.similarity(query, name) >= 0.6).count();
+        assertEquals(Math.min(20, expected), fuzzy.size());
+        assertTrue(fuzzy.stream().allMatch(match -> UsernameIndex.similarity(query, match.username()) == match.similarity()));
+        assertEquals(fuzzy, fuzzy.stream()
+                .sorted(Comparator.comparingDouble(UsernameIndex.Match::similarity).reversed()
+                        .thenComparingInt(match -> match.username().length()))
+                .toList());
+    }
+
+    private static String randomName(Random random) {
+        StringBuilder name = new StringBuilder();
+        for (int i = 0; i < 4 + random.nextInt(6); i++) {
+            name.append((char) ('a' + random.nextInt(6)));
+        }
+        return name.toString();
+    }
+
+    private static List<String> names(List<UsernameIndex.Match> matches) {
+        return matches.stream().map(UsernameIndex.Match::username).toList();
+    }
+}
@@ -28,8 +28,6 @@ export interface RegisterResponse {
     username: string;
     email: string;
     enabled: boolean;
-    verficationCode: string; // Received but never displayed
-    verficationCodeExpiresAt: string; // ISO 8601 datetime
 }
 
 export interface VerifyEmailRequest {
@@ -1,4 +1,5 @@
-import { Injectable, Logger } from '@nestjs/common';
+import { Injectable, Logger, OnModuleDestroy, OnModuleInit } from '@nestjs/common';
+import { JwtService } from '@nestjs/jwt';
 import axios, { AxiosInstance } from 'axios';
 
 export interface UserDto {
@@ -6,30 +7,84 @@ export interface UserDto {
     username: string;
     email: string;
     enabled: boolean;
+    version: number;
 }
 
+interface UserChangePage {
+    cursor: number;
+    // deleted: a tombstone, user is how it looked when it was deleted
+    changes: { seq: number; user: UserDto; deleted: boolean }[];
+}
+
+interface UserSnapshot {
+    cursor: number;
+    users: UserDto[];
+}
+
+const USER_CACHE_LIMIT = 10000;
+const CHANGE_POLL_WAIT_MS = 25000;
+const CHANGE_FEED_RETRY_MS = 5000;
+// auth-service only serves /api/internal/** to tokens with scope=internal, signed with the shared JWT_SECRET
+const SERVICE_TOKEN_TTL_S = 3600;
+const SERVICE_TOKEN_REFRESH_MS = (SERVICE_TOKEN_TTL_S - 300) * 1000;
+
 @Injectable()
-export class AuthServiceClient {
+export class AuthServiceClient implements OnModuleInit, OnModuleDestroy {
     private readonly logger = new Logger(AuthServiceClient.name);
     private readonly httpClient: AxiosInstance;
     private readonly authServiceUrl: string;
+    // Last seen copy of each user, revalidated against auth-service by version
+    private readonly userCache = new Map<number, UserDto>();
+    // Full copy of auth-service's users, kept current from the change feed; null cursor = not in sync
+    private readonly replica = new Map<number, UserDto>();
+    private replicaCursor: number | null = null;
+    private stopped = false;
+    private serviceToken: string | null = null;
+    private serviceTokenIssuedAt = 0;
 
-    constructor() {
+    constructor(private readonly jwtService: JwtService) {
         this.authServiceUrl = process.env.AUTH_SERVICE_URL || 'http://auth-service:8080';
         this.httpClient = axios.create({
             baseURL: this.authServiceUrl,
             timeout: 5000,
         });
+        this.httpClient.interceptors.request.use((config) => {
+            config.headers.set('Authorization', `Bearer ${this.currentServiceToken()}`);
+            return config;
+        });
+    }
+
+    onModuleInit() {
+        if (process.env.AUTH_USER_FEED !== 'false') {
+            void this.followChanges();
+        }
+    }
+
+    onModuleDestroy() {
+        this.stopped = true;
     }
 
     /**
      * Get a single user by ID
      */
     async getUserById(userId: number): Promise<UserDto | null> {
+        const replicated = this.replicaCursor !== null ? this.replica.get(userId) : undefined;
+        if (replicated) {
+            return replicated;
+        }
         try {
+            const cached = this.userCache.get(userId);
             const response = await this.httpClient.get<UserDto>(
-                `/api/internal/users/${userId}`
+                `/api/internal/users/${userId}`,
+                {
+                    headers: cached ? { 'If-None-Match': `"${cached.version}"` } : {},
+                    validateStatus: (status) => status === 200 || status === 304,
+                }
             );
+            if (response.status === 304 && cached) {
+                return cached;
+            }
+            this.remember(response.data);
             return response.data;
         } catch (error) {
             this.logger.error(`Failed to fetch user ${userId} from auth-service:`, error.message);
@@ -45,12 +100,34 @@ export class AuthServiceClient {
             return [];
         }
 
+        // In sync with the change feed: answer locally, only ids the replica has not seen yet go to auth-service
+        let requestedIds = userIds;
+        if (this.replicaCursor !== null) {
+            requestedIds = userIds.filter((id) => !this.replica.has(id));
+            if (requestedIds.length === 0) {
+                return userIds.map((id) => this.replica.get(id)!);
+            }
+        }
+
         try {
+            const knownVersions: Record<number, number> = {};
+            for (const id of requestedIds) {
+                const cached = this.userCache.get(id);
+                if (cached) {
+                    knownVersions[id] = cached.version;
+                }
+            }
+
+            // auth-service only returns users that changed since the versions we hold
             const response = await this.httpClient.post<UserDto[]>(
                 `/api/internal/users/batch`,
-                { ids: userIds }
+                { ids: requestedIds, knownVersions }
             );
-            return response.data;
+            response.data.forEach((user) => this.remember(user));
+
+            return userIds
+                .map((id) => this.replica.get(id) ?? this.userCache.get(id))
+                .filter((user): user is UserDto => user !== undefined);
         } catch (error) {
             this.logger.error(`Failed to fetch users from auth-service:`, error.message);
             return [];
@@ -86,4 +163,103 @@ export class AuthServiceClient {
             return false;
         }
     }
+
+    /**
+     * Verified users whose username starts with the query, for mention autocomplete;
+     * auth-service fills a short list with similar names, so a typo still finds the user
+     */
+    async searchUsers(query: string, limit = 10): Promise<{ id: number; username: string }[]> {
+        try {
+            const response = await this.httpClient.get<{ id: number; username: string }[]>(
+                `/api/internal/users/search`,
+                { params: { q: query, limit } }
+            );
+            return response.data;
+        } catch (error) {
+            this.logger.error(`Failed to search users:`, error.message);
+            return [];
+        }
+    }
+
+    /**
+     * Loads a snapshot of all users, then long-polls the change feed from the snapshot's cursor.
+     * A 410 means the cursor fell out of auth-service's retention window, so it starts over.
+     */
+    private async followChanges() {
+        while (!this.stopped) {
+            try {
+                if (this.replicaCursor === null) {
+                    await this.loadSnapshot();
+                } else {
+                    await this.pollChanges(this.replicaCursor);
+                }
+            } catch (error) {
+                if (axios.isAxiosError(error) && error.response?.status === 410) {
+                    this.logger.warn('User change feed cursor expired, reloading snapshot');
+                } else {
+                    this.logger.error('User change feed failed, falling back to batch lookups:', error.message);
+                    await new Promise((resolve) => setTimeout(resolve, CHANGE_FEED_RETRY_MS));
+                }
+                this.replicaCursor = null;
+            }
+        }
+    }
+
+    private async loadSnapshot() {
+        const response = await this.httpClient.get<UserSnapshot>(
+            `/api/internal/users/changes/snapshot`,
+            { timeout: 60000 }
+        );
+        this.replica.clear();
+        response.data.users.forEach((user) => this.replica.set(user.id, user));
+        this.replicaCursor = response.data.cursor;
+        this.logger.log(`Loaded ${this.replica.size} users from auth-service, following changes from ${response.data.cursor}`);
+    }
+
+    private async pollChanges(after: number) {
+        const response = await this.httpClient.get<UserChangePage>(
+            `/api/internal/users/changes`,
+            {
+                params: { after, waitMs: CHANGE_POLL_WAIT_MS },
+                timeout: CHANGE_POLL_WAIT_MS + 10000,
+            }
+        );
+        for (const { user, deleted } of response.data.changes) {
+            // The snapshot may already hold a newer version than a change replayed after it
+            const held = this.replica.get(user.id);
+            if (deleted) {
+                if (!held || held.version <= user.version) {
+                    this.replica.delete(user.id);
+                    this.userCache.delete(user.id);
+                }
+            } else if (!held || held.version <= user.version) {
+                this.replica.set(user.id, user);
+            }
+        }
+        this.replicaCursor = response.data.cursor;
+    }
+
+    private currentServiceToken(): string {
+        const now = Date.now();
+        if (!this.serviceToken || now - this.serviceTokenIssuedAt > SERVICE_TOKEN_REFRESH_MS) {
+            this.serviceToken = this.jwtService.sign(
+                { sub: 'chat-service', scope: 'internal' },
+                { expiresIn: SERVICE_TOKEN_TTL_S },
+            );
+            this.serviceTokenIssuedAt = now;
+        }
+        return this.serviceToken;
+    }
+
+    private remember(user: UserDto) {
+        this.userCache.delete(user.id);
+        if (this.userCache.size >= USER_CACHE_LIMIT) {
+            // Maps iterate in insertion order, so the first key is the least recently refreshed
+            const oldest = this.userCache.keys().next().value;
+            if (oldest !== undefined) {
+                this.userCache.delete(oldest);
+            }
+        }
+        this.userCache.set(user.id, user);
+    }
 }
@@ -24,4 +24,29 @@ export class AppController {
 
     await this.appService.sendVerificationEmail(payload.email, payload.otp, subject, message);
   }
+
+  // One message per bulk import chunk: data is a list of {email, otp}, all of the same type
+  @EventPattern('email.otp.batch')
+  async handleSendOtpEmailBatch(
+    @Payload() payload: any[],
+    @Ctx() context: RmqContext
+  ) {
+    const envelope = JSON.parse(context.getMessage().content.toString());
+    const subject = envelope.type === 'RESET' ? 'Password Reset OTP' : 'Account Verification OTP';
+    const message = envelope.type === 'RESET' ?
+      'Use the following OTP to reset your password:' :
+      'Welcome! Use the following OTP to verify your account:';
+
+    console.log(`Received OTP email batch request: ${payload.length} emails`);
+
+    // Sent one after another so a large batch does not open hundreds of SMTP connections at once;
+    // a failed address is logged and skipped, the rest of the batch still goes out
+    for (const item of payload) {
+      try {
+        await this.appService.sendVerificationEmail(item.email, item.otp, subject, message);
+      } catch {
+        console.error('Skipping OTP email to', item.email);
+      }
+    }
+  }
 }